@@ -0,0 +1,96 @@
+package pers.codewld.imall.benchmark;
+
+import com.alibaba.fastjson.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pers.codewld.imall.benchmark.support.Fixtures;
+import pers.codewld.imall.chat.codec.FrameDecoder;
+import pers.codewld.imall.chat.model.message.websocket.WebSocketMsg;
+import pers.codewld.imall.common.serializer.BinaryWriter;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * WebSocket 帧解析 基准测试
+ * </p>
+ * <p>
+ * 描述：以发送消息帧为例，比较 FrameDecoder 一次遍历解析（对象格式的 data、旧格式的字符串 data、二进制帧）
+ * 与原先先解析为 WebSocketMsg、再将 data 解析为 JSONObject 的两次解析
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FrameDecoderBenchmark {
+
+    /**
+     * 消息内容的字符数
+     */
+    @Param({"32", "512"})
+    int length;
+
+    private String frame;
+
+    private String legacyFrame;
+
+    private ByteBuffer binaryFrame;
+
+    @Setup
+    public void setup() {
+        String msg = Fixtures.text(length);
+        JSONObject data = new JSONObject();
+        data.put("msg", msg);
+        JSONObject object = new JSONObject();
+        object.put("type", "sendMsg");
+        object.put("data", data);
+        frame = object.toJSONString();
+        object.put("data", data.toJSONString());
+        legacyFrame = object.toJSONString();
+        BinaryWriter writer = new BinaryWriter();
+        writer.writeByte(3);
+        writer.writeString(msg);
+        binaryFrame = ByteBuffer.wrap(writer.toByteArray());
+    }
+
+    @Benchmark
+    public Object decode() {
+        return FrameDecoder.decode(frame);
+    }
+
+    @Benchmark
+    public Object decodeLegacyFormat() {
+        return FrameDecoder.decode(legacyFrame);
+    }
+
+    @Benchmark
+    public Object decodeBinary() {
+        return FrameDecoder.decode(binaryFrame);
+    }
+
+    /**
+     * 原先的两次解析
+     */
+    @Benchmark
+    public Object legacyDoubleParse() {
+        WebSocketMsg webSocketMsg = JSONObject.parseObject(legacyFrame, WebSocketMsg.class);
+        JSONObject data = JSONObject.parseObject(webSocketMsg.getData());
+        return data.getString("msg");
+    }
+}
@@ -0,0 +1,108 @@
+package pers.codewld.imall.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import pers.codewld.imall.benchmark.support.Fixtures;
+import pers.codewld.imall.chat.model.entity.User;
+import pers.codewld.imall.chat.model.enums.SystemCode;
+import pers.codewld.imall.chat.model.message.queue.MsgListMsg;
+import pers.codewld.imall.chat.model.message.queue.MsgMsg;
+import pers.codewld.imall.chat.model.message.queue.TracedMsg;
+import pers.codewld.imall.common.serializer.CompatRedisSerializer;
+import pers.codewld.imall.common.util.SerializerUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * 队列消息序列化 基准测试
+ * </p>
+ * <p>
+ * 描述：与 RedisConfig 相同的值序列化器（JSON 为默认类型的 Jackson，binary 为 ChatBinaryCodec），
+ * 分别测量单条消息与一页未读消息的序列化、反序列化耗时
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializerBenchmark {
+
+    /**
+     * 消息：msg 为单条通信消息，msgList 为一页（100条）未读消息
+     */
+    @Param({"msg", "msgList"})
+    String payload;
+
+    /**
+     * 单条消息内容的字符数
+     */
+    @Param({"32", "512"})
+    int length;
+
+    /**
+     * 写入格式：json / binary
+     */
+    @Param({"json", "binary"})
+    String format;
+
+    private RedisSerializer<Object> serializer;
+
+    private Object msg;
+
+    private byte[] bytes;
+
+    @Setup
+    public void setup() {
+        SerializerUtil serializerUtil = Fixtures.serializerUtil();
+        Jackson2JsonRedisSerializer<Object> jsonSerializer = new Jackson2JsonRedisSerializer<>(Object.class);
+        jsonSerializer.setObjectMapper(serializerUtil.getObjectMapper());
+        serializer = new CompatRedisSerializer(jsonSerializer, serializerUtil, "binary".equals(format));
+
+        User sender = Fixtures.user(SystemCode.WEB, 10001);
+        User receiver = Fixtures.user(SystemCode.ADMIN, 1);
+        if ("msgList".equals(payload)) {
+            List<MsgMsg> list = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                list.add(Fixtures.msgMsg(sender, receiver, length));
+            }
+            msg = new MsgListMsg(receiver, list);
+        } else {
+            msg = Fixtures.msgMsg(sender, receiver, length);
+        }
+        // 队列中的消息均携带追踪信息
+        TracedMsg tracedMsg = (TracedMsg) msg;
+        tracedMsg.setTraceId(Long.toHexString(System.nanoTime()));
+        tracedMsg.setOriginTime(System.currentTimeMillis());
+        tracedMsg.setEnqueueTime(System.currentTimeMillis());
+        bytes = serializer.serialize(msg);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize(msg);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return serializer.deserialize(bytes);
+    }
+}
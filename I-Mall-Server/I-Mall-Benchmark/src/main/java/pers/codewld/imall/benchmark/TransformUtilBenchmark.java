@@ -0,0 +1,64 @@
+package pers.codewld.imall.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pers.codewld.imall.benchmark.support.Fixtures;
+import pers.codewld.imall.chat.model.entity.User;
+import pers.codewld.imall.chat.model.enums.SystemCode;
+import pers.codewld.imall.chat.util.TransformUtil;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * 用户与字符串互转 基准测试
+ * </p>
+ * <p>
+ * 描述：TransformUtil 在每次查询、更新用户状态时调用；轮流使用不同的用户，避免结果被常量折叠
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TransformUtilBenchmark {
+
+    private static final int SIZE = 1024;
+
+    private final User[] users = new User[SIZE];
+
+    private final String[] strs = new String[SIZE];
+
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < SIZE; i++) {
+            users[i] = Fixtures.user(i % 2 == 0 ? SystemCode.WEB : SystemCode.ADMIN, 1000000L + i * 7919L);
+            strs[i] = TransformUtil.transform(users[i]);
+        }
+    }
+
+    @Benchmark
+    public String userToString() {
+        return TransformUtil.transform(users[cursor++ & (SIZE - 1)]);
+    }
+
+    @Benchmark
+    public User stringToUser() {
+        return TransformUtil.transform(strs[cursor++ & (SIZE - 1)]);
+    }
+}
@@ -0,0 +1,101 @@
+package pers.codewld.imall.benchmark.support;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.util.ReflectionUtils;
+import pers.codewld.imall.chat.codec.ChatBinaryCodec;
+import pers.codewld.imall.chat.metrics.ChatMetrics;
+import pers.codewld.imall.chat.model.entity.User;
+import pers.codewld.imall.chat.model.enums.SystemCode;
+import pers.codewld.imall.chat.model.message.queue.MsgMsg;
+import pers.codewld.imall.chat.server.util.ConfigUtil;
+import pers.codewld.imall.common.queue.MsgQueue;
+import pers.codewld.imall.common.util.SerializerUtil;
+
+import java.lang.reflect.Field;
+import java.time.LocalDateTime;
+
+/**
+ * <p>
+ * 基准测试 夹具
+ * </p>
+ * <p>
+ * 描述：不启动 Spring 容器，按生产配置的默认值手工装配被测对象；消息内容按实际聊天的长度与字符构成生成
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+public class Fixtures {
+
+    /**
+     * 中英文混合的聊天内容素材
+     */
+    private static final String SAMPLE = "你好，请问这件商品还有货吗？Is it available in size M? 今天下单明天能发货吗，谢谢！";
+
+    /**
+     * 为对象的字段赋值（包括父类中非公开的、由容器注入的字段）
+     */
+    public static void set(Object target, String name, Object value) {
+        Field field = ReflectionUtils.findField(target.getClass(), name);
+        if (field == null) {
+            throw new IllegalArgumentException(target.getClass().getName() + " 中不存在字段：" + name);
+        }
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+
+    /**
+     * 生成指定长度（字符数）的聊天内容
+     */
+    public static String text(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        while (sb.length() < length) {
+            sb.append(SAMPLE, 0, Math.min(SAMPLE.length(), length - sb.length()));
+        }
+        return sb.toString();
+    }
+
+    public static User user(SystemCode system, long id) {
+        return new User(system, String.valueOf(id));
+    }
+
+    public static MsgMsg msgMsg(User sender, User receiver, int length) {
+        return new MsgMsg(sender, receiver, text(length), LocalDateTime.now());
+    }
+
+    /**
+     * 装配了聊天二进制编解码器的序列化工具
+     */
+    public static SerializerUtil serializerUtil() {
+        SerializerUtil serializerUtil = new SerializerUtil();
+        set(serializerUtil, "binaryCodec", new ChatBinaryCodec());
+        return serializerUtil;
+    }
+
+    /**
+     * 聊天服务配置，取各配置项的默认值
+     */
+    public static ConfigUtil configUtil() {
+        ConfigUtil configUtil = new ConfigUtil();
+        set(configUtil, "PRE_QUEUE", "chat-preQueue");
+        set(configUtil, "PRE_QUEUE_PARTITIONS", 1);
+        set(configUtil, "POST_QUEUE_PREFIX", "chat-postQueue");
+        set(configUtil, "CONSUMER_BATCH_SIZE", 64);
+        set(configUtil, "USER_STATUS_HASH", "chat-userStatus");
+        set(configUtil, "USER_STATUS_CHANNEL", "chat-user-status-channel");
+        set(configUtil, "UNREAD_FLUSH_SIZE", 500);
+        set(configUtil, "UNREAD_PAGE_SIZE", 100);
+        set(configUtil, "UNREAD_DURABLE", true);
+        return configUtil;
+    }
+
+    /**
+     * 记录到内存的指标
+     */
+    public static ChatMetrics chatMetrics(MsgQueue msgQueue) {
+        ChatMetrics chatMetrics = new ChatMetrics();
+        set(chatMetrics, "meterRegistry", new SimpleMeterRegistry());
+        set(chatMetrics, "msgQueue", msgQueue);
+        return chatMetrics;
+    }
+}
@@ -0,0 +1,32 @@
+package pers.codewld.imall.benchmark.support;
+
+import pers.codewld.imall.chat.model.message.queue.MsgMsg;
+import pers.codewld.imall.chat.server.repository.HistoryRepository;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * 历史消息 仓库 内存替身
+ * </p>
+ * <p>
+ * 描述：替代 MongoDB，只记录写入的消息数
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+public class InMemoryHistoryRepository extends HistoryRepository {
+
+    private final LongAdder count = new LongAdder();
+
+    @Override
+    public void addHistoryMsgList(List<MsgMsg> list) {
+        count.add(list.size());
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+}
@@ -0,0 +1,55 @@
+package pers.codewld.imall.benchmark.support;
+
+import pers.codewld.imall.common.queue.BatchHandler;
+import pers.codewld.imall.common.queue.ConsumerHandle;
+import pers.codewld.imall.common.queue.MsgQueue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * 消息队列 内存实现类
+ * </p>
+ * <p>
+ * 描述：替代 Redis，只记录每个队列收到的消息数，不保存消息，避免基准测试期间内存持续增长
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+public class InMemoryMsgQueue implements MsgQueue {
+
+    /**
+     * 队列名 -> 收到的消息数
+     */
+    private final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+
+    @Override
+    public void push(String queue, Object msg) {
+        counts.computeIfAbsent(queue, k -> new LongAdder()).increment();
+    }
+
+    @Override
+    public void pushAll(Map<String, ? extends List<?>> msgs) {
+        msgs.forEach((queue, list) -> counts.computeIfAbsent(queue, k -> new LongAdder()).add(list.size()));
+    }
+
+    @Override
+    public long size(String queue) {
+        LongAdder count = counts.get(queue);
+        return count != null ? count.sum() : 0;
+    }
+
+    @Override
+    public long inFlightSize(String queue) {
+        return 0;
+    }
+
+    @Override
+    public ConsumerHandle consume(String queue, int batchSize, int concurrency, BatchHandler handler) {
+        throw new UnsupportedOperationException("基准测试不消费队列");
+    }
+}
@@ -0,0 +1,42 @@
+package pers.codewld.imall.benchmark.support;
+
+import pers.codewld.imall.chat.model.entity.User;
+import pers.codewld.imall.chat.model.message.queue.MsgMsg;
+import pers.codewld.imall.chat.server.repository.MsgRepository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * 未读消息 仓库 内存替身
+ * </p>
+ * <p>
+ * 描述：替代 MongoDB，只维护每个接收者的未读消息数
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+public class InMemoryMsgRepository extends MsgRepository {
+
+    /**
+     * 接收者 -> 未读消息数
+     */
+    private final Map<User, LongAdder> counts = new ConcurrentHashMap<>();
+
+    @Override
+    public void addUnreadMsgList(List<MsgMsg> list) {
+        for (MsgMsg msgMsg : list) {
+            counts.computeIfAbsent(msgMsg.getReceiver(), k -> new LongAdder()).increment();
+        }
+    }
+
+    @Override
+    public Long countUnreadMsg(User user) {
+        LongAdder count = counts.get(user);
+        return count != null ? count.sum() : 0L;
+    }
+}
@@ -0,0 +1,21 @@
+package pers.codewld.imall.benchmark.support;
+
+import pers.codewld.imall.common.util.RedisUtil;
+
+/**
+ * <p>
+ * Redis 工具类 内存替身
+ * </p>
+ * <p>
+ * 描述：用户状态缓存变更时会发布通知，基准测试中忽略
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+public class InMemoryRedisUtil extends RedisUtil {
+
+    @Override
+    public void publish(String channel, Object message) {
+    }
+}
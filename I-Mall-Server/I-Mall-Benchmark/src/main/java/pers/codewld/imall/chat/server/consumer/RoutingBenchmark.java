@@ -0,0 +1,154 @@
+package pers.codewld.imall.chat.server.consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pers.codewld.imall.benchmark.support.Fixtures;
+import pers.codewld.imall.benchmark.support.InMemoryHistoryRepository;
+import pers.codewld.imall.benchmark.support.InMemoryMsgQueue;
+import pers.codewld.imall.benchmark.support.InMemoryMsgRepository;
+import pers.codewld.imall.benchmark.support.InMemoryRedisUtil;
+import pers.codewld.imall.chat.metrics.ChatMetrics;
+import pers.codewld.imall.chat.model.entity.User;
+import pers.codewld.imall.chat.model.enums.SystemCode;
+import pers.codewld.imall.chat.model.message.queue.MsgMsg;
+import pers.codewld.imall.chat.server.cache.UserStatusCache;
+import pers.codewld.imall.chat.server.service.impl.MsgServiceImpl;
+import pers.codewld.imall.chat.server.util.ConfigUtil;
+import pers.codewld.imall.chat.util.TransformUtil;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * 消息路由 基准测试
+ * </p>
+ * <p>
+ * 描述：MsgConsumer 按接收者状态决定存储未读、推送未读消息数或直接投递；
+ * Redis 与 MongoDB 由内存替身代替，测量的是路由判断、缓冲与批量写出本身的开销。
+ * 与 MsgConsumer 位于同一包中，以便直接调用包内可见的处理方法
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoutingBenchmark {
+
+    /**
+     * 每批消息数，与 chat.consumer.batch-size 的默认值相同
+     */
+    private static final int BATCH_SIZE = 64;
+
+    /**
+     * 接收者数（2的幂）
+     */
+    private static final int USERS = 8192;
+
+    private static final String NODE = "node-1";
+
+    /**
+     * 接收者状态：offline 离线 / online 在线 / active 活跃 / talking 正在与发送者对话
+     */
+    @Param({"offline", "online", "active", "talking"})
+    String receiverStatus;
+
+    /**
+     * 是否已由网关在本地投递
+     */
+    @Param({"false", "true"})
+    boolean delivered;
+
+    private final User[] senders = new User[USERS];
+
+    private final User[] receivers = new User[USERS];
+
+    private final String text = Fixtures.text(64);
+
+    private MsgConsumer consumer;
+
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        InMemoryMsgQueue msgQueue = new InMemoryMsgQueue();
+        ConfigUtil configUtil = Fixtures.configUtil();
+        ChatMetrics chatMetrics = Fixtures.chatMetrics(msgQueue);
+
+        UserStatusCache userStatusCache = new UserStatusCache();
+        Fixtures.set(userStatusCache, "redisUtil", new InMemoryRedisUtil());
+        Fixtures.set(userStatusCache, "configUtil", configUtil);
+
+        MsgServiceImpl msgService = new MsgServiceImpl();
+        Fixtures.set(msgService, "msgQueue", msgQueue);
+        Fixtures.set(msgService, "configUtil", configUtil);
+        Fixtures.set(msgService, "msgRepository", new InMemoryMsgRepository());
+        Fixtures.set(msgService, "historyRepository", new InMemoryHistoryRepository());
+        Fixtures.set(msgService, "userStatusCache", userStatusCache);
+        Fixtures.set(msgService, "chatMetrics", chatMetrics);
+
+        consumer = new MsgConsumer();
+        consumer.msgQueue = msgQueue;
+        consumer.configUtil = configUtil;
+        consumer.userStatusCache = userStatusCache;
+        consumer.msgService = msgService;
+        consumer.chatMetrics = chatMetrics;
+
+        for (int i = 0; i < USERS; i++) {
+            senders[i] = Fixtures.user(SystemCode.WEB, 1000000L + i);
+            receivers[i] = Fixtures.user(SystemCode.ADMIN, 1000L + i);
+            String receiver = TransformUtil.transform(receivers[i]);
+            switch (receiverStatus) {
+                case "online":
+                    userStatusCache.put(receiver, "__ONLINE__", NODE);
+                    break;
+                case "active":
+                    userStatusCache.put(receiver, "__ACTIVE__", NODE);
+                    break;
+                case "talking":
+                    userStatusCache.put(receiver, TransformUtil.transform(senders[i]), NODE);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * 处理一批消息（含批末写出缓冲），结果为每条消息的平均耗时
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Set<Integer> handleBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Object> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            int index = cursor++ & (USERS - 1);
+            MsgMsg msgMsg = new MsgMsg(senders[index], receivers[index], text, now);
+            if (delivered) {
+                msgMsg.setDelivered(true);
+                msgMsg.setNode(NODE);
+            }
+            batch.add(msgMsg);
+        }
+        return consumer.handleBatch(batch);
+    }
+}
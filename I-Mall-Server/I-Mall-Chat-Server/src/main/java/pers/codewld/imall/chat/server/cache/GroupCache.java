@@ -0,0 +1,76 @@
+package pers.codewld.imall.chat.server.cache;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import pers.codewld.imall.chat.model.entity.User;
+import pers.codewld.imall.chat.server.model.ChatGroup;
+import pers.codewld.imall.chat.server.repository.GroupRepository;
+import pers.codewld.imall.chat.server.util.ConfigUtil;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * 群成员 本地缓存
+ * </p>
+ * <p>
+ * 描述：群成员在首次使用时从数据库加载，超过有效期后重新加载。
+ * 群及成员由外部系统直接写入数据库，聊天服务只读，成员变更最迟在一个有效期后生效
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Component
+public class GroupCache {
+
+    @Autowired
+    GroupRepository groupRepository;
+
+    @Qualifier("myConfigUtil")
+    @Autowired
+    ConfigUtil configUtil;
+
+    /**
+     * 群ID -> 成员
+     */
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+
+    /**
+     * 获取群成员，群不存在时为空
+     */
+    public Set<User> getMembers(String groupId) {
+        long now = System.currentTimeMillis();
+        Entry entry = cache.get(groupId);
+        if (entry == null || now - entry.loadedAt > configUtil.getGROUP_CACHE_TTL()) {
+            entry = load(groupId, now);
+            cache.put(groupId, entry);
+        }
+        return entry.members;
+    }
+
+    private Entry load(String groupId, long now) {
+        ChatGroup chatGroup = groupRepository.getGroup(groupId);
+        List<User> members = chatGroup != null ? chatGroup.getMembers() : null;
+        Set<User> set = members != null ? new HashSet<>(members) : Collections.emptySet();
+        return new Entry(Collections.unmodifiableSet(set), now);
+    }
+
+    private static class Entry {
+
+        final Set<User> members;
+
+        final long loadedAt;
+
+        Entry(Set<User> members, long loadedAt) {
+            this.members = members;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package pers.codewld.imall.chat.server.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import pers.codewld.imall.chat.model.enums.SystemCode;
+import pers.codewld.imall.chat.server.util.ConfigUtil;
+import pers.codewld.imall.common.util.RedisBatch;
+import pers.codewld.imall.common.util.RedisUtil;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * 用户状态 本地缓存
+ * </p>
+ * <p>
+ * 描述：进程内的用户状态表是路由消息时的数据来源，启动时从Redis Hash加载；
+ * 变更先写入本地，再通过发布订阅通知其它节点，并异步批量写回Redis Hash。
+ * 发布订阅不保证送达（如订阅连接断开重连期间），因此定期从Redis Hash重新同步，尚未写回的本地变更以本地为准；
+ * 同步时一并清理心跳超时（已下线）的网关节点上残留的用户状态。
+ * 每次变更（本地、通知或写回完成）为记录分配递增的序号，删除以墓碑记录表示；同步时逐个键原子合并，
+ * 待写回或序号晚于同步开始的记录以本地为准，避免用变更前读取的快照覆盖或删除刚写入的状态。
+ * 每个用户记录状态及其连接所在的网关节点，存储格式为 [状态|节点1,节点2]；另按 [系统 -> 节点 -> 用户数] 维护索引，供广播查找节点
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Slf4j
+@Component
+public class UserStatusCache implements MessageListener {
+
+    /**
+     * 删除标记
+     */
+    private static final String DELETED = "";
+
+    /**
+     * 通知消息中各字段的分隔符
+     */
+    private static final String SEPARATOR = "\n";
+
+    /**
+     * 状态与节点列表的分隔符
+     */
+    private static final char NODES_SEPARATOR = '|';
+
+    /**
+     * 节点之间的分隔符
+     */
+    private static final String NODE_SEPARATOR = ",";
+
+    @Autowired
+    RedisUtil redisUtil;
+
+    @Qualifier("myConfigUtil")
+    @Autowired
+    ConfigUtil configUtil;
+
+    @Autowired
+    RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * 当前节点标识，用于忽略自己发出的通知
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /**
+     * 用户 -> 状态及节点
+     */
+    private final Map<String, Presence> statusMap = new ConcurrentHashMap<>();
+
+    /**
+     * 待写回Redis的变更：用户 -> 状态（DELETED表示删除）；只在对应用户的 statusMap.compute 内修改
+     */
+    private final Map<String, String> dirtyMap = new ConcurrentHashMap<>();
+
+    /**
+     * 系统 -> 网关节点 -> 该节点上该系统的用户数；只在对应用户的 statusMap.compute 内随记录的节点列表更新
+     */
+    private final Map<SystemCode, Map<String, Integer>> nodeIndex = new ConcurrentHashMap<>();
+
+    /**
+     * 变更序号
+     */
+    private final AtomicLong seq = new AtomicLong();
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(configUtil.getUSER_STATUS_CHANNEL()));
+        resync();
+        scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("user-status-flusher-"));
+        long interval = configUtil.getUSER_STATUS_FLUSH_INTERVAL();
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        long resyncInterval = configUtil.getUSER_STATUS_RESYNC_INTERVAL();
+        if (resyncInterval > 0) {
+            scheduler.scheduleWithFixedDelay(this::resyncQuietly, resyncInterval, resyncInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdown();
+        flushQuietly();
+    }
+
+    /**
+     * 获取用户状态，null表示离线
+     */
+    public String get(String user) {
+        Presence presence = statusMap.get(user);
+        return presence != null ? presence.status : null;
+    }
+
+    /**
+     * 获取用户连接所在的网关节点，未知时为空
+     */
+    public Set<String> getNodes(String user) {
+        Presence presence = statusMap.get(user);
+        return presence != null ? presence.nodes : Collections.emptySet();
+    }
+
+    /**
+     * 获取某一系统的用户连接所在的所有网关节点（来自按节点维护的索引，不遍历用户状态表）
+     */
+    public Set<String> getNodes(SystemCode system) {
+        Map<String, Integer> counts = nodeIndex.get(system);
+        return counts != null ? new HashSet<>(counts.keySet()) : new HashSet<>();
+    }
+
+    /**
+     * 设置用户状态，并记录连接所在的网关节点
+     *
+     * @param node 网关节点，为null时（旧版本网关）不记录
+     */
+    public void put(String user, String status, String node) {
+        Presence presence = statusMap.compute(user, (k, v) -> {
+            Set<String> nodes = v != null ? v.nodes : Collections.emptySet();
+            if (node != null && !nodes.contains(node)) {
+                nodes = new HashSet<>(nodes);
+                nodes.add(node);
+            }
+            return indexed(k, v, changed(k, new Presence(status, nodes, seq.incrementAndGet())));
+        });
+        notifyOthers(user, presence.encode());
+    }
+
+    /**
+     * 用户在某一网关节点上离线；所有节点均离线时删除用户状态
+     *
+     * @param node 网关节点，为null时（旧版本网关）直接删除
+     */
+    public void remove(String user, String node) {
+        Presence presence = statusMap.compute(user, (k, v) -> {
+            if (v == null || v.isDeleted() || node == null || v.nodes.isEmpty()) {
+                return indexed(k, v, changed(k, Presence.deleted(seq.incrementAndGet())));
+            }
+            if (!v.nodes.contains(node)) {
+                return changed(k, v);
+            }
+            Set<String> nodes = new HashSet<>(v.nodes);
+            nodes.remove(node);
+            return indexed(k, v, changed(k, nodes.isEmpty() ? Presence.deleted(seq.incrementAndGet()) : new Presence(v.status, nodes, seq.incrementAndGet())));
+        });
+        notifyOthers(user, presence.encode());
+    }
+
+    /**
+     * 接收其它节点的变更通知
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object body = redisUtil.deSerializeValue(message.getBody());
+        if (body == null) {
+            return;
+        }
+        String[] parts = body.toString().split(SEPARATOR, -1);
+        if (parts.length != 3 || nodeId.equals(parts[0])) {
+            return;
+        }
+        statusMap.compute(parts[1], (k, v) -> indexed(k, v, DELETED.equals(parts[2])
+                ? Presence.deleted(seq.incrementAndGet())
+                : Presence.decode(parts[2], seq.incrementAndGet())));
+    }
+
+    /**
+     * 从Redis Hash重新同步用户状态
+     * <p>
+     * 逐个键在 compute 内合并：尚未写回、或在读取快照开始后发生变更的记录以本地为准；其余以快照为准，快照中没有的记录（含墓碑）被删除
+     */
+    public void resync() {
+        long start = seq.get();
+        Map<String, Presence> stored = new HashMap<>();
+        redisUtil.hGetAll(configUtil.getUSER_STATUS_HASH())
+                .forEach((k, v) -> stored.put(String.valueOf(k), Presence.decode(String.valueOf(v), 0)));
+        stored.forEach((user, presence) -> statusMap.compute(user, (k, v) -> isNewer(k, v, start) ? v : indexed(k, v, presence)));
+        for (String user : statusMap.keySet()) {
+            if (!stored.containsKey(user)) {
+                statusMap.computeIfPresent(user, (k, v) -> isNewer(k, v, start) ? v : indexed(k, v, null));
+            }
+        }
+        removeStaleNodes();
+    }
+
+    /**
+     * 本地记录是否比 start 时开始读取的快照更新
+     */
+    private boolean isNewer(String user, Presence presence, long start) {
+        return presence != null && (dirtyMap.containsKey(user) || presence.seq > start);
+    }
+
+    /**
+     * 移除心跳超时或没有心跳的网关节点上的用户状态，并删除超时的心跳
+     */
+    void removeStaleNodes() {
+        long timeout = configUtil.getNODE_HEARTBEAT_TIMEOUT();
+        if (timeout <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Set<String> alive = new HashSet<>();
+        List<Object> expired = new ArrayList<>();
+        redisUtil.hGetAll(configUtil.getNODE_HEARTBEAT_HASH()).forEach((node, time) -> {
+            if (time instanceof Number && now - ((Number) time).longValue() <= timeout) {
+                alive.add(String.valueOf(node));
+            } else {
+                expired.add(node);
+            }
+        });
+        statusMap.forEach((user, presence) -> {
+            for (String node : presence.nodes) {
+                if (!alive.contains(node)) {
+                    remove(user, node);
+                }
+            }
+        });
+        if (!expired.isEmpty()) {
+            log.warn("网关节点心跳超时：" + expired);
+            redisUtil.hDel(configUtil.getNODE_HEARTBEAT_HASH(), expired.toArray());
+        }
+    }
+
+    /**
+     * 将变更批量写回Redis
+     * <p>
+     * 变更在写入成功后才移出待写回表，写入失败时保留至下次重试；写入期间发生的更新不会被移出
+     */
+    public void flush() {
+        if (dirtyMap.isEmpty()) {
+            return;
+        }
+        Map<String, String> flushing = new HashMap<>(dirtyMap);
+        Map<String, Object> puts = new HashMap<>();
+        List<Object> deletes = new ArrayList<>();
+        flushing.forEach((user, status) -> {
+            if (DELETED.equals(status)) {
+                deletes.add(user);
+            } else {
+                puts.put(user, status);
+            }
+        });
+        // 写入与删除通过管道一次往返完成
+        RedisBatch batch = redisUtil.batch();
+        if (!puts.isEmpty()) {
+            batch.hSetAll(configUtil.getUSER_STATUS_HASH(), puts);
+        }
+        if (!deletes.isEmpty()) {
+            batch.hDel(configUtil.getUSER_STATUS_HASH(), deletes.toArray());
+        }
+        batch.execute();
+        // 写入成功后移出待写回表，并更新序号：写入前开始读取的快照不能覆盖该记录
+        flushing.forEach((user, status) -> statusMap.compute(user, (k, v) -> {
+            if (dirtyMap.remove(k, status) && v != null) {
+                return v.withSeq(seq.incrementAndGet());
+            }
+            return v;
+        }));
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error(e.getMessage());
+        }
+    }
+
+    private void resyncQuietly() {
+        try {
+            resync();
+        } catch (Exception e) {
+            log.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 记录待写回的变更（在对应用户的 compute 内调用）
+     */
+    private Presence changed(String user, Presence presence) {
+        dirtyMap.put(user, presence.encode());
+        return presence;
+    }
+
+    /**
+     * 按记录的节点列表变化更新节点索引（在对应用户的 compute 内调用）
+     *
+     * @param old     原记录，可为null
+     * @param current 新记录，可为null
+     * @return 新记录
+     */
+    private Presence indexed(String user, Presence old, Presence current) {
+        Set<String> oldNodes = old != null ? old.nodes : Collections.emptySet();
+        Set<String> nodes = current != null ? current.nodes : Collections.emptySet();
+        int index = user.indexOf('_');
+        if (oldNodes.equals(nodes) || index < 0) {
+            return current;
+        }
+        Map<String, Integer> counts;
+        try {
+            counts = nodeIndex.computeIfAbsent(SystemCode.valueOf(user.substring(0, index)), k -> new ConcurrentHashMap<>());
+        } catch (IllegalArgumentException e) {
+            return current;
+        }
+        for (String node : oldNodes) {
+            if (!nodes.contains(node)) {
+                counts.computeIfPresent(node, (n, count) -> count > 1 ? count - 1 : null);
+            }
+        }
+        for (String node : nodes) {
+            if (!oldNodes.contains(node)) {
+                counts.merge(node, 1, Integer::sum);
+            }
+        }
+        return current;
+    }
+
+    private void notifyOthers(String user, String status) {
+        redisUtil.publish(configUtil.getUSER_STATUS_CHANNEL(), nodeId + SEPARATOR + user + SEPARATOR + status);
+    }
+
+    /**
+     * 用户状态及连接所在的网关节点（不可变）；状态为null表示已删除（墓碑），在之后的同步中清除
+     */
+    static final class Presence {
+
+        final String status;
+
+        final Set<String> nodes;
+
+        /**
+         * 变更序号，来自快照的记录为0
+         */
+        final long seq;
+
+        Presence(String status, Set<String> nodes, long seq) {
+            this.status = status;
+            this.nodes = Collections.unmodifiableSet(nodes);
+            this.seq = seq;
+        }
+
+        static Presence deleted(long seq) {
+            return new Presence(null, Collections.emptySet(), seq);
+        }
+
+        boolean isDeleted() {
+            return status == null;
+        }
+
+        Presence withSeq(long seq) {
+            return new Presence(status, nodes, seq);
+        }
+
+        String encode() {
+            if (isDeleted()) {
+                return DELETED;
+            }
+            if (nodes.isEmpty()) {
+                return status;
+            }
+            return status + NODES_SEPARATOR + String.join(NODE_SEPARATOR, nodes);
+        }
+
+        /**
+         * 解析存储格式；不含节点列表时（旧版本写入）节点为空
+         */
+        static Presence decode(String value, long seq) {
+            int index = value.indexOf(NODES_SEPARATOR);
+            if (index < 0) {
+                return new Presence(value, Collections.emptySet(), seq);
+            }
+            Set<String> nodes = new HashSet<>(Arrays.asList(value.substring(index + 1).split(NODE_SEPARATOR)));
+            return new Presence(value.substring(0, index), nodes, seq);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package pers.codewld.imall.chat.server.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * <p>
+ * Redis 消息监听 配置类
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Configuration
+public class RedisListenerConfig {
+
+    /**
+     * 消息监听容器
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        return container;
+    }
+
+}
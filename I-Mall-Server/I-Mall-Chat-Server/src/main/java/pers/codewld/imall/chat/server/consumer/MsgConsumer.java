@@ -1,30 +1,51 @@
 package pers.codewld.imall.chat.server.consumer;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
 import org.springframework.stereotype.Component;
+import pers.codewld.imall.chat.metrics.ChatMetrics;
 import pers.codewld.imall.chat.model.entity.User;
+import pers.codewld.imall.chat.model.message.queue.BroadcastMsg;
+import pers.codewld.imall.chat.model.message.queue.GroupMsg;
+import pers.codewld.imall.chat.model.message.queue.HistoryQueryMsg;
 import pers.codewld.imall.chat.model.message.queue.MsgMsg;
+import pers.codewld.imall.chat.model.message.queue.ReadMsg;
 import pers.codewld.imall.chat.model.message.queue.UserStatusMsg;
+import pers.codewld.imall.chat.server.cache.UserStatusCache;
 import pers.codewld.imall.chat.server.service.MsgService;
 import pers.codewld.imall.chat.server.util.ConfigUtil;
 import pers.codewld.imall.chat.util.TransformUtil;
-import pers.codewld.imall.common.util.RedisUtil;
+import pers.codewld.imall.common.queue.ConsumerExecutor;
+import pers.codewld.imall.common.queue.ConsumerHandle;
+import pers.codewld.imall.common.queue.MsgQueue;
 
-import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * <p>
  * 消息 消费者类
  * </p>
+ * <p>
+ * 描述：随应用上下文启停；关闭时先于其它单例的销毁停止消费，保证已取出的消息处理完成并确认
+ * </p>
  *
  * @author codewld
  * @since 2022-03-25
  */
+@Slf4j
 @Component
-public class MsgConsumer {
+public class MsgConsumer implements SmartLifecycle {
+
+    @Autowired
+    UserStatusCache userStatusCache;
 
     @Autowired
-    RedisUtil redisUtil;
+    MsgQueue msgQueue;
 
     @Autowired
     ConfigUtil configUtil;
@@ -32,18 +53,119 @@ public class MsgConsumer {
     @Autowired
     MsgService msgService;
 
-    @PostConstruct
-    public void init() {
-        redisUtil.brPopLPush(
-                configUtil.getPRE_QUEUE(),
-                configUtil.getPRE_QUEUE() + "-" + "back",
-                o -> {
-                    if (o instanceof UserStatusMsg) {
-                        handleUserStatus((UserStatusMsg) o);
-                    } else if (o instanceof MsgMsg) {
-                        handleCommunication((MsgMsg) o);
-                    }
-                });
+    @Autowired
+    ConsumerExecutor consumerExecutor;
+
+    @Autowired
+    ChatMetrics chatMetrics;
+
+    /**
+     * 各分区的消费者句柄
+     */
+    private final List<ConsumerHandle> handles = new ArrayList<>();
+
+    private volatile boolean running;
+
+    /**
+     * 所有单例初始化完成后开始消费
+     */
+    @Override
+    public synchronized void start() {
+        for (int partition : configUtil.getConsumerPartitions()) {
+            String preQueue = configUtil.getPreQueue(partition);
+            chatMetrics.registerQueue(preQueue);
+            handles.add(msgQueue.consume(
+                    preQueue,
+                    configUtil.getCONSUMER_BATCH_SIZE(),
+                    configUtil.getCONSUMER_CONCURRENCY(),
+                    this::handleBatch));
+        }
+        running = true;
+    }
+
+    /**
+     * 停止取新消息，等待处理中的批次完成并确认，再将缓冲中的未读消息与用户状态写出
+     */
+    @Override
+    public synchronized void stop() {
+        consumerExecutor.stop(handles);
+        handles.clear();
+        try {
+            msgService.flush();
+            userStatusCache.flush();
+        } catch (Exception e) {
+            log.error(e.getMessage());
+        }
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 处理一批消息
+     * <p>
+     * 逐条处理，单条消息失败不影响同批的其它消息：失败的消息不确认，由队列的重试机制再次投递
+     *
+     * @return 处理失败的消息在批次中的下标
+     */
+    Set<Integer> handleBatch(List<Object> batch) {
+        boolean durable = configUtil.isUNREAD_DURABLE();
+        if (durable) {
+            msgService.beginBatch();
+        }
+        Set<Integer> failed = Collections.emptySet();
+        for (int i = 0; i < batch.size(); i++) {
+            try {
+                handleTraced(batch.get(i));
+            } catch (Exception e) {
+                log.error("消息处理失败，等待重试：" + batch.get(i).getClass().getSimpleName(), e);
+                if (failed.isEmpty()) {
+                    failed = new HashSet<>();
+                }
+                failed.add(i);
+            }
+        }
+        if (durable) {
+            // 持久化模式：本批未读消息写入数据库后才返回，随后确认队列中的消息；写入失败时抛出异常，整批均不确认
+            msgService.endBatch();
+        }
+        return failed;
+    }
+
+    /**
+     * 处理消息，并记录排队及处理耗时；处理期间产生的队列消息沿用该消息的追踪信息
+     */
+    void handleTraced(Object o) {
+        chatMetrics.begin(ChatMetrics.STAGE_PRE_QUEUE, o);
+        long start = System.nanoTime();
+        try {
+            handle(o);
+        } finally {
+            chatMetrics.end();
+        }
+        chatMetrics.record(ChatMetrics.STAGE_SERVER_HANDLE, System.nanoTime() - start);
+    }
+
+    /**
+     * 处理消息
+     */
+    void handle(Object o) {
+        if (o instanceof UserStatusMsg) {
+            handleUserStatus((UserStatusMsg) o);
+        } else if (o instanceof MsgMsg) {
+            handleCommunication((MsgMsg) o);
+        } else if (o instanceof ReadMsg) {
+            msgService.readMsg((ReadMsg) o);
+        } else if (o instanceof HistoryQueryMsg) {
+            msgService.sendHistoryMsg((HistoryQueryMsg) o);
+        } else if (o instanceof GroupMsg) {
+            msgService.sendGroupMsg((GroupMsg) o);
+        } else if (o instanceof BroadcastMsg) {
+            msgService.broadcast((BroadcastMsg) o);
+        }
     }
 
     /**
@@ -56,37 +178,43 @@ public class MsgConsumer {
             if (userStatusMsg.getActive()) { // 如果活跃
                 User contact = userStatusMsg.getContact();
                 String contactStr = TransformUtil.transform(contact);
-                redisUtil.hSet(
-                        configUtil.getUSER_STATUS_HASH(),
+                userStatusCache.put(
                         userStr,
                         contactStr != null ? contactStr : "__ACTIVE__", // 存在交流者时，记录交流者；否则记录状态为激活
-                        0);
-                msgService.sendUnreadMsg(user);
+                        userStatusMsg.getNode());
+                if (contact != null) { // 存在交流者时，只发送该会话的未读消息
+                    msgService.sendUnreadMsg(user, contact);
+                } else {
+                    msgService.sendUnreadMsg(user);
+                }
             } else { // 如果不活跃
-                redisUtil.hSet(
-                        configUtil.getUSER_STATUS_HASH(),
+                userStatusCache.put(
                         userStr,
                         "__ONLINE__",
-                        0);
+                        userStatusMsg.getNode());
                 msgService.sendUnreadCount(user);
             }
         } else { // 如果不在线
-            redisUtil.hDel(
-                    configUtil.getUSER_STATUS_HASH(),
-                    userStr);
+            userStatusCache.remove(userStr, userStatusMsg.getNode());
         }
     }
 
     /**
      * 处理通信
+     * <p>
+     * 网关已在本地投递时，只是不再向已投递的节点发送完整消息；其余按接收者状态照常路由（包括只发送未读消息数的情况）
      */
     void handleCommunication(MsgMsg msgMsg) {
+        String deliveredNode = null;
+        if (Boolean.TRUE.equals(msgMsg.getDelivered())) {
+            deliveredNode = msgMsg.getNode();
+            msgMsg.setDelivered(null);
+            msgMsg.setNode(null);
+        }
+        msgService.addHistoryMsg(msgMsg);
         User receiver = msgMsg.getReceiver();
-        // Redis 中查询接收者状态
-        String receiverStatus = (String) redisUtil.hGet(
-                configUtil.getUSER_STATUS_HASH(),
-                TransformUtil.transform(receiver)
-        );
+        // 本地缓存中查询接收者状态
+        String receiverStatus = userStatusCache.get(TransformUtil.transform(receiver));
         if (receiverStatus == null) { // 接收者离线
             msgService.addUnreadMsg(msgMsg);
         } else if (receiverStatus.equals("__ONLINE__")) { // 接收者在线
@@ -95,9 +223,9 @@ public class MsgConsumer {
         } else if (receiverStatus.equals("__ACTIVE__")
                 || !receiverStatus.equals(TransformUtil.transform(msgMsg.getSender()))) { // 接收者活跃或接收者正在与其它用户对话
             msgService.addUnreadMsg(msgMsg);
-            msgService.sendMsg(msgMsg);
+            msgService.sendMsg(msgMsg, deliveredNode);
         } else { // 接收者正在与发送者对话
-            msgService.sendMsg(msgMsg);
+            msgService.sendMsg(msgMsg, deliveredNode);
         }
     }
 }
@@ -0,0 +1,34 @@
+package pers.codewld.imall.chat.server.model;
+
+import lombok.Data;
+import pers.codewld.imall.chat.model.entity.User;
+
+import java.util.List;
+
+/**
+ * <p>
+ * 群 实体类
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Data
+public class ChatGroup {
+
+    /**
+     * 群ID
+     */
+    private String id;
+
+    /**
+     * 群名称
+     */
+    private String name;
+
+    /**
+     * 成员列表
+     */
+    private List<User> members;
+
+}
@@ -0,0 +1,45 @@
+package pers.codewld.imall.chat.server.model;
+
+import lombok.Data;
+import pers.codewld.imall.chat.model.message.queue.MsgMsg;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * <p>
+ * 历史消息分桶 实体类
+ * </p>
+ * <p>
+ * 描述：一个会话在一个时间段（小时或天）内的消息存放于同一文档；文档内消息数达到上限后同一时间段新建文档
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Data
+public class HistoryBucket {
+
+    private String id;
+
+    /**
+     * 会话（双方 [所属系统_ID] 按字典序以 | 连接）
+     */
+    private String conversation;
+
+    /**
+     * 时间段起点
+     */
+    private LocalDateTime bucket;
+
+    /**
+     * 消息数
+     */
+    private Integer count;
+
+    /**
+     * 消息列表（按写入顺序）
+     */
+    private List<MsgMsg> msgs;
+
+}
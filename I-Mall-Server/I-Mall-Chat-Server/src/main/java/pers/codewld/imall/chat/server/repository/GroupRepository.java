@@ -0,0 +1,33 @@
+package pers.codewld.imall.chat.server.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+import pers.codewld.imall.chat.server.model.ChatGroup;
+
+/**
+ * <p>
+ * 群 Repository类
+ * </p>
+ * <p>
+ * 描述：只读；群及成员由外部系统写入 chatGroup 集合
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Component
+public class GroupRepository {
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+
+    final String CHAT_GROUP = "chatGroup";
+
+    /**
+     * 查询群
+     */
+    public ChatGroup getGroup(String id) {
+        return mongoTemplate.findById(id, ChatGroup.class, CHAT_GROUP);
+    }
+}
@@ -0,0 +1,252 @@
+package pers.codewld.imall.chat.server.repository;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import pers.codewld.imall.chat.model.entity.User;
+import pers.codewld.imall.chat.model.message.queue.MsgMsg;
+import pers.codewld.imall.chat.server.model.HistoryBucket;
+import pers.codewld.imall.chat.server.util.ConfigUtil;
+import pers.codewld.imall.chat.util.TransformUtil;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * 历史消息 Repository类
+ * </p>
+ * <p>
+ * 描述：按 [会话 + 时间段] 分桶存储，以 $push 追加消息，文档数与索引大小随时间段而非消息数增长；
+ * 每条消息以确定性的消息ID（与未读消息相同）标识，重复投递或重放时不会重复写入
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Component
+public class HistoryRepository {
+
+    @Autowired
+    MongoTemplate mongoTemplate;
+
+    @Autowired
+    ConfigUtil configUtil;
+
+    final String MSG_HISTORY = "msgHistory";
+
+    /**
+     * 同一时间段内的消息按 (时间, 消息ID) 降序
+     */
+    private static final Comparator<Entry> NEWEST_FIRST = Comparator.<Entry, LocalDateTime>comparing(e -> e.msg.getTime())
+            .thenComparing(e -> e.id)
+            .reversed();
+
+    @PostConstruct
+    public void init() {
+        mongoTemplate.indexOps(MSG_HISTORY).ensureIndex(new Index()
+                .on("conversation", Sort.Direction.ASC)
+                .on("bucket", Sort.Direction.DESC)
+                .named("conversation_bucket"));
+    }
+
+    /**
+     * 批量追加历史消息
+     * <p>
+     * 先查询已写入的消息ID并跳过（一次往返），再通过一次往返完成所有追加。
+     * 每条消息单独判断分桶文档是否已满：只追加到未满的文档中，已满时新建文档，文档内消息数不会超过上限；
+     * 同一时间段内只有最新的文档未满，消息按写入顺序分布在各文档中
+     */
+    public void addHistoryMsgList(List<MsgMsg> list) {
+        // 消息ID -> 消息，同一批内的重复消息只写入一次
+        Map<String, MsgMsg> msgs = new LinkedHashMap<>();
+        for (MsgMsg msgMsg : list) {
+            msgs.putIfAbsent(MsgRepository.msgId(msgMsg), msgMsg);
+        }
+        if (msgs.isEmpty()) {
+            return;
+        }
+        msgs.keySet().removeAll(findExistingIds(msgs));
+        if (msgs.isEmpty()) {
+            return;
+        }
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, MSG_HISTORY);
+        msgs.forEach((id, msgMsg) -> {
+            Query query = new Query(Criteria.where("conversation").is(getConversation(msgMsg.getSender(), msgMsg.getReceiver()))
+                    .and("bucket").is(getBucket(msgMsg.getTime()))
+                    .and("count").lt(configUtil.getHISTORY_BUCKET_MAX_SIZE()));
+            Document entry = new Document();
+            mongoTemplate.getConverter().write(msgMsg, entry);
+            entry.put("id", id);
+            Update update = new Update()
+                    .push("msgs", entry)
+                    .inc("count", 1);
+            bulkOps.upsert(query, update);
+        });
+        bulkOps.execute();
+    }
+
+    /**
+     * 查询已写入的消息ID（按消息所在的 [会话, 时间段] 查询，使用 conversation_bucket 索引）
+     * <p>
+     * 不在追加的过滤条件中排除已存在的ID：条件不匹配时 upsert 会新建文档，反而写入重复消息
+     */
+    private Set<String> findExistingIds(Map<String, MsgMsg> msgs) {
+        Set<String> buckets = new HashSet<>();
+        List<Criteria> criteriaList = new ArrayList<>();
+        for (MsgMsg msgMsg : msgs.values()) {
+            String conversation = getConversation(msgMsg.getSender(), msgMsg.getReceiver());
+            LocalDateTime bucket = getBucket(msgMsg.getTime());
+            if (buckets.add(conversation + "\n" + bucket)) {
+                criteriaList.add(Criteria.where("conversation").is(conversation).and("bucket").is(bucket));
+            }
+        }
+        Query query = new Query(new Criteria()
+                .orOperator(criteriaList.toArray(new Criteria[0]))
+                .and("msgs.id").in(msgs.keySet()));
+        query.fields().include("msgs.id");
+        Set<String> existing = new HashSet<>();
+        for (Document document : mongoTemplate.find(query, Document.class, MSG_HISTORY)) {
+            for (Document entry : document.getList("msgs", Document.class, Collections.emptyList())) {
+                String id = entry.getString("id");
+                if (id != null && msgs.containsKey(id)) {
+                    existing.add(id);
+                }
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * 查询会话中位于游标 (before, beforeId) 之前的最近size条消息
+     * <p>
+     * 按时间段由新到旧分批读取分桶文档（每批文档数有上限，排序由 conversation_bucket 索引完成），
+     * 同一时间段的文档读取完整后合并，按 (时间, 消息ID) 排序再截取
+     *
+     * @param before   只查询早于该时间的消息（为null时查询最新的消息）
+     * @param beforeId 与before同时刻的消息中，只查询消息ID小于该值的消息（为null时不查询与before同时刻的消息）
+     * @return 按 (时间, 消息ID) 升序的消息列表；多查询一条，用于判断是否还有更早的消息
+     */
+    public List<MsgMsg> listHistoryMsg(User user, User contact, LocalDateTime before, String beforeId, int size) {
+        String conversation = getConversation(user, contact);
+        List<MsgMsg> result = new ArrayList<>(size + 1);
+        LocalDateTime bound = before != null ? getBucket(before) : null;
+        boolean inclusive = true;
+        int limit = size + 1;
+        while (result.size() <= size) {
+            Criteria criteria = Criteria.where("conversation").is(conversation);
+            if (bound != null) {
+                if (inclusive) {
+                    criteria.and("bucket").lte(bound);
+                } else {
+                    criteria.and("bucket").lt(bound);
+                }
+            }
+            Query query = new Query(criteria).with(Sort.by(Sort.Direction.DESC, "bucket")).limit(limit);
+            List<HistoryBucket> buckets = mongoTemplate.find(query, HistoryBucket.class, MSG_HISTORY);
+            if (buckets.isEmpty()) {
+                break;
+            }
+            boolean exhausted = buckets.size() < limit;
+            int end = buckets.size();
+            if (!exhausted) {
+                // 最后一个时间段的文档可能未读取完整，留待下一批
+                LocalDateTime last = buckets.get(end - 1).getBucket();
+                while (end > 0 && buckets.get(end - 1).getBucket().equals(last)) {
+                    end--;
+                }
+                if (end == 0) {
+                    // 单个时间段的文档数超过每批上限，扩大上限后重新读取
+                    limit *= 2;
+                    continue;
+                }
+            }
+            int i = 0;
+            while (i < end && result.size() <= size) {
+                LocalDateTime bucket = buckets.get(i).getBucket();
+                List<Entry> entries = new ArrayList<>();
+                for (; i < end && buckets.get(i).getBucket().equals(bucket); i++) {
+                    List<MsgMsg> msgs = buckets.get(i).getMsgs();
+                    if (msgs != null) {
+                        for (MsgMsg msgMsg : msgs) {
+                            entries.add(new Entry(msgMsg, MsgRepository.msgId(msgMsg)));
+                        }
+                    }
+                }
+                entries.sort(NEWEST_FIRST);
+                for (int j = 0; j < entries.size() && result.size() <= size; j++) {
+                    if (isBefore(entries.get(j), before, beforeId)) {
+                        result.add(entries.get(j).msg);
+                    }
+                }
+                bound = bucket;
+                inclusive = false;
+            }
+            if (exhausted) {
+                break;
+            }
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * 判断消息是否位于游标 (before, beforeId) 之前
+     */
+    private static boolean isBefore(Entry entry, LocalDateTime before, String beforeId) {
+        if (before == null) {
+            return true;
+        }
+        int compare = entry.msg.getTime().compareTo(before);
+        if (compare != 0) {
+            return compare < 0;
+        }
+        return beforeId != null && entry.id.compareTo(beforeId) < 0;
+    }
+
+    /**
+     * 获取会话标识（与双方顺序无关）
+     */
+    String getConversation(User a, User b) {
+        String aStr = TransformUtil.transform(a);
+        String bStr = TransformUtil.transform(b);
+        return aStr.compareTo(bStr) <= 0 ? aStr + "|" + bStr : bStr + "|" + aStr;
+    }
+
+    /**
+     * 获取时间所在时间段的起点
+     */
+    LocalDateTime getBucket(LocalDateTime time) {
+        return time.truncatedTo(configUtil.getHISTORY_BUCKET_UNIT());
+    }
+
+    /**
+     * 消息及其ID
+     */
+    private static final class Entry {
+
+        final MsgMsg msg;
+
+        final String id;
+
+        Entry(MsgMsg msg, String id) {
+            this.msg = msg;
+            this.id = id;
+        }
+    }
+}
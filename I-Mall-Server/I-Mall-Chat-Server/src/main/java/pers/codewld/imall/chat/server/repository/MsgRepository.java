@@ -1,23 +1,56 @@
 package pers.codewld.imall.chat.server.repository;
 
+import com.mongodb.bulk.BulkWriteError;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.index.Index;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
 import pers.codewld.imall.chat.model.entity.User;
 import pers.codewld.imall.chat.model.message.queue.MsgMsg;
+import pers.codewld.imall.chat.util.TransformUtil;
 
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
 /**
  * <p>
  * 信息 Repository类
  * </p>
+ * <p>
+ * 描述：未读消息数由 unreadCount 集合维护（每个接收者一个文档，包含总数及按发送者的分项数），写入时增量更新，查询为按主键读取。
+ * 未读消息的主键由消息内容确定，同一消息重复写入（如队列重新投递）时只保存一次，未读消息数也只增加一次。
+ * 分项以发送者为字段名，其中的 . 与 $ 经转义，避免被解析为嵌套字段或操作符
+ * </p>
  *
  * @author codewld
  * @since 2022-03-25
  */
+@Slf4j
 @Component
 public class MsgRepository {
 
@@ -26,28 +59,404 @@ public class MsgRepository {
 
     final String UNREAD_MSG = "unreadMsg";
 
+    final String UNREAD_COUNT = "unreadCount";
+
+    final String TOTAL = "total";
+
+    final String SENDERS = "senders";
+
+    /**
+     * 数据迁移标记集合，每项迁移一个文档，记录状态及执行节点的租约
+     */
+    final String MIGRATION = "migration";
+
+    final String UNREAD_COUNT_MIGRATION = "rebuildUnreadCount";
+
+    /**
+     * 迁移租约时长：执行迁移的节点崩溃后，超过该时长其它节点可接手
+     */
+    static final long MIGRATION_LEASE_MS = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * 重建未读消息数时每次批量写入的接收者数，每批写入前续期迁移租约
+     */
+    static final int REBUILD_BATCH_SIZE = 1000;
+
+    /**
+     * Mongo 重复主键错误码
+     */
+    static final int DUPLICATE_KEY = 11000;
+
+    @PostConstruct
+    public void init() {
+        mongoTemplate.indexOps(UNREAD_MSG).ensureIndex(new Index()
+                .on("receiver.system", Sort.Direction.ASC)
+                .on("receiver.id", Sort.Direction.ASC)
+                .on("time", Sort.Direction.ASC)
+                .named("receiver_time"));
+        mongoTemplate.indexOps(UNREAD_MSG).ensureIndex(new Index()
+                .on("receiver.system", Sort.Direction.ASC)
+                .on("receiver.id", Sort.Direction.ASC)
+                .on("sender.system", Sort.Direction.ASC)
+                .on("sender.id", Sort.Direction.ASC)
+                .on("time", Sort.Direction.ASC)
+                .named("receiver_sender_time"));
+        migrateUnreadCount();
+    }
+
+    /**
+     * 首次升级时根据未读消息重建未读消息数；多个节点同时启动时只有取得迁移租约的节点执行
+     */
+    void migrateUnreadCount() {
+        Query marker = new Query(Criteria.where("_id").is(UNREAD_COUNT_MIGRATION));
+        Document migration = mongoTemplate.findOne(marker, Document.class, MIGRATION);
+        if (migration != null && "done".equals(migration.get("state"))) {
+            return;
+        }
+        if (migration == null && mongoTemplate.collectionExists(UNREAD_COUNT)) {
+            // 在引入迁移标记之前已经重建过
+            markMigrationDone(marker);
+            return;
+        }
+        String owner = UUID.randomUUID().toString();
+        if (!acquireMigration(migration, owner)) {
+            log.info("未读消息数正由其它节点重建");
+            return;
+        }
+        if (!rebuildUnreadCount(() -> renewMigration(owner))) {
+            log.warn("重建未读消息数期间迁移租约被其它节点接手");
+            return;
+        }
+        Query held = new Query(Criteria.where("_id").is(UNREAD_COUNT_MIGRATION).and("owner").is(owner));
+        mongoTemplate.updateFirst(held, Update.update("state", "done").unset("lockedAt").unset("owner"), MIGRATION);
+    }
+
+    /**
+     * 取得迁移租约：标记不存在时插入，已存在但租约过期（执行节点崩溃）时接手
+     */
+    private boolean acquireMigration(Document migration, String owner) {
+        Date now = new Date();
+        if (migration == null) {
+            try {
+                mongoTemplate.insert(new Document("_id", UNREAD_COUNT_MIGRATION)
+                        .append("state", "running")
+                        .append("owner", owner)
+                        .append("lockedAt", now), MIGRATION);
+                return true;
+            } catch (DuplicateKeyException e) {
+                return false;
+            }
+        }
+        Query expired = new Query(Criteria.where("_id").is(UNREAD_COUNT_MIGRATION)
+                .and("state").is("running")
+                .and("lockedAt").lt(new Date(now.getTime() - MIGRATION_LEASE_MS)));
+        Update update = Update.update("lockedAt", now).set("owner", owner);
+        return mongoTemplate.updateFirst(expired, update, MIGRATION).getModifiedCount() > 0;
+    }
+
+    /**
+     * 续期迁移租约
+     *
+     * @return 是否仍持有租约（为false时已被其它节点接手）
+     */
+    private boolean renewMigration(String owner) {
+        Query held = new Query(Criteria.where("_id").is(UNREAD_COUNT_MIGRATION)
+                .and("state").is("running")
+                .and("owner").is(owner));
+        return mongoTemplate.updateFirst(held, Update.update("lockedAt", new Date()), MIGRATION).getMatchedCount() > 0;
+    }
+
+    private void markMigrationDone(Query marker) {
+        mongoTemplate.upsert(marker, Update.update("state", "done").unset("lockedAt"), MIGRATION);
+    }
+
     /**
      * 添加未读消息
      */
     public void addUnreadMsg(MsgMsg msgMsg) {
-        mongoTemplate.insert(msgMsg, UNREAD_MSG);
+        addUnreadMsgList(Collections.singletonList(msgMsg));
+    }
+
+    /**
+     * 批量添加未读消息，并增量更新未读消息数
+     * <p>
+     * 已存在的消息（重复写入）跳过，只为新写入的消息增加未读消息数
+     */
+    public void addUnreadMsgList(List<MsgMsg> list) {
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UNREAD_MSG);
+        Set<String> ids = new HashSet<>();
+        List<MsgMsg> inserting = new ArrayList<>(list.size());
+        for (MsgMsg msgMsg : list) {
+            String id = msgId(msgMsg);
+            // 同一批内的重复消息只写入一次
+            if (!ids.add(id)) {
+                continue;
+            }
+            Document document = new Document();
+            mongoTemplate.getConverter().write(msgMsg, document);
+            document.put("_id", id);
+            bulkOps.insert(document);
+            inserting.add(msgMsg);
+        }
+        Set<Integer> skipped = Collections.emptySet();
+        RuntimeException failure = null;
+        try {
+            bulkOps.execute();
+        } catch (BulkOperationException e) {
+            skipped = new HashSet<>();
+            for (BulkWriteError error : e.getErrors()) {
+                skipped.add(error.getIndex());
+                if (error.getCode() != DUPLICATE_KEY && failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        // 接收者 -> 发送者 -> 数量
+        Map<String, Map<String, Long>> counts = new HashMap<>();
+        for (int i = 0; i < inserting.size(); i++) {
+            if (skipped.contains(i)) {
+                continue;
+            }
+            MsgMsg msgMsg = inserting.get(i);
+            counts.computeIfAbsent(TransformUtil.transform(msgMsg.getReceiver()), k -> new HashMap<>())
+                    .merge(senderKey(msgMsg.getSender()), 1L, Long::sum);
+        }
+        incUnreadCount(counts);
+        if (failure != null) {
+            // 已写入的消息已计数，重试时作为重复消息跳过
+            throw failure;
+        }
     }
 
     /**
-     * 查询用户的未读消息
+     * 消息ID（未读消息的主键、历史消息的标识）：由发送者、接收者、发送时间与内容确定
      */
-    public List<MsgMsg> listUnreadMsg(User user) {
-        Criteria criteria = Criteria.where("receiver").is(user);
+    public static String msgId(MsgMsg msgMsg) {
+        String key = TransformUtil.transform(msgMsg.getSender()) + "\n"
+                + TransformUtil.transform(msgMsg.getReceiver()) + "\n"
+                + msgMsg.getTime() + "\n"
+                + msgMsg.getMsg();
+        return DigestUtils.md5DigestAsHex(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 分页遍历用户的未读消息（按时间升序）
+     *
+     * @param pageSize 每页数量
+     * @param maxPages 最大页数，超出时只遍历最新的部分；不大于0时不限制（均基于游标，内存中至多保留一页）
+     * @param consumer 每页的处理函数
+     */
+    public void streamUnreadMsg(User user, int pageSize, int maxPages, Consumer<List<MsgMsg>> consumer) {
+        streamUnreadMsg(receiverCriteria(user), pageSize, maxPages, consumer);
+    }
+
+    /**
+     * 分页遍历用户与某一发送者会话中的未读消息（按时间升序）
+     */
+    public void streamUnreadMsg(User user, User sender, int pageSize, int maxPages, Consumer<List<MsgMsg>> consumer) {
+        streamUnreadMsg(conversationCriteria(user, sender), pageSize, maxPages, consumer);
+    }
+
+    /**
+     * 删除用户来自某一发送者、发送时间不晚于time的未读消息，并扣减未读消息数
+     *
+     * @return 删除的消息数
+     */
+    public long removeUnreadMsg(User user, User sender, LocalDateTime time) {
+        Criteria criteria = conversationCriteria(user, sender);
+        if (time != null) {
+            criteria.and("time").lte(time);
+        }
+        long deleted = mongoTemplate.remove(new Query(criteria), UNREAD_MSG).getDeletedCount();
+        if (deleted > 0) {
+            Update update = new Update()
+                    .inc(SENDERS + "." + senderKey(sender), -deleted)
+                    .inc(TOTAL, -deleted);
+            mongoTemplate.updateFirst(
+                    new Query(Criteria.where("_id").is(TransformUtil.transform(user))), update, UNREAD_COUNT);
+        }
+        return deleted;
+    }
+
+    /**
+     * 按时间升序以游标遍历，每满一页即交给consumer，内存中至多保留一页
+     * <p>
+     * 限制页数时，先按时间降序定位最新部分中最早一条的时间（只读取该条的时间），再从该时间起升序遍历；
+     * 该时刻的消息多于窗口内应有的条数时，跳过多出的部分
+     */
+    private void streamUnreadMsg(Criteria criteria, int pageSize, int maxPages, Consumer<List<MsgMsg>> consumer) {
         Query query = new Query(criteria);
-        return mongoTemplate.find(query, MsgMsg.class, UNREAD_MSG);
+        if (maxPages > 0) {
+            int limit = pageSize * maxPages;
+            Query boundary = new Query(criteria)
+                    .with(Sort.by(Sort.Direction.DESC, "time"))
+                    .skip(limit - 1)
+                    .limit(1);
+            boundary.fields().include("time");
+            Document oldest = mongoTemplate.findOne(boundary, Document.class, UNREAD_MSG);
+            if (oldest != null) {
+                query.addCriteria(Criteria.where("time").gte(oldest.get("time")));
+                long count = mongoTemplate.count(query, UNREAD_MSG);
+                query.skip(Math.max(count - limit, 0)).limit(limit);
+            }
+        }
+        query.with(Sort.by(Sort.Direction.ASC, "time"))
+                .cursorBatchSize(pageSize);
+        List<MsgMsg> page = new ArrayList<>(pageSize);
+        try (CloseableIterator<MsgMsg> iterator = mongoTemplate.stream(query, MsgMsg.class, UNREAD_MSG)) {
+            while (iterator.hasNext()) {
+                page.add(iterator.next());
+                if (page.size() >= pageSize) {
+                    consumer.accept(page);
+                    page = new ArrayList<>(pageSize);
+                }
+            }
+        }
+        if (!page.isEmpty()) {
+            consumer.accept(page);
+        }
     }
 
     /**
      * 查询用户的未读消息数
      */
     public Long countUnreadMsg(User user) {
-        Criteria criteria = Criteria.where("receiver").is(user);
-        Query query = new Query(criteria);
-        return mongoTemplate.count(query, UNREAD_MSG);
+        Document document = findUnreadCount(user);
+        if (document == null) {
+            return 0L;
+        }
+        return toLong(document.get(TOTAL));
+    }
+
+    /**
+     * 查询用户来自某一发送者的未读消息数
+     */
+    public Long countUnreadMsg(User user, User sender) {
+        Document document = findUnreadCount(user);
+        if (document == null) {
+            return 0L;
+        }
+        Document senders = document.get(SENDERS, Document.class);
+        return senders == null ? 0L : toLong(senders.get(senderKey(sender)));
+    }
+
+    /**
+     * 未读消息数分项的字段名：转义发送者中的 % . $（用户ID可能包含 . 等字符）；不含这些字符时与转义前相同
+     */
+    static String senderKey(User sender) {
+        return senderKey(TransformUtil.transform(sender));
+    }
+
+    static String senderKey(String sender) {
+        return sender.replace("%", "%25").replace(".", "%2E").replace("$", "%24");
+    }
+
+    /**
+     * 按接收者匹配，使用点号路径以命中索引
+     */
+    Criteria receiverCriteria(User user) {
+        return Criteria.where("receiver.system").is(user.getSystem())
+                .and("receiver.id").is(user.getId());
+    }
+
+    /**
+     * 按会话（接收者 + 发送者）匹配
+     */
+    Criteria conversationCriteria(User user, User sender) {
+        return receiverCriteria(user)
+                .and("sender.system").is(sender.getSystem())
+                .and("sender.id").is(sender.getId());
+    }
+
+    /**
+     * 批量增量更新未读消息数
+     *
+     * @param counts 接收者 -> 发送者（已转义） -> 增量
+     */
+    void incUnreadCount(Map<String, Map<String, Long>> counts) {
+        if (counts.isEmpty()) {
+            return;
+        }
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UNREAD_COUNT);
+        counts.forEach((receiver, senders) -> {
+            Update update = new Update();
+            long total = 0;
+            for (Map.Entry<String, Long> entry : senders.entrySet()) {
+                update.inc(SENDERS + "." + entry.getKey(), entry.getValue());
+                total += entry.getValue();
+            }
+            update.inc(TOTAL, total);
+            bulkOps.upsert(new Query(Criteria.where("_id").is(receiver)), update);
+        });
+        bulkOps.execute();
+    }
+
+    /**
+     * 根据未读消息重建未读消息数（首次升级时）
+     * <p>
+     * 重建期间新版本节点可能已在增量更新同一文档，因此各字段以 $max 写入，不覆盖更大的值；重复执行结果相同。
+     * 分批写入，每批写入前续期迁移租约，租约丢失时停止
+     *
+     * @param renew 续期迁移租约，返回是否仍持有租约
+     * @return 是否完成
+     */
+    boolean rebuildUnreadCount(BooleanSupplier renew) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.project()
+                        .and("receiver.system").as("receiverSystem")
+                        .and("receiver.id").as("receiverId")
+                        .and("sender.system").as("senderSystem")
+                        .and("sender.id").as("senderId"),
+                Aggregation.group("receiverSystem", "receiverId", "senderSystem", "senderId").count().as("count"));
+        Map<String, Map<String, Long>> counts = new HashMap<>();
+        for (Document document : mongoTemplate.aggregate(aggregation, UNREAD_MSG, Document.class)) {
+            Document id = document.get("_id", Document.class);
+            Document group = id != null ? id : document;
+            String receiver = group.get("receiverSystem") + "_" + group.get("receiverId");
+            String sender = senderKey(group.get("senderSystem") + "_" + group.get("senderId"));
+            counts.computeIfAbsent(receiver, k -> new HashMap<>()).put(sender, toLong(document.get("count")));
+        }
+        if (counts.isEmpty()) {
+            if (!mongoTemplate.collectionExists(UNREAD_COUNT)) {
+                mongoTemplate.createCollection(UNREAD_COUNT);
+            }
+            return true;
+        }
+        BulkOperations bulkOps = null;
+        int size = 0;
+        for (Map.Entry<String, Map<String, Long>> entry : counts.entrySet()) {
+            if (bulkOps == null) {
+                if (!renew.getAsBoolean()) {
+                    return false;
+                }
+                bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UNREAD_COUNT);
+            }
+            Update update = new Update();
+            long total = 0;
+            for (Map.Entry<String, Long> sender : entry.getValue().entrySet()) {
+                update.max(SENDERS + "." + sender.getKey(), sender.getValue());
+                total += sender.getValue();
+            }
+            update.max(TOTAL, total);
+            bulkOps.upsert(new Query(Criteria.where("_id").is(entry.getKey())), update);
+            if (++size >= REBUILD_BATCH_SIZE) {
+                bulkOps.execute();
+                bulkOps = null;
+                size = 0;
+            }
+        }
+        if (bulkOps != null) {
+            bulkOps.execute();
+        }
+        return true;
+    }
+
+    Document findUnreadCount(User user) {
+        Query query = new Query(Criteria.where("_id").is(TransformUtil.transform(user)));
+        return mongoTemplate.findOne(query, Document.class, UNREAD_COUNT);
+    }
+
+    static Long toLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
     }
 }
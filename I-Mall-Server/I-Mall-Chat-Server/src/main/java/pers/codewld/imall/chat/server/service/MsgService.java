@@ -1,7 +1,11 @@
 package pers.codewld.imall.chat.server.service;
 
 import pers.codewld.imall.chat.model.entity.User;
+import pers.codewld.imall.chat.model.message.queue.BroadcastMsg;
+import pers.codewld.imall.chat.model.message.queue.GroupMsg;
+import pers.codewld.imall.chat.model.message.queue.HistoryQueryMsg;
 import pers.codewld.imall.chat.model.message.queue.MsgMsg;
+import pers.codewld.imall.chat.model.message.queue.ReadMsg;
 
 /**
  * <p>
@@ -14,23 +18,74 @@ import pers.codewld.imall.chat.model.message.queue.MsgMsg;
 public interface MsgService {
 
     /**
-     * 添加未读消息
+     * 添加未读消息（写入缓冲，由flush批量写入数据库）
      */
     void addUnreadMsg(MsgMsg msgMsg);
 
     /**
-     * 发送未读信息数
+     * 添加历史消息（写入缓冲，由flush批量写入数据库）
+     */
+    void addHistoryMsg(MsgMsg msgMsg);
+
+    /**
+     * 开始处理一批队列消息：此后当前线程添加的未读消息、历史消息与未读信息数写入该批次独立的缓冲，直到endBatch
+     */
+    void beginBatch();
+
+    /**
+     * 结束当前线程的批次：将批次缓冲写入数据库，并发送未读信息数；写入失败时抛出异常
+     */
+    void endBatch();
+
+    /**
+     * 将缓冲中（当前线程的批次缓冲及共享缓冲）的未读消息和历史消息批量写入数据库，并发送期间累积的未读信息数；
+     * 写入失败时未写入的部分保留在缓冲中，并抛出异常
+     */
+    void flush();
+
+    /**
+     * 发送未读信息数（在下一次flush后发送，同一用户只发送一次）
      */
     void sendUnreadCount(User user);
 
     /**
-     * 发送未读消息
+     * 发送未读消息（按页分多条发送）
      */
     void sendUnreadMsg(User user);
 
+    /**
+     * 发送用户与某一联系人会话中的未读消息（按页分多条发送）
+     */
+    void sendUnreadMsg(User user, User contact);
+
+    /**
+     * 标记消息已读：删除对应的未读消息，并发送新的未读信息数
+     */
+    void readMsg(ReadMsg readMsg);
+
+    /**
+     * 发送历史消息
+     */
+    void sendHistoryMsg(HistoryQueryMsg historyQueryMsg);
+
     /**
      * 发送消息
      */
     void sendMsg(MsgMsg msgMsg);
 
+    /**
+     * 发送消息，跳过已投递的网关节点
+     */
+    void sendMsg(MsgMsg msgMsg, String excludedNode);
+
+    /**
+     * 发送群聊消息：按接收者所在的网关节点分批投递给在线的群成员
+     */
+    void sendGroupMsg(GroupMsg groupMsg);
+
+    /**
+     * 发送系统广播：向目标系统的每个网关节点各发送一条
+     */
+    void broadcast(BroadcastMsg broadcastMsg);
+
 }
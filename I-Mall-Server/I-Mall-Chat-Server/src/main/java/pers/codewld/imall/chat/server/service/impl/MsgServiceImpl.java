@@ -1,33 +1,64 @@
 package pers.codewld.imall.chat.server.service.impl;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
+import pers.codewld.imall.chat.metrics.ChatMetrics;
 import pers.codewld.imall.chat.model.entity.User;
+import pers.codewld.imall.chat.model.enums.SystemCode;
+import pers.codewld.imall.chat.model.message.queue.BroadcastMsg;
+import pers.codewld.imall.chat.model.message.queue.GroupDeliverMsg;
+import pers.codewld.imall.chat.model.message.queue.GroupMsg;
+import pers.codewld.imall.chat.model.message.queue.HistoryListMsg;
+import pers.codewld.imall.chat.model.message.queue.HistoryQueryMsg;
 import pers.codewld.imall.chat.model.message.queue.MsgMsg;
+import pers.codewld.imall.chat.model.message.queue.ReadMsg;
 import pers.codewld.imall.chat.model.message.queue.UnreadCountMsg;
 import pers.codewld.imall.chat.model.message.queue.MsgListMsg;
+import pers.codewld.imall.chat.server.cache.GroupCache;
+import pers.codewld.imall.chat.server.cache.UserStatusCache;
+import pers.codewld.imall.chat.server.repository.HistoryRepository;
 import pers.codewld.imall.chat.server.repository.MsgRepository;
 import pers.codewld.imall.chat.server.service.MsgService;
 import pers.codewld.imall.chat.server.util.ConfigUtil;
-import pers.codewld.imall.common.util.RedisUtil;
+import pers.codewld.imall.chat.util.TransformUtil;
+import pers.codewld.imall.common.queue.MsgQueue;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * <p>
  * 信息 服务实现类
  * </p>
+ * <p>
+ * 描述：未读消息与历史消息先写入缓冲，批量写入数据库；未读消息数在写入后统一发送。
+ * 持久化模式下每批队列消息使用当前线程独立的批次缓冲，在该批消息确认前写入，各分区互不阻塞；
+ * 否则写入共享缓冲，达到数量阈值或定时写入。写入失败时未写入的部分保留在缓冲中，并抛出异常
+ * </p>
  *
  * @author codewld
  * @since 2022-03-25
  */
+@Slf4j
 @Service
 public class MsgServiceImpl implements MsgService {
 
     @Autowired
-    RedisUtil redisUtil;
+    MsgQueue msgQueue;
 
     @Qualifier("myConfigUtil")
     @Autowired
@@ -36,48 +67,388 @@ public class MsgServiceImpl implements MsgService {
     @Autowired
     MsgRepository msgRepository;
 
+    @Autowired
+    HistoryRepository historyRepository;
+
+    @Autowired
+    UserStatusCache userStatusCache;
+
+    @Autowired
+    GroupCache groupCache;
+
+    @Autowired
+    ChatMetrics chatMetrics;
+
+    /**
+     * 共享缓冲，由this保护
+     */
+    private Buffer buffer = new Buffer();
+
+    /**
+     * 当前线程正在处理的批次的缓冲，不在批次中时为null
+     */
+    private final ThreadLocal<Buffer> batchBuffer = new ThreadLocal<>();
+
+    /**
+     * 保证同一时刻只有一个线程在写共享缓冲，使flush返回时，此前加入共享缓冲的消息均已写入
+     */
+    private final Object flushLock = new Object();
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("unread-msg-flusher-"));
+        long interval = configUtil.getUNREAD_FLUSH_INTERVAL();
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (Exception e) {
+                log.error(e.getMessage());
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdown();
+        flush();
+    }
+
     @Override
     public void addUnreadMsg(MsgMsg msgMsg) {
-        msgRepository.addUnreadMsg(msgMsg);
+        Buffer batch = batchBuffer.get();
+        if (batch != null) {
+            batch.unreadMsgs.add(msgMsg);
+            return;
+        }
+        boolean full;
+        synchronized (this) {
+            buffer.unreadMsgs.add(msgMsg);
+            full = buffer.unreadMsgs.size() >= configUtil.getUNREAD_FLUSH_SIZE();
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    @Override
+    public void addHistoryMsg(MsgMsg msgMsg) {
+        Buffer batch = batchBuffer.get();
+        if (batch != null) {
+            batch.historyMsgs.add(msgMsg);
+            return;
+        }
+        boolean full;
+        synchronized (this) {
+            buffer.historyMsgs.add(msgMsg);
+            full = buffer.historyMsgs.size() >= configUtil.getUNREAD_FLUSH_SIZE();
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    @Override
+    public void beginBatch() {
+        batchBuffer.set(new Buffer());
+    }
+
+    @Override
+    public void endBatch() {
+        Buffer batch = batchBuffer.get();
+        batchBuffer.remove();
+        if (batch != null) {
+            write(batch);
+        }
+    }
+
+    @Override
+    public void flush() {
+        Buffer batch = batchBuffer.get();
+        if (batch != null) {
+            // 写入失败时未写入的部分仍在批次缓冲中，由endBatch重试
+            write(batch);
+        }
+        synchronized (flushLock) {
+            Buffer flushing;
+            synchronized (this) {
+                if (buffer.isEmpty()) {
+                    return;
+                }
+                flushing = buffer;
+                buffer = new Buffer();
+            }
+            try {
+                write(flushing);
+            } catch (RuntimeException e) {
+                // 放回共享缓冲，排在期间新加入的消息之前
+                synchronized (this) {
+                    flushing.addAll(buffer);
+                    buffer = flushing;
+                }
+                throw e;
+            }
+        }
     }
 
     @Override
     public void sendUnreadCount(User user) {
-        Long unreadMsgCount = msgRepository.countUnreadMsg(user);
-        redisUtil.lPush(
-                getPostQueue(user),
-                new UnreadCountMsg(user, unreadMsgCount),
-                0);
+        Buffer batch = batchBuffer.get();
+        if (batch != null) {
+            batch.unreadCountUsers.add(user);
+            return;
+        }
+        synchronized (this) {
+            buffer.unreadCountUsers.add(user);
+        }
     }
 
     @Override
     public void sendUnreadMsg(User user) {
-        List<MsgMsg> unreadMsgList = msgRepository.listUnreadMsg(user);
-        sendMsgList(user, unreadMsgList);
+        // 先写入缓冲中的未读消息，保证查询结果完整
+        flush();
+        sendUnreadMsgPages(user, consumer -> msgRepository.streamUnreadMsg(
+                user, configUtil.getUNREAD_PAGE_SIZE(), configUtil.getUNREAD_MAX_PAGES(), consumer));
+    }
+
+    @Override
+    public void sendUnreadMsg(User user, User contact) {
+        flush();
+        sendUnreadMsgPages(user, consumer -> msgRepository.streamUnreadMsg(
+                user, contact, configUtil.getUNREAD_PAGE_SIZE(), configUtil.getUNREAD_MAX_PAGES(), consumer));
+    }
+
+    @Override
+    public void readMsg(ReadMsg readMsg) {
+        // 先写入缓冲中的未读消息，避免已读的消息在之后才写入
+        flush();
+        long deleted = msgRepository.removeUnreadMsg(readMsg.getReceiver(), readMsg.getSender(), readMsg.getTime());
+        if (deleted > 0) {
+            sendUnreadCount(readMsg.getReceiver());
+        }
+    }
+
+    @Override
+    public void sendHistoryMsg(HistoryQueryMsg historyQueryMsg) {
+        // 先写入缓冲中的历史消息，保证查询结果完整
+        flush();
+        User user = historyQueryMsg.getUser();
+        Integer size = historyQueryMsg.getSize();
+        int limit = size == null || size <= 0
+                ? configUtil.getHISTORY_PAGE_SIZE()
+                : Math.min(size, configUtil.getHISTORY_MAX_PAGE_SIZE());
+        List<MsgMsg> list = historyRepository.listHistoryMsg(
+                user, historyQueryMsg.getContact(), historyQueryMsg.getBefore(), historyQueryMsg.getBeforeId(), limit);
+        boolean hasMore = list.size() > limit;
+        if (hasMore) {
+            // 多查询的一条为最早的消息，位于列表首位
+            list = list.subList(1, list.size());
+        }
+        HistoryListMsg historyListMsg = new HistoryListMsg(user, historyQueryMsg.getContact(), new ArrayList<>(list), hasMore);
+        if (!list.isEmpty()) {
+            // 最早一条消息的 (时间, ID) 作为下一页的游标
+            historyListMsg.setBeforeId(MsgRepository.msgId(list.get(0)));
+        }
+        push(user, historyListMsg, null);
     }
 
     @Override
     public void sendMsg(MsgMsg msgMsg) {
+        sendMsg(msgMsg, null);
+    }
+
+    @Override
+    public void sendMsg(MsgMsg msgMsg, String excludedNode) {
         List<MsgMsg> list = new ArrayList<>();
         list.add(msgMsg);
-        sendMsgList(msgMsg.getReceiver(), list);
+        push(msgMsg.getReceiver(), new MsgListMsg(msgMsg.getReceiver(), list), excludedNode);
+    }
+
+    @Override
+    public void sendGroupMsg(GroupMsg groupMsg) {
+        Set<User> members = groupCache.getMembers(groupMsg.getGroupId());
+        if (!members.contains(groupMsg.getSender())) {
+            log.warn("非群成员不能发送群聊消息：" + TransformUtil.transform(groupMsg.getSender()));
+            return;
+        }
+        // 处理后队列 -> 该队列所在节点上的在线成员
+        Map<String, List<User>> receivers = new LinkedHashMap<>();
+        for (User member : members) {
+            if (member.equals(groupMsg.getSender())) {
+                continue;
+            }
+            String key = TransformUtil.transform(member);
+            Set<String> nodes = userStatusCache.getNodes(key);
+            if (!nodes.isEmpty()) {
+                for (String node : nodes) {
+                    receivers.computeIfAbsent(configUtil.getPostQueue(member.getSystem(), node), k -> new ArrayList<>()).add(member);
+                }
+                continue;
+            }
+            MsgMsg msgMsg = new MsgMsg(groupMsg.getSender(), member, groupMsg.getMsg(), groupMsg.getTime());
+            if (userStatusCache.get(key) != null) {
+                // 节点未知（旧版本网关）：以单聊消息发往未区分节点的处理后队列
+                sendMsg(msgMsg);
+            } else {
+                // 离线：记为未读消息，上线时随未读消息一并发送
+                addUnreadMsg(msgMsg);
+            }
+        }
+        int batchSize = configUtil.getGROUP_FAN_OUT_BATCH_SIZE();
+        Map<String, List<Object>> msgs = new LinkedHashMap<>();
+        receivers.forEach((queue, users) -> {
+            List<Object> list = new ArrayList<>();
+            for (int i = 0; i < users.size(); i += batchSize) {
+                List<User> batch = new ArrayList<>(users.subList(i, Math.min(i + batchSize, users.size())));
+                GroupDeliverMsg groupDeliverMsg = new GroupDeliverMsg(batch, groupMsg);
+                chatMetrics.stamp(groupDeliverMsg);
+                list.add(groupDeliverMsg);
+            }
+            msgs.put(queue, list);
+        });
+        if (!msgs.isEmpty()) {
+            msgQueue.pushAll(msgs);
+        }
+    }
+
+    @Override
+    public void broadcast(BroadcastMsg broadcastMsg) {
+        if (broadcastMsg.getSender() == null || broadcastMsg.getSender().getSystem() != SystemCode.ADMIN) {
+            log.warn("非管理员不能发送系统广播：" + TransformUtil.transform(broadcastMsg.getSender()));
+            return;
+        }
+        SystemCode[] systems = broadcastMsg.getSystem() != null
+                ? new SystemCode[]{broadcastMsg.getSystem()}
+                : SystemCode.values();
+        chatMetrics.stamp(broadcastMsg);
+        Map<String, List<Object>> msgs = new LinkedHashMap<>();
+        for (SystemCode system : systems) {
+            for (String node : userStatusCache.getNodes(system)) {
+                msgs.put(configUtil.getPostQueue(system, node), Collections.singletonList(broadcastMsg));
+            }
+        }
+        if (!msgs.isEmpty()) {
+            msgQueue.pushAll(msgs);
+        }
+    }
+
+    /**
+     * 将缓冲写入数据库，并发送未读消息数；各部分写入成功后才从缓冲中移除
+     */
+    private void write(Buffer buffer) {
+        if (!buffer.unreadMsgs.isEmpty() || !buffer.historyMsgs.isEmpty()) {
+            long start = System.nanoTime();
+            if (!buffer.unreadMsgs.isEmpty()) {
+                msgRepository.addUnreadMsgList(buffer.unreadMsgs);
+            }
+            if (!buffer.historyMsgs.isEmpty()) {
+                historyRepository.addHistoryMsgList(buffer.historyMsgs);
+            }
+            chatMetrics.record(ChatMetrics.STAGE_SERVER_PERSIST, System.nanoTime() - start);
+            buffer.unreadMsgs.clear();
+            buffer.historyMsgs.clear();
+        }
+        if (buffer.unreadCountUsers.isEmpty()) {
+            return;
+        }
+        // 所有未读消息数通过一次往返发送
+        Map<String, List<Object>> msgs = new LinkedHashMap<>();
+        for (User user : buffer.unreadCountUsers) {
+            Long unreadMsgCount = msgRepository.countUnreadMsg(user);
+            collect(msgs, user, new UnreadCountMsg(user, unreadMsgCount), null);
+        }
+        if (!msgs.isEmpty()) {
+            msgQueue.pushAll(msgs);
+        }
+        buffer.unreadCountUsers.clear();
+    }
+
+    /**
+     * 按页发送未读消息，单条队列消息和单个WebSocket帧的大小均不超过一页；无未读消息时发送空列表
+     * <p>
+     * 一次至多发送 max-pages 页，避免超出网关连接发送队列的上限而被丢弃；达到上限时（可能还有更早的未读消息）一并发送未读消息数
+     */
+    private void sendUnreadMsgPages(User user, Consumer<Consumer<List<MsgMsg>>> stream) {
+        int[] pages = new int[1];
+        stream.accept(page -> {
+            sendMsgList(user, page);
+            pages[0]++;
+        });
+        if (pages[0] == 0) {
+            sendMsgList(user, new ArrayList<>());
+        } else if (pages[0] >= configUtil.getUNREAD_MAX_PAGES() && configUtil.getUNREAD_MAX_PAGES() > 0) {
+            sendUnreadCount(user);
+        }
     }
 
     /**
      * 发送消息列表
      */
     private void sendMsgList(User user, List<MsgMsg> list) {
-        redisUtil.lPush(
-                getPostQueue(user),
-                new MsgListMsg(user, list),
-                0
-        );
+        push(user, new MsgListMsg(user, list), null);
+    }
+
+    /**
+     * 向用户连接所在的每个网关节点的处理后队列发送消息（多个节点时通过一次往返发送）
+     *
+     * @param excludedNode 跳过的节点，可为null
+     */
+    private void push(User user, Object msg, String excludedNode) {
+        Map<String, List<Object>> msgs = new LinkedHashMap<>();
+        collect(msgs, user, msg, excludedNode);
+        if (msgs.size() == 1) {
+            Map.Entry<String, List<Object>> entry = msgs.entrySet().iterator().next();
+            msgQueue.push(entry.getKey(), msg);
+        } else if (!msgs.isEmpty()) {
+            msgQueue.pushAll(msgs);
+        }
     }
 
     /**
-     * 获取用户对应的处理后队列PostQueue
+     * 将发往用户的消息按处理后队列归集
+     * <p>
+     * 节点未知时（旧版本网关写入的状态）发往未区分节点的处理后队列
+     *
+     * @param msgs         队列名 -> 消息列表
+     * @param excludedNode 跳过的节点，可为null
      */
-    private String getPostQueue(User user) {
-        return configUtil.getPOST_QUEUE_PREFIX() + "-" + user.getSystem().getName();
+    private void collect(Map<String, List<Object>> msgs, User user, Object msg, String excludedNode) {
+        chatMetrics.stamp(msg);
+        Set<String> nodes = userStatusCache.getNodes(TransformUtil.transform(user));
+        if (nodes.isEmpty()) {
+            msgs.computeIfAbsent(configUtil.getPostQueue(user.getSystem()), k -> new ArrayList<>()).add(msg);
+            return;
+        }
+        for (String node : nodes) {
+            if (!node.equals(excludedNode)) {
+                msgs.computeIfAbsent(configUtil.getPostQueue(user.getSystem(), node), k -> new ArrayList<>()).add(msg);
+            }
+        }
+    }
+
+    /**
+     * 未读消息、历史消息与待发送未读消息数的用户
+     */
+    private static final class Buffer {
+
+        final List<MsgMsg> unreadMsgs = new ArrayList<>();
+
+        final List<MsgMsg> historyMsgs = new ArrayList<>();
+
+        final Set<User> unreadCountUsers = new LinkedHashSet<>();
+
+        boolean isEmpty() {
+            return unreadMsgs.isEmpty() && historyMsgs.isEmpty() && unreadCountUsers.isEmpty();
+        }
+
+        /**
+         * 追加另一缓冲中的内容
+         */
+        void addAll(Buffer other) {
+            unreadMsgs.addAll(other.unreadMsgs);
+            historyMsgs.addAll(other.historyMsgs);
+            unreadCountUsers.addAll(other.unreadCountUsers);
+        }
     }
 }
@@ -4,6 +4,8 @@ import lombok.Getter;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.time.temporal.ChronoUnit;
+
 /**
  * <p>
  * 配置 工具类 扩展
@@ -18,4 +20,114 @@ public class ConfigUtil extends pers.codewld.imall.chat.util.ConfigUtil {
 
     @Value("${chat.user-status-hash}")
     String USER_STATUS_HASH;
+
+    /**
+     * 用户状态变更通知频道
+     */
+    @Value("${chat.user-status-channel:chat-user-status-channel}")
+    String USER_STATUS_CHANNEL;
+
+    /**
+     * 用户状态写回Redis的间隔（毫秒）
+     */
+    @Value("${chat.user-status-flush-interval:100}")
+    long USER_STATUS_FLUSH_INTERVAL;
+
+    /**
+     * 用户状态从Redis重新同步的间隔（毫秒），用于修复漏收的变更通知；0表示不同步
+     */
+    @Value("${chat.user-status-resync-interval:60000}")
+    long USER_STATUS_RESYNC_INTERVAL;
+
+    /**
+     * 网关节点心跳超时时间（毫秒），超时节点上的用户状态在重新同步时被清理；0表示不清理
+     */
+    @Value("${chat.node-heartbeat.timeout:60000}")
+    long NODE_HEARTBEAT_TIMEOUT;
+
+    /**
+     * 未读消息缓冲达到该数量时写入数据库
+     */
+    @Value("${chat.unread.flush-size:500}")
+    int UNREAD_FLUSH_SIZE;
+
+    /**
+     * 未读消息缓冲定时写入数据库的间隔（毫秒）
+     */
+    @Value("${chat.unread.flush-interval:50}")
+    long UNREAD_FLUSH_INTERVAL;
+
+    /**
+     * 发送未读消息时每页的消息数
+     */
+    @Value("${chat.unread.page-size:100}")
+    int UNREAD_PAGE_SIZE;
+
+    /**
+     * 每次发送未读消息的最大页数，超出时只发送最新的部分；应明显小于网关连接发送队列的上限，避免排队中的页被丢弃
+     */
+    @Value("${chat.unread.max-pages:10}")
+    int UNREAD_MAX_PAGES;
+
+    /**
+     * 持久化模式：每批消息处理完后先将未读消息写入数据库，再确认队列中的消息
+     */
+    @Value("${chat.unread.durable:true}")
+    boolean UNREAD_DURABLE;
+
+    /**
+     * 历史消息分桶的时间段（HOURS 或 DAYS）
+     */
+    @Value("${chat.history.bucket-unit:DAYS}")
+    ChronoUnit HISTORY_BUCKET_UNIT;
+
+    /**
+     * 每个历史消息分桶文档的最大消息数
+     */
+    @Value("${chat.history.bucket-max-size:500}")
+    int HISTORY_BUCKET_MAX_SIZE;
+
+    /**
+     * 单次查询历史消息的默认数量
+     */
+    @Value("${chat.history.page-size:20}")
+    int HISTORY_PAGE_SIZE;
+
+    /**
+     * 单次查询历史消息的最大数量
+     */
+    @Value("${chat.history.max-page-size:100}")
+    int HISTORY_MAX_PAGE_SIZE;
+
+    /**
+     * 群成员缓存的有效期（毫秒）
+     */
+    @Value("${chat.group.cache-ttl:60000}")
+    long GROUP_CACHE_TTL;
+
+    /**
+     * 群聊消息投递时，每条队列消息包含的最大接收者数
+     */
+    @Value("${chat.group.fan-out-batch-size:500}")
+    int GROUP_FAN_OUT_BATCH_SIZE;
+
+    /**
+     * 当前节点消费的处理前队列分区，为空时消费所有分区
+     */
+    @Value("${chat.consumer.partitions:}")
+    int[] CONSUMER_PARTITIONS;
+
+    /**
+     * 获取当前节点消费的处理前队列分区
+     */
+    public int[] getConsumerPartitions() {
+        if (CONSUMER_PARTITIONS != null && CONSUMER_PARTITIONS.length != 0) {
+            return CONSUMER_PARTITIONS;
+        }
+        int[] partitions = new int[Math.max(getPRE_QUEUE_PARTITIONS(), 1)];
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i] = i;
+        }
+        return partitions;
+    }
 }
@@ -0,0 +1,179 @@
+package pers.codewld.imall.chat.server.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.DefaultMessage;
+import pers.codewld.imall.chat.model.enums.SystemCode;
+import pers.codewld.imall.chat.server.util.ConfigUtil;
+import pers.codewld.imall.common.util.RedisBatch;
+import pers.codewld.imall.common.util.RedisUtil;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * <p>
+ * 用户状态 本地缓存 测试
+ * </p>
+ * <p>
+ * 描述：覆盖写回失败后保留变更、从Redis重新同步时本地未写回的变更优先，读取快照期间发生的变更不被快照覆盖，清理已下线网关节点上的用户状态，以及按节点维护的索引随各类变更更新
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+class UserStatusCacheTests {
+
+    private static final String HASH = "chat-user-status-hash";
+
+    private static final String HEARTBEAT_HASH = "chat-node-heartbeat-hash";
+
+    private RedisUtil redisUtil;
+
+    private UserStatusCache cache;
+
+    @BeforeEach
+    void setUp() {
+        redisUtil = mock(RedisUtil.class);
+        ConfigUtil configUtil = mock(ConfigUtil.class);
+        when(configUtil.getUSER_STATUS_HASH()).thenReturn(HASH);
+        when(configUtil.getUSER_STATUS_CHANNEL()).thenReturn("chat-user-status-channel");
+        cache = new UserStatusCache();
+        cache.redisUtil = redisUtil;
+        cache.configUtil = configUtil;
+    }
+
+    @Test
+    void failedFlushKeepsChangesForRetry() {
+        RedisBatch failing = mock(RedisBatch.class);
+        when(failing.execute()).thenThrow(new RedisConnectionFailureException("down"));
+        RedisBatch ok = mock(RedisBatch.class);
+        when(redisUtil.batch()).thenReturn(failing, ok);
+
+        cache.put("WEB_1", "online", "node-a");
+        assertThrows(RedisConnectionFailureException.class, cache::flush);
+
+        cache.flush();
+        verify(ok).hSetAll(HASH, Collections.singletonMap("WEB_1", "online|node-a"));
+
+        // 已写回，不再重复写入
+        cache.flush();
+        verify(redisUtil, times(2)).batch();
+    }
+
+    @Test
+    void resyncPrefersUnflushedLocalChanges() {
+        Map<Object, Object> stored = new HashMap<>();
+        stored.put("WEB_1", "online|node-a");
+        stored.put("WEB_2", "online|node-b");
+        when(redisUtil.hGetAll(HASH)).thenReturn(stored);
+        cache.resync();
+        assertEquals("online", cache.get("WEB_1"));
+        assertEquals(Collections.singleton("node-b"), cache.getNodes("WEB_2"));
+
+        // WEB_1 在本地离线但尚未写回；WEB_2 的离线通知漏收，Redis 中已删除
+        cache.remove("WEB_1", "node-a");
+        stored.remove("WEB_2");
+        stored.put("WEB_3", "away");
+        cache.resync();
+        assertNull(cache.get("WEB_1"));
+        assertNull(cache.get("WEB_2"));
+        assertEquals("away", cache.get("WEB_3"));
+        verify(redisUtil, times(1)).publish(eq("chat-user-status-channel"), any());
+    }
+
+    @Test
+    void snapshotReadBeforeFlushDoesNotOverwriteNewerChanges() {
+        when(redisUtil.batch()).thenReturn(mock(RedisBatch.class));
+        cache.put("WEB_2", "online", "node-a");
+        cache.flush();
+
+        // 读取快照期间：WEB_1 上线、WEB_2 离线，并写回完成；快照仍为变更前的内容
+        Map<Object, Object> stale = new HashMap<>();
+        stale.put("WEB_2", "online|node-a");
+        when(redisUtil.hGetAll(HASH)).thenAnswer(invocation -> {
+            cache.put("WEB_1", "online", "node-a");
+            cache.remove("WEB_2", "node-a");
+            cache.flush();
+            return stale;
+        });
+        cache.resync();
+        assertEquals("online", cache.get("WEB_1"));
+        assertNull(cache.get("WEB_2"));
+
+        // 之后的快照已包含写回的结果，以快照为准
+        Map<Object, Object> fresh = new HashMap<>();
+        fresh.put("WEB_1", "online|node-a");
+        doReturn(fresh).when(redisUtil).hGetAll(HASH);
+        cache.resync();
+        assertEquals("online", cache.get("WEB_1"));
+        assertNull(cache.get("WEB_2"));
+    }
+
+    @Test
+    void resyncRemovesUsersOnStaleNodes() {
+        ConfigUtil configUtil = cache.configUtil;
+        when(configUtil.getNODE_HEARTBEAT_HASH()).thenReturn(HEARTBEAT_HASH);
+        when(configUtil.getNODE_HEARTBEAT_TIMEOUT()).thenReturn(60000L);
+        Map<Object, Object> heartbeats = new HashMap<>();
+        heartbeats.put("node-a", System.currentTimeMillis());
+        heartbeats.put("node-b", System.currentTimeMillis() - 120000);
+        when(redisUtil.hGetAll(HEARTBEAT_HASH)).thenReturn(heartbeats);
+        Map<Object, Object> stored = new HashMap<>();
+        stored.put("WEB_1", "online|node-a,node-b");
+        stored.put("WEB_2", "online|node-b");
+        stored.put("WEB_3", "online|node-c");
+        stored.put("WEB_4", "online");
+        when(redisUtil.hGetAll(HASH)).thenReturn(stored);
+
+        cache.resync();
+        assertEquals(Collections.singleton("node-a"), cache.getNodes("WEB_1"));
+        assertNull(cache.get("WEB_2"));
+        // 没有心跳的节点同样视为下线；未记录节点的状态（旧版本网关）保留
+        assertNull(cache.get("WEB_3"));
+        assertEquals("online", cache.get("WEB_4"));
+        assertEquals(Collections.singleton("node-a"), cache.getNodes(SystemCode.WEB));
+        verify(redisUtil).hDel(HEARTBEAT_HASH, "node-b");
+    }
+
+    @Test
+    void nodeIndexFollowsEveryChange() {
+        cache.put("WEB_1", "online", "node-a");
+        cache.put("WEB_2", "online", "node-a");
+        cache.put("WEB_2", "online", "node-b");
+        cache.put("ADMIN_1", "online", "node-c");
+        assertEquals(new HashSet<>(Arrays.asList("node-a", "node-b")), cache.getNodes(SystemCode.WEB));
+        assertEquals(Collections.singleton("node-c"), cache.getNodes(SystemCode.ADMIN));
+
+        // 节点上仍有其它用户时保留该节点
+        cache.remove("WEB_2", "node-a");
+        assertEquals(new HashSet<>(Arrays.asList("node-a", "node-b")), cache.getNodes(SystemCode.WEB));
+        cache.remove("WEB_2", "node-b");
+        assertEquals(Collections.singleton("node-a"), cache.getNodes(SystemCode.WEB));
+
+        // 其它节点的通知与同步同样更新索引
+        when(redisUtil.deSerializeValue(any())).thenReturn("other\nADMIN_1\n");
+        cache.onMessage(new DefaultMessage(new byte[0], new byte[0]), null);
+        assertEquals(Collections.emptySet(), cache.getNodes(SystemCode.ADMIN));
+        when(redisUtil.batch()).thenReturn(mock(RedisBatch.class));
+        cache.flush();
+        when(redisUtil.hGetAll(HASH)).thenReturn(Collections.singletonMap("WEB_3", "online|node-d"));
+        cache.resync();
+        assertEquals(Collections.singleton("node-d"), cache.getNodes(SystemCode.WEB));
+    }
+}
@@ -0,0 +1,82 @@
+package pers.codewld.imall.chat.server.consumer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pers.codewld.imall.chat.model.entity.User;
+import pers.codewld.imall.chat.model.enums.SystemCode;
+import pers.codewld.imall.chat.model.message.queue.MsgMsg;
+import pers.codewld.imall.chat.server.cache.UserStatusCache;
+import pers.codewld.imall.chat.server.service.MsgService;
+
+import java.time.LocalDateTime;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * <p>
+ * 消息 消费者类 测试
+ * </p>
+ * <p>
+ * 描述：网关已在本地投递的消息只跳过已投递的节点，其余仍按接收者状态路由
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+class MsgConsumerTests {
+
+    private static final User SENDER = new User(SystemCode.WEB, "1");
+
+    private static final User RECEIVER = new User(SystemCode.ADMIN, "2");
+
+    private UserStatusCache userStatusCache;
+
+    private MsgService msgService;
+
+    private MsgConsumer msgConsumer;
+
+    @BeforeEach
+    void setUp() {
+        userStatusCache = mock(UserStatusCache.class);
+        msgService = mock(MsgService.class);
+        msgConsumer = new MsgConsumer();
+        msgConsumer.userStatusCache = userStatusCache;
+        msgConsumer.msgService = msgService;
+    }
+
+    @Test
+    void deliveredMsgToOnlineReceiverSendsUnreadCount() {
+        when(userStatusCache.get("ADMIN_2")).thenReturn("__ONLINE__");
+        MsgMsg msgMsg = delivered();
+        msgConsumer.handleCommunication(msgMsg);
+        verify(msgService).addUnreadMsg(msgMsg);
+        verify(msgService).sendUnreadCount(RECEIVER);
+        verify(msgService, never()).sendMsg(any(MsgMsg.class), any());
+    }
+
+    @Test
+    void deliveredMsgToActiveReceiverSkipsDeliveredNode() {
+        when(userStatusCache.get("ADMIN_2")).thenReturn("__ACTIVE__");
+        MsgMsg msgMsg = delivered();
+        msgConsumer.handleCommunication(msgMsg);
+        verify(msgService).addUnreadMsg(msgMsg);
+        verify(msgService).sendMsg(msgMsg, "node-a");
+    }
+
+    @Test
+    void deliveredMsgInConversationIsNotUnread() {
+        when(userStatusCache.get("ADMIN_2")).thenReturn("WEB_1");
+        MsgMsg msgMsg = delivered();
+        msgConsumer.handleCommunication(msgMsg);
+        verify(msgService, never()).addUnreadMsg(any());
+        verify(msgService).sendMsg(msgMsg, "node-a");
+    }
+
+    private static MsgMsg delivered() {
+        return new MsgMsg(SENDER, RECEIVER, "hi", LocalDateTime.now(), true, "node-a");
+    }
+}
@@ -0,0 +1,115 @@
+package pers.codewld.imall.chat.server.repository;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import pers.codewld.imall.chat.model.entity.User;
+import pers.codewld.imall.chat.model.enums.SystemCode;
+import pers.codewld.imall.chat.model.message.queue.MsgMsg;
+import pers.codewld.imall.chat.server.model.HistoryBucket;
+import pers.codewld.imall.chat.server.util.ConfigUtil;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * <p>
+ * 历史消息 Repository类 测试
+ * </p>
+ * <p>
+ * 描述：覆盖同一时间段多个文档合并后按 (时间, 消息ID) 排序、同时刻消息在页边界不丢失，以及已写入的消息不重复追加
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+class HistoryRepositoryTests {
+
+    private static final LocalDateTime T1 = LocalDateTime.of(2026, 10, 18, 12, 0, 1);
+
+    private static final LocalDateTime T2 = LocalDateTime.of(2026, 10, 18, 12, 0, 2);
+
+    private static final LocalDateTime T3 = LocalDateTime.of(2026, 10, 18, 12, 0, 3);
+
+    private static final User A = new User(SystemCode.WEB, "1");
+
+    private static final User B = new User(SystemCode.ADMIN, "2");
+
+    private MongoTemplate mongoTemplate;
+
+    private HistoryRepository historyRepository;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.getConverter()).thenReturn(mock(MongoConverter.class));
+        ConfigUtil configUtil = mock(ConfigUtil.class);
+        when(configUtil.getHISTORY_BUCKET_UNIT()).thenReturn(ChronoUnit.DAYS);
+        when(configUtil.getHISTORY_BUCKET_MAX_SIZE()).thenReturn(500);
+        historyRepository = new HistoryRepository();
+        historyRepository.mongoTemplate = mongoTemplate;
+        historyRepository.configUtil = configUtil;
+    }
+
+    @Test
+    void pagesAcrossSameTimestampWithoutLoss() {
+        // 同一时间段的两个文档，文档内按写入顺序（非时间顺序）
+        List<MsgMsg> t2 = Arrays.asList(msg("x", T2), msg("y", T2), msg("z", T2));
+        t2.sort((m1, m2) -> MsgRepository.msgId(m1).compareTo(MsgRepository.msgId(m2)));
+        HistoryBucket first = bucket(msg("c", T3), t2.get(2), msg("a", T1));
+        HistoryBucket second = bucket(t2.get(0), t2.get(1));
+        when(mongoTemplate.find(any(Query.class), eq(HistoryBucket.class), eq("msgHistory")))
+                .thenReturn(Arrays.asList(first, second));
+
+        List<MsgMsg> latest = historyRepository.listHistoryMsg(A, B, null, null, 2);
+        assertEquals(Arrays.asList(t2.get(1), t2.get(2), first.getMsgs().get(0)), latest);
+
+        // 以最早一条 (T2, ID) 为游标，与其同时刻但ID更小的消息不会丢失
+        List<MsgMsg> earlier = historyRepository.listHistoryMsg(A, B, T2, MsgRepository.msgId(t2.get(1)), 10);
+        assertEquals(Arrays.asList(first.getMsgs().get(2), t2.get(0)), earlier);
+    }
+
+    @Test
+    void alreadyWrittenMessagesAreSkipped() {
+        MsgMsg written = msg("old", T1);
+        MsgMsg fresh = msg("new", T2);
+        Document entry = new Document("id", MsgRepository.msgId(written));
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq("msgHistory")))
+                .thenReturn(Collections.singletonList(new Document("msgs", Collections.singletonList(entry))));
+        BulkOperations bulkOps = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq("msgHistory"))).thenReturn(bulkOps);
+
+        // 重投的消息与同一批内的重复消息均只写入一次
+        historyRepository.addHistoryMsgList(Arrays.asList(written, fresh, fresh));
+        verify(bulkOps, times(1)).upsert(any(Query.class), any(Update.class));
+        verify(bulkOps).execute();
+    }
+
+    private static MsgMsg msg(String text, LocalDateTime time) {
+        return new MsgMsg(A, B, text, time);
+    }
+
+    private static HistoryBucket bucket(MsgMsg... msgs) {
+        HistoryBucket bucket = new HistoryBucket();
+        bucket.setBucket(T1.truncatedTo(ChronoUnit.DAYS));
+        bucket.setMsgs(new ArrayList<>(Arrays.asList(msgs)));
+        return bucket;
+    }
+}
@@ -0,0 +1,153 @@
+package pers.codewld.imall.chat.server.repository;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
+import pers.codewld.imall.chat.model.entity.User;
+import pers.codewld.imall.chat.model.enums.SystemCode;
+import pers.codewld.imall.chat.model.message.queue.MsgMsg;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * <p>
+ * 信息 Repository类 测试
+ * </p>
+ * <p>
+ * 描述：覆盖未读消息数分项字段名的转义，重建未读消息数时以 $max 写入、租约丢失时停止，以及限制页数时以游标逐页遍历
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+class MsgRepositoryTests {
+
+    private MongoTemplate mongoTemplate;
+
+    private BulkOperations bulkOps;
+
+    private MsgRepository msgRepository;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.getConverter()).thenReturn(mock(MongoConverter.class));
+        bulkOps = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), any(String.class))).thenReturn(bulkOps);
+        msgRepository = new MsgRepository();
+        msgRepository.mongoTemplate = mongoTemplate;
+    }
+
+    @Test
+    void senderKeyIsEscaped() {
+        assertEquals("WEB_1", MsgRepository.senderKey(new User(SystemCode.WEB, "1")));
+        assertEquals("WEB_a%2Eb%24c%25", MsgRepository.senderKey(new User(SystemCode.WEB, "a.b$c%")));
+
+        User sender = new User(SystemCode.WEB, "a.b");
+        msgRepository.addUnreadMsg(new MsgMsg(sender, new User(SystemCode.ADMIN, "2"), "hi", LocalDateTime.now()));
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(bulkOps).upsert(any(Query.class), update.capture());
+        Document inc = update.getValue().getUpdateObject().get("$inc", Document.class);
+        assertEquals(1L, inc.get("senders.WEB_a%2Eb"));
+        assertEquals(1L, inc.get("total"));
+    }
+
+    @Test
+    void rebuildNeverLowersLiveCounts() {
+        Document group = new Document("_id", new Document("receiverSystem", "ADMIN")
+                .append("receiverId", "2")
+                .append("senderSystem", "WEB")
+                .append("senderId", "a.b"))
+                .append("count", 3);
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq("unreadMsg"), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(Collections.singletonList(group), new Document()));
+
+        assertTrue(msgRepository.rebuildUnreadCount(() -> true));
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(bulkOps).upsert(any(Query.class), update.capture());
+        Document max = update.getValue().getUpdateObject().get("$max", Document.class);
+        assertEquals(3L, max.get("senders.WEB_a%2Eb"));
+        assertEquals(3L, max.get("total"));
+        assertFalse(update.getValue().getUpdateObject().containsKey("$set"));
+        verify(bulkOps).execute();
+    }
+
+    @Test
+    void rebuildStopsWhenLeaseIsLost() {
+        Document group = new Document("_id", new Document("receiverSystem", "ADMIN")
+                .append("receiverId", "2")
+                .append("senderSystem", "WEB")
+                .append("senderId", "1"))
+                .append("count", 3);
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq("unreadMsg"), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(Collections.singletonList(group), new Document()));
+
+        assertFalse(msgRepository.rebuildUnreadCount(() -> false));
+        verify(bulkOps, never()).execute();
+    }
+
+    @Test
+    void cappedUnreadPagesAreStreamed() {
+        User user = new User(SystemCode.ADMIN, "2");
+        Date boundary = new Date();
+        when(mongoTemplate.findOne(any(Query.class), eq(Document.class), eq("unreadMsg")))
+                .thenReturn(new Document("time", boundary));
+        // 与窗口内最早一条同时刻的消息多出1条
+        when(mongoTemplate.count(any(Query.class), eq("unreadMsg"))).thenReturn(5L);
+        List<MsgMsg> msgs = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            msgs.add(new MsgMsg(new User(SystemCode.WEB, "1"), user, "m" + i, LocalDateTime.now()));
+        }
+        Iterator<MsgMsg> iterator = msgs.iterator();
+        when(mongoTemplate.stream(any(Query.class), eq(MsgMsg.class), eq("unreadMsg"))).thenReturn(new CloseableIterator<MsgMsg>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public MsgMsg next() {
+                return iterator.next();
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        List<List<MsgMsg>> pages = new ArrayList<>();
+        msgRepository.streamUnreadMsg(user, 2, 2, pages::add);
+        assertEquals(Arrays.asList(msgs.subList(0, 2), msgs.subList(2, 4)), pages);
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).stream(query.capture(), eq(MsgMsg.class), eq("unreadMsg"));
+        assertEquals(1L, query.getValue().getSkip());
+        assertEquals(4, query.getValue().getLimit());
+        assertEquals(boundary, query.getValue().getQueryObject().get("time", Document.class).get("$gte"));
+        verify(mongoTemplate, never()).find(any(Query.class), eq(MsgMsg.class), any(String.class));
+    }
+}
@@ -0,0 +1,197 @@
+package pers.codewld.imall.chat.server.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import pers.codewld.imall.chat.metrics.ChatMetrics;
+import pers.codewld.imall.chat.model.entity.User;
+import pers.codewld.imall.chat.model.enums.SystemCode;
+import pers.codewld.imall.chat.model.message.queue.GroupDeliverMsg;
+import pers.codewld.imall.chat.model.message.queue.GroupMsg;
+import pers.codewld.imall.chat.model.message.queue.MsgListMsg;
+import pers.codewld.imall.chat.model.message.queue.MsgMsg;
+import pers.codewld.imall.chat.model.message.queue.UnreadCountMsg;
+import pers.codewld.imall.chat.server.cache.GroupCache;
+import pers.codewld.imall.chat.server.cache.UserStatusCache;
+import pers.codewld.imall.chat.server.repository.HistoryRepository;
+import pers.codewld.imall.chat.server.repository.MsgRepository;
+import pers.codewld.imall.chat.server.util.ConfigUtil;
+import pers.codewld.imall.common.queue.MsgQueue;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * <p>
+ * 信息 服务实现类 测试
+ * </p>
+ * <p>
+ * 描述：覆盖写入失败时共享缓冲保留未写入的消息、批次缓冲与共享缓冲相互独立，未读消息的发送页数上限，以及群聊消息对节点未知及离线成员的投递
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+class MsgServiceImplTests {
+
+    private MsgRepository msgRepository;
+
+    private HistoryRepository historyRepository;
+
+    private MsgQueue msgQueue;
+
+    private UserStatusCache userStatusCache;
+
+    private GroupCache groupCache;
+
+    private MsgServiceImpl msgService;
+
+    /**
+     * 每次写入未读消息时的列表内容（缓冲在写入成功后会被清空，需复制）
+     */
+    private final List<List<MsgMsg>> unreadWrites = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        msgRepository = mock(MsgRepository.class);
+        historyRepository = mock(HistoryRepository.class);
+        ConfigUtil configUtil = mock(ConfigUtil.class);
+        when(configUtil.getUNREAD_FLUSH_SIZE()).thenReturn(100);
+        when(configUtil.getUNREAD_PAGE_SIZE()).thenReturn(2);
+        when(configUtil.getUNREAD_MAX_PAGES()).thenReturn(3);
+        when(configUtil.getPostQueue(any())).thenReturn("post-queue");
+        when(configUtil.getPostQueue(any(), anyString())).thenAnswer(invocation -> "post-queue-" + invocation.getArgument(1));
+        when(configUtil.getGROUP_FAN_OUT_BATCH_SIZE()).thenReturn(500);
+        userStatusCache = mock(UserStatusCache.class);
+        groupCache = mock(GroupCache.class);
+        when(userStatusCache.getNodes(anyString())).thenReturn(Collections.emptySet());
+        msgQueue = mock(MsgQueue.class);
+        msgService = new MsgServiceImpl();
+        msgService.msgQueue = msgQueue;
+        msgService.userStatusCache = userStatusCache;
+        msgService.groupCache = groupCache;
+        msgService.msgRepository = msgRepository;
+        msgService.historyRepository = historyRepository;
+        msgService.configUtil = configUtil;
+        msgService.chatMetrics = mock(ChatMetrics.class);
+    }
+
+    @Test
+    void failedSharedFlushKeepsMessagesInOrder() {
+        MsgMsg m1 = msg("1");
+        MsgMsg m2 = msg("2");
+        doAnswer(invocation -> {
+            throw new DataAccessResourceFailureException("down");
+        }).doAnswer(invocation -> {
+            unreadWrites.add(new ArrayList<>(invocation.getArgument(0)));
+            return null;
+        }).when(msgRepository).addUnreadMsgList(anyList());
+
+        msgService.addUnreadMsg(m1);
+        assertThrows(DataAccessResourceFailureException.class, msgService::flush);
+
+        msgService.addUnreadMsg(m2);
+        msgService.flush();
+        assertEquals(Collections.singletonList(Arrays.asList(m1, m2)), unreadWrites);
+
+        // 已写入，不再重复写入
+        msgService.flush();
+        assertEquals(1, unreadWrites.size());
+    }
+
+    @Test
+    void failedBatchIsNotMovedToSharedBuffer() {
+        doAnswer(invocation -> {
+            throw new DataAccessResourceFailureException("down");
+        }).when(msgRepository).addUnreadMsgList(anyList());
+
+        msgService.beginBatch();
+        msgService.addUnreadMsg(msg("1"));
+        msgService.addHistoryMsg(msg("1"));
+        assertThrows(DataAccessResourceFailureException.class, msgService::endBatch);
+
+        // 批次未确认，由队列重新投递；共享缓冲中没有该批消息
+        msgService.flush();
+        verifyNoInteractions(historyRepository);
+    }
+
+    @Test
+    void unreadPagesAreCappedAndFollowedByCount() {
+        User user = new User(SystemCode.WEB, "1");
+        streamPages(3);
+        msgService.sendUnreadMsg(user);
+        msgService.flush();
+        verify(msgQueue, times(3)).push(eq("post-queue"), any(MsgListMsg.class));
+        // 达到页数上限时发送未读消息数，提示还有更早的未读消息
+        verify(msgQueue).pushAll(eq(Collections.singletonMap("post-queue", Collections.singletonList(new UnreadCountMsg(user, 0L)))));
+    }
+
+    @Test
+    void unreadPagesBelowCapSendNoCount() {
+        streamPages(2);
+        msgService.sendUnreadMsg(new User(SystemCode.WEB, "1"));
+        msgService.flush();
+        verify(msgQueue, times(2)).push(eq("post-queue"), any(MsgListMsg.class));
+        verify(msgQueue, never()).pushAll(any());
+    }
+
+    @Test
+    void groupMsgReachesMembersWithoutNode() {
+        User sender = new User(SystemCode.WEB, "1");
+        User onNode = new User(SystemCode.WEB, "2");
+        User legacy = new User(SystemCode.WEB, "3");
+        User offline = new User(SystemCode.WEB, "4");
+        when(groupCache.getMembers("g")).thenReturn(new HashSet<>(Arrays.asList(sender, onNode, legacy, offline)));
+        when(userStatusCache.getNodes("WEB_2")).thenReturn(Collections.singleton("node-a"));
+        when(userStatusCache.get("WEB_3")).thenReturn("online");
+        LocalDateTime time = LocalDateTime.now();
+        msgService.sendGroupMsg(new GroupMsg(sender, "g", "hi", time));
+
+        verify(msgQueue).pushAll(eq(Collections.singletonMap("post-queue-node-a", Collections.singletonList(
+                new GroupDeliverMsg(Collections.singletonList(onNode), new GroupMsg(sender, "g", "hi", time))))));
+        // 节点未知的在线成员：以单聊消息发往未区分节点的处理后队列
+        verify(msgQueue).push(eq("post-queue"), eq(new MsgListMsg(legacy, Collections.singletonList(new MsgMsg(sender, legacy, "hi", time)))));
+        // 离线成员：记为未读消息
+        doAnswer(invocation -> {
+            unreadWrites.add(new ArrayList<>(invocation.getArgument(0)));
+            return null;
+        }).when(msgRepository).addUnreadMsgList(anyList());
+        msgService.flush();
+        assertEquals(Collections.singletonList(Collections.singletonList(new MsgMsg(sender, offline, "hi", time))), unreadWrites);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void streamPages(int pages) {
+        doAnswer(invocation -> {
+            Consumer<List<MsgMsg>> consumer = invocation.getArgument(3);
+            for (int i = 0; i < pages; i++) {
+                consumer.accept(Arrays.asList(msg("a" + i), msg("b" + i)));
+            }
+            return null;
+        }).when(msgRepository).streamUnreadMsg(any(User.class), anyInt(), eq(3), any(Consumer.class));
+    }
+
+    private static MsgMsg msg(String text) {
+        return new MsgMsg(new User(SystemCode.WEB, "1"), new User(SystemCode.ADMIN, "2"), text, LocalDateTime.now(), null, null);
+    }
+}
@@ -0,0 +1,405 @@
+package pers.codewld.imall.chat.codec;
+
+import org.springframework.stereotype.Component;
+import pers.codewld.imall.chat.model.entity.User;
+import pers.codewld.imall.chat.model.enums.SystemCode;
+import pers.codewld.imall.chat.model.message.queue.BroadcastMsg;
+import pers.codewld.imall.chat.model.message.queue.GroupDeliverMsg;
+import pers.codewld.imall.chat.model.message.queue.GroupMsg;
+import pers.codewld.imall.chat.model.message.queue.HistoryListMsg;
+import pers.codewld.imall.chat.model.message.queue.HistoryQueryMsg;
+import pers.codewld.imall.chat.model.message.queue.MsgListMsg;
+import pers.codewld.imall.chat.model.message.queue.MsgMsg;
+import pers.codewld.imall.chat.model.message.queue.ReadMsg;
+import pers.codewld.imall.chat.model.message.queue.TracedMsg;
+import pers.codewld.imall.chat.model.message.queue.UnreadCountMsg;
+import pers.codewld.imall.chat.model.message.queue.UserStatusMsg;
+import pers.codewld.imall.common.serializer.BinaryCodec;
+import pers.codewld.imall.common.serializer.BinaryReader;
+import pers.codewld.imall.common.serializer.BinaryWriter;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * 聊天队列消息 二进制编解码器
+ * </p>
+ * <p>
+ * 描述：格式为 类型标记字节 + 各字段，携带追踪信息时前置 追踪标记 + 追踪信息；用户编码为 (所属系统序号+1, 数字ID标记) 字节 + ID（数字ID为变长整数，否则为字符串）
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Component
+public class ChatBinaryCodec implements BinaryCodec {
+
+    static final int TAG_MSG = 1;
+
+    static final int TAG_USER_STATUS = 2;
+
+    static final int TAG_UNREAD_COUNT = 3;
+
+    static final int TAG_MSG_LIST = 4;
+
+    static final int TAG_READ = 5;
+
+    static final int TAG_HISTORY_QUERY = 6;
+
+    static final int TAG_HISTORY_LIST = 7;
+
+    /**
+     * 已由网关在本地投递的消息
+     */
+    static final int TAG_DELIVERED_MSG = 8;
+
+    /**
+     * 携带网关节点的用户状态
+     */
+    static final int TAG_USER_STATUS_NODE = 9;
+
+    static final int TAG_GROUP_MSG = 10;
+
+    static final int TAG_GROUP_DELIVER = 11;
+
+    static final int TAG_BROADCAST = 12;
+
+    /**
+     * 追踪信息前缀，其后为带类型标记的消息本身
+     */
+    static final int TAG_TRACE = 13;
+
+    /**
+     * 携带游标消息ID的历史消息查询
+     */
+    static final int TAG_HISTORY_QUERY_CURSOR = 14;
+
+    /**
+     * 携带游标消息ID的历史消息列表
+     */
+    static final int TAG_HISTORY_LIST_CURSOR = 15;
+
+    private static final SystemCode[] SYSTEM_CODES = SystemCode.values();
+
+    @Override
+    public boolean encode(Object obj, BinaryWriter out) {
+        if (obj instanceof TracedMsg && ((TracedMsg) obj).getTraceId() != null) {
+            TracedMsg msg = (TracedMsg) obj;
+            out.writeByte(TAG_TRACE);
+            out.writeString(msg.getTraceId());
+            writeNullableLong(msg.getOriginTime(), out);
+            writeNullableLong(msg.getEnqueueTime(), out);
+        }
+        if (obj instanceof MsgMsg) {
+            MsgMsg msg = (MsgMsg) obj;
+            if (Boolean.TRUE.equals(msg.getDelivered())) {
+                out.writeByte(TAG_DELIVERED_MSG);
+                writeMsg(msg, out);
+                out.writeString(msg.getNode());
+            } else {
+                out.writeByte(TAG_MSG);
+                writeMsg(msg, out);
+            }
+        } else if (obj instanceof UserStatusMsg) {
+            UserStatusMsg msg = (UserStatusMsg) obj;
+            out.writeByte(msg.getNode() != null ? TAG_USER_STATUS_NODE : TAG_USER_STATUS);
+            writeUser(msg.getUser(), out);
+            out.writeBoolean(msg.getOnline());
+            out.writeBoolean(msg.getActive());
+            writeUser(msg.getContact(), out);
+            if (msg.getNode() != null) {
+                out.writeString(msg.getNode());
+            }
+        } else if (obj instanceof UnreadCountMsg) {
+            UnreadCountMsg msg = (UnreadCountMsg) obj;
+            out.writeByte(TAG_UNREAD_COUNT);
+            writeUser(msg.getReceiver(), out);
+            writeNullableLong(msg.getCount(), out);
+        } else if (obj instanceof MsgListMsg) {
+            MsgListMsg msg = (MsgListMsg) obj;
+            out.writeByte(TAG_MSG_LIST);
+            writeUser(msg.getReceiver(), out);
+            writeMsgList(msg.getList(), out);
+        } else if (obj instanceof ReadMsg) {
+            ReadMsg msg = (ReadMsg) obj;
+            out.writeByte(TAG_READ);
+            writeUser(msg.getReceiver(), out);
+            writeUser(msg.getSender(), out);
+            writeTime(msg.getTime(), out);
+        } else if (obj instanceof HistoryQueryMsg) {
+            HistoryQueryMsg msg = (HistoryQueryMsg) obj;
+            out.writeByte(msg.getBeforeId() != null ? TAG_HISTORY_QUERY_CURSOR : TAG_HISTORY_QUERY);
+            writeUser(msg.getUser(), out);
+            writeUser(msg.getContact(), out);
+            writeTime(msg.getBefore(), out);
+            writeNullableLong(msg.getSize() == null ? null : msg.getSize().longValue(), out);
+            if (msg.getBeforeId() != null) {
+                out.writeString(msg.getBeforeId());
+            }
+        } else if (obj instanceof HistoryListMsg) {
+            HistoryListMsg msg = (HistoryListMsg) obj;
+            out.writeByte(msg.getBeforeId() != null ? TAG_HISTORY_LIST_CURSOR : TAG_HISTORY_LIST);
+            writeUser(msg.getReceiver(), out);
+            writeUser(msg.getContact(), out);
+            writeMsgList(msg.getList(), out);
+            out.writeBoolean(msg.getHasMore());
+            if (msg.getBeforeId() != null) {
+                out.writeString(msg.getBeforeId());
+            }
+        } else if (obj instanceof GroupMsg) {
+            out.writeByte(TAG_GROUP_MSG);
+            writeGroupMsg((GroupMsg) obj, out);
+        } else if (obj instanceof GroupDeliverMsg) {
+            GroupDeliverMsg msg = (GroupDeliverMsg) obj;
+            out.writeByte(TAG_GROUP_DELIVER);
+            List<User> receivers = msg.getReceivers();
+            out.writeVarLong(receivers == null ? 0 : receivers.size() + 1L);
+            if (receivers != null) {
+                for (User receiver : receivers) {
+                    writeUser(receiver, out);
+                }
+            }
+            writeGroupMsg(msg.getMsg(), out);
+        } else if (obj instanceof BroadcastMsg) {
+            BroadcastMsg msg = (BroadcastMsg) obj;
+            out.writeByte(TAG_BROADCAST);
+            writeUser(msg.getSender(), out);
+            out.writeByte(msg.getSystem() == null ? 0 : msg.getSystem().ordinal() + 1);
+            out.writeString(msg.getMsg());
+            writeTime(msg.getTime(), out);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public Object decode(BinaryReader in) {
+        int tag = in.readByte();
+        switch (tag) {
+            case TAG_TRACE: {
+                String traceId = in.readString();
+                Long originTime = readNullableLong(in);
+                Long enqueueTime = readNullableLong(in);
+                Object msg = decode(in);
+                if (msg instanceof TracedMsg) {
+                    ((TracedMsg) msg).setTraceId(traceId);
+                    ((TracedMsg) msg).setOriginTime(originTime);
+                    ((TracedMsg) msg).setEnqueueTime(enqueueTime);
+                }
+                return msg;
+            }
+            case TAG_MSG:
+                return readMsg(in);
+            case TAG_DELIVERED_MSG: {
+                MsgMsg msg = readMsg(in);
+                msg.setDelivered(true);
+                msg.setNode(in.readString());
+                return msg;
+            }
+            case TAG_USER_STATUS:
+            case TAG_USER_STATUS_NODE: {
+                UserStatusMsg msg = new UserStatusMsg();
+                msg.setUser(readUser(in));
+                msg.setOnline(in.readBoolean());
+                msg.setActive(in.readBoolean());
+                msg.setContact(readUser(in));
+                if (tag == TAG_USER_STATUS_NODE) {
+                    msg.setNode(in.readString());
+                }
+                return msg;
+            }
+            case TAG_UNREAD_COUNT:
+                return new UnreadCountMsg(readUser(in), readNullableLong(in));
+            case TAG_MSG_LIST:
+                return new MsgListMsg(readUser(in), readMsgList(in));
+            case TAG_READ:
+                return new ReadMsg(readUser(in), readUser(in), readTime(in));
+            case TAG_HISTORY_QUERY:
+            case TAG_HISTORY_QUERY_CURSOR: {
+                HistoryQueryMsg msg = new HistoryQueryMsg();
+                msg.setUser(readUser(in));
+                msg.setContact(readUser(in));
+                msg.setBefore(readTime(in));
+                Long size = readNullableLong(in);
+                msg.setSize(size == null ? null : size.intValue());
+                if (tag == TAG_HISTORY_QUERY_CURSOR) {
+                    msg.setBeforeId(in.readString());
+                }
+                return msg;
+            }
+            case TAG_GROUP_MSG:
+                return readGroupMsg(in);
+            case TAG_GROUP_DELIVER: {
+                long size = in.readVarLong();
+                List<User> receivers = null;
+                if (size > 0) {
+                    receivers = new ArrayList<>((int) (size - 1));
+                    for (long i = 1; i < size; i++) {
+                        receivers.add(readUser(in));
+                    }
+                }
+                return new GroupDeliverMsg(receivers, readGroupMsg(in));
+            }
+            case TAG_BROADCAST: {
+                BroadcastMsg msg = new BroadcastMsg();
+                msg.setSender(readUser(in));
+                int system = in.readByte();
+                msg.setSystem(system == 0 ? null : SYSTEM_CODES[system - 1]);
+                msg.setMsg(in.readString());
+                msg.setTime(readTime(in));
+                return msg;
+            }
+            case TAG_HISTORY_LIST:
+            case TAG_HISTORY_LIST_CURSOR: {
+                HistoryListMsg msg = new HistoryListMsg(readUser(in), readUser(in), readMsgList(in), in.readBoolean());
+                if (tag == TAG_HISTORY_LIST_CURSOR) {
+                    msg.setBeforeId(in.readString());
+                }
+                return msg;
+            }
+            default:
+                throw new IllegalStateException("未知的消息类型标记：" + tag);
+        }
+    }
+
+    private void writeMsg(MsgMsg msg, BinaryWriter out) {
+        writeUser(msg.getSender(), out);
+        writeUser(msg.getReceiver(), out);
+        out.writeString(msg.getMsg());
+        writeTime(msg.getTime(), out);
+    }
+
+    private MsgMsg readMsg(BinaryReader in) {
+        MsgMsg msg = new MsgMsg();
+        msg.setSender(readUser(in));
+        msg.setReceiver(readUser(in));
+        msg.setMsg(in.readString());
+        msg.setTime(readTime(in));
+        return msg;
+    }
+
+    private void writeGroupMsg(GroupMsg msg, BinaryWriter out) {
+        writeUser(msg.getSender(), out);
+        out.writeString(msg.getGroupId());
+        out.writeString(msg.getMsg());
+        writeTime(msg.getTime(), out);
+    }
+
+    private GroupMsg readGroupMsg(BinaryReader in) {
+        GroupMsg msg = new GroupMsg();
+        msg.setSender(readUser(in));
+        msg.setGroupId(in.readString());
+        msg.setMsg(in.readString());
+        msg.setTime(readTime(in));
+        return msg;
+    }
+
+    private void writeMsgList(List<MsgMsg> list, BinaryWriter out) {
+        if (list == null) {
+            out.writeVarLong(0);
+            return;
+        }
+        out.writeVarLong(list.size() + 1L);
+        for (MsgMsg msg : list) {
+            writeMsg(msg, out);
+        }
+    }
+
+    private List<MsgMsg> readMsgList(BinaryReader in) {
+        long size = in.readVarLong();
+        if (size == 0) {
+            return null;
+        }
+        List<MsgMsg> list = new ArrayList<>((int) (size - 1));
+        for (long i = 1; i < size; i++) {
+            list.add(readMsg(in));
+        }
+        return list;
+    }
+
+    /**
+     * 写入用户：首字节为0表示null；否则高位为 所属系统序号+1，最低位表示ID是否为数字
+     */
+    static void writeUser(User user, BinaryWriter out) {
+        if (user == null) {
+            out.writeByte(0);
+            return;
+        }
+        int system = user.getSystem() == null ? 0 : user.getSystem().ordinal() + 1;
+        String id = user.getId();
+        if (isCompactNumber(id)) {
+            out.writeByte((system + 1) << 1 | 1);
+            out.writeVarLong(Long.parseLong(id));
+        } else {
+            out.writeByte((system + 1) << 1);
+            out.writeString(id);
+        }
+    }
+
+    static User readUser(BinaryReader in) {
+        int head = in.readByte();
+        if (head == 0) {
+            return null;
+        }
+        int system = (head >>> 1) - 1;
+        User user = new User();
+        user.setSystem(system == 0 ? null : SYSTEM_CODES[system - 1]);
+        user.setId((head & 1) == 1 ? String.valueOf(in.readVarLong()) : in.readString());
+        return user;
+    }
+
+    /**
+     * 判断ID是否可无损地编码为变长整数（非负、无前导零、不超出long范围）
+     */
+    private static boolean isCompactNumber(String id) {
+        if (id == null || id.isEmpty() || id.length() > 18) {
+            return false;
+        }
+        if (id.length() > 1 && id.charAt(0) == '0') {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void writeTime(LocalDateTime time, BinaryWriter out) {
+        if (time == null) {
+            out.writeByte(0);
+            return;
+        }
+        out.writeByte(1);
+        out.writeZigZag(time.toEpochSecond(ZoneOffset.UTC));
+        out.writeVarLong(time.getNano());
+    }
+
+    static LocalDateTime readTime(BinaryReader in) {
+        if (in.readByte() == 0) {
+            return null;
+        }
+        long seconds = in.readZigZag();
+        int nanos = (int) in.readVarLong();
+        return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+    }
+
+    static void writeNullableLong(Long v, BinaryWriter out) {
+        if (v == null) {
+            out.writeByte(0);
+            return;
+        }
+        out.writeByte(1);
+        out.writeZigZag(v);
+    }
+
+    static Long readNullableLong(BinaryReader in) {
+        return in.readByte() == 0 ? null : in.readZigZag();
+    }
+}
@@ -0,0 +1,184 @@
+package pers.codewld.imall.chat.codec;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.JSONReader;
+import com.alibaba.fastjson.parser.JSONScanner;
+import pers.codewld.imall.chat.model.enums.SystemCode;
+import pers.codewld.imall.chat.model.message.websocket.ActiveStatusData;
+import pers.codewld.imall.chat.model.message.websocket.BroadcastData;
+import pers.codewld.imall.chat.model.message.websocket.LoadHistoryData;
+import pers.codewld.imall.chat.model.message.websocket.ReadMsgData;
+import pers.codewld.imall.chat.model.message.websocket.SendGroupMsgData;
+import pers.codewld.imall.chat.model.message.websocket.SendMsgData;
+import pers.codewld.imall.chat.model.message.websocket.SessionEstablishData;
+import pers.codewld.imall.common.serializer.BinaryReader;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * WebSocket 帧解码器
+ * </p>
+ * <p>
+ * 描述：文本帧一次遍历，按 type 将 data 直接解析为对应的通信数据类，不构造中间的 JSONObject；
+ * data 可以是对象，也兼容旧格式的 JSON 字符串。
+ * 二进制帧格式为 类型标记字节 + 各字段，字段编码与 ChatBinaryCodec 相同
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+public class FrameDecoder {
+
+    static final int TAG_ACTIVE_STATUS = 1;
+
+    static final int TAG_SESSION_ESTABLISH = 2;
+
+    static final int TAG_SEND_MSG = 3;
+
+    static final int TAG_READ_MSG = 4;
+
+    static final int TAG_LOAD_HISTORY = 5;
+
+    static final int TAG_SEND_GROUP_MSG = 6;
+
+    static final int TAG_BROADCAST = 7;
+
+    /**
+     * 携带游标消息ID的加载历史消息
+     */
+    static final int TAG_LOAD_HISTORY_CURSOR = 8;
+
+    private static final SystemCode[] SYSTEM_CODES = SystemCode.values();
+
+    /**
+     * 通信类型 -> 通信数据类
+     */
+    private static final Map<String, Class<?>> TYPES = new HashMap<>();
+
+    static {
+        TYPES.put("activeStatus", ActiveStatusData.class);
+        TYPES.put("sessionEstablish", SessionEstablishData.class);
+        TYPES.put("sendMsg", SendMsgData.class);
+        TYPES.put("readMsg", ReadMsgData.class);
+        TYPES.put("loadHistory", LoadHistoryData.class);
+        TYPES.put("sendGroupMsg", SendGroupMsgData.class);
+        TYPES.put("broadcast", BroadcastData.class);
+    }
+
+    /**
+     * 解码文本帧
+     *
+     * @return 通信数据对象；未知的通信类型返回null
+     */
+    public static Object decode(String text) {
+        String type = null;
+        Object data = null;
+        String legacyData = null;
+        JSONObject earlyData = null;
+        JSONScanner scanner = new JSONScanner(text);
+        JSONReader reader = new JSONReader(scanner);
+        try {
+            reader.startObject();
+            while (reader.hasNext()) {
+                String key = reader.readString();
+                if ("type".equals(key)) {
+                    type = reader.readString();
+                } else if ("data".equals(key)) {
+                    Class<?> clazz = type != null ? TYPES.get(type) : null;
+                    if (isStringValue(text, scanner.pos() + 1)) {
+                        // 旧格式：data为JSON字符串
+                        legacyData = reader.readString();
+                    } else if (clazz != null) {
+                        data = reader.readObject(clazz);
+                    } else {
+                        // data位于type之前，暂存后再转换
+                        earlyData = reader.readObject(JSONObject.class);
+                    }
+                } else {
+                    reader.readObject();
+                }
+            }
+            reader.endObject();
+        } finally {
+            reader.close();
+        }
+        Class<?> clazz = type != null ? TYPES.get(type) : null;
+        if (clazz == null) {
+            return null;
+        }
+        if (data != null) {
+            return data;
+        }
+        if (legacyData != null) {
+            return JSON.parseObject(legacyData, clazz);
+        }
+        if (earlyData != null) {
+            return earlyData.toJavaObject(clazz);
+        }
+        return JSON.parseObject("{}", clazz);
+    }
+
+    /**
+     * 判断从pos开始（跳过空白）的值是否为字符串；读取键后词法分析器停在冒号处，尚未读取值的token
+     */
+    private static boolean isStringValue(String text, int pos) {
+        for (int i = pos; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                return c == '"';
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 解码二进制帧
+     *
+     * @return 通信数据对象；未知的类型标记返回null
+     */
+    public static Object decode(ByteBuffer buffer) {
+        BinaryReader in;
+        if (buffer.hasArray()) {
+            in = new BinaryReader(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.duplicate().get(bytes);
+            in = new BinaryReader(bytes, 0);
+        }
+        int tag = in.readByte();
+        switch (tag) {
+            case TAG_ACTIVE_STATUS:
+                return new ActiveStatusData(in.readBoolean());
+            case TAG_SESSION_ESTABLISH:
+                return new SessionEstablishData(ChatBinaryCodec.readUser(in));
+            case TAG_SEND_MSG:
+                return new SendMsgData(in.readString());
+            case TAG_READ_MSG:
+                return new ReadMsgData(ChatBinaryCodec.readUser(in));
+            case TAG_LOAD_HISTORY:
+            case TAG_LOAD_HISTORY_CURSOR: {
+                LoadHistoryData data = new LoadHistoryData();
+                data.setContact(ChatBinaryCodec.readUser(in));
+                data.setBefore(ChatBinaryCodec.readTime(in));
+                Long size = ChatBinaryCodec.readNullableLong(in);
+                data.setSize(size == null ? null : size.intValue());
+                if (tag == TAG_LOAD_HISTORY_CURSOR) {
+                    data.setBeforeId(in.readString());
+                }
+                return data;
+            }
+            case TAG_SEND_GROUP_MSG:
+                return new SendGroupMsgData(in.readString(), in.readString());
+            case TAG_BROADCAST: {
+                int system = in.readByte();
+                return new BroadcastData(system == 0 ? null : SYSTEM_CODES[system - 1], in.readString());
+            }
+            default:
+                return null;
+        }
+    }
+}
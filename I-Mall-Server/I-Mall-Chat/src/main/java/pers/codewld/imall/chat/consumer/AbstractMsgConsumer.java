@@ -4,17 +4,27 @@ package pers.codewld.imall.chat.consumer;
 import com.alibaba.fastjson.JSONObject;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import pers.codewld.imall.chat.metrics.ChatMetrics;
 import pers.codewld.imall.chat.model.entity.User;
 import pers.codewld.imall.chat.model.enums.SystemCode;
+import pers.codewld.imall.chat.model.message.queue.BroadcastMsg;
+import pers.codewld.imall.chat.model.message.queue.GroupDeliverMsg;
+import pers.codewld.imall.chat.model.message.queue.GroupMsg;
+import pers.codewld.imall.chat.model.message.queue.HistoryListMsg;
 import pers.codewld.imall.chat.model.message.queue.UnreadCountMsg;
 import pers.codewld.imall.chat.model.message.queue.MsgListMsg;
-import pers.codewld.imall.chat.model.message.websocket.WebSocketMsg;
+import pers.codewld.imall.chat.model.message.queue.TracedMsg;
 import pers.codewld.imall.chat.server.BaseWebSocketServer;
 import pers.codewld.imall.chat.util.ConfigUtil;
-import pers.codewld.imall.common.util.RedisUtil;
+import pers.codewld.imall.common.queue.ConsumerExecutor;
+import pers.codewld.imall.common.queue.ConsumerHandle;
+import pers.codewld.imall.common.queue.MsgQueue;
 
-import javax.annotation.PostConstruct;
-import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * <p>
@@ -25,7 +35,7 @@ import java.io.IOException;
  * @since 2022-03-25
  */
 @Slf4j
-public abstract class AbstractMsgConsumer {
+public abstract class AbstractMsgConsumer implements SmartLifecycle {
 
     /**
      * 当前所属系统
@@ -33,32 +43,138 @@ public abstract class AbstractMsgConsumer {
     protected abstract SystemCode getSystemCode();
 
     @Autowired
-    RedisUtil redisUtil;
+    MsgQueue msgQueue;
 
     @Autowired
     ConfigUtil configUtil;
 
-    @PostConstruct
-    public void init() {
-        redisUtil.brPopLPush(
-                configUtil.getPOST_QUEUE_PREFIX() + "-" + getSystemCode().getName(),
-                configUtil.getPOST_QUEUE_PREFIX() + "-" + getSystemCode().getName() + "-" + "back",
-                o -> {
-                    if (o instanceof UnreadCountMsg) {
-                        UnreadCountMsg unreadCountMsg = (UnreadCountMsg) o;
-                        JSONObject data = new JSONObject();
-                        data.put("count", unreadCountMsg.getCount());
-                        sendMsg(unreadCountMsg.getReceiver(), "unreadCount", data);
-                    } else if (o instanceof MsgListMsg) {
-                        MsgListMsg msgListMsg = (MsgListMsg) o;
-                        JSONObject data = new JSONObject();
-                        data.put("list", msgListMsg.getList());
-                        sendMsg(msgListMsg.getReceiver(), "msg", data);
-                    }
-                }
+    @Autowired
+    ConsumerExecutor consumerExecutor;
+
+    @Autowired
+    ChatMetrics chatMetrics;
+
+    /**
+     * 消费者句柄
+     */
+    private ConsumerHandle handle;
+
+    /**
+     * 所有单例初始化完成后开始消费
+     */
+    @Override
+    public synchronized void start() {
+        String postQueue = configUtil.getPostQueue(getSystemCode(), configUtil.getNodeId());
+        chatMetrics.registerQueue(postQueue);
+        chatMetrics.registerGateway();
+        handle = msgQueue.consume(
+                postQueue,
+                configUtil.getCONSUMER_BATCH_SIZE(),
+                configUtil.getCONSUMER_CONCURRENCY(),
+                this::handleBatch
         );
     }
 
+    /**
+     * 停止取新消息，等待处理中的批次投递完成并确认
+     */
+    @Override
+    public synchronized void stop() {
+        if (handle != null) {
+            consumerExecutor.stop(Collections.singletonList(handle));
+            handle = null;
+        }
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return handle != null;
+    }
+
+    /**
+     * 处理一批消息，单条消息失败不影响同批的其它消息
+     *
+     * @return 处理失败的消息在批次中的下标
+     */
+    private Set<Integer> handleBatch(List<Object> batch) {
+        Set<Integer> failed = Collections.emptySet();
+        for (int i = 0; i < batch.size(); i++) {
+            try {
+                handleTraced(batch.get(i));
+            } catch (Exception e) {
+                log.error("消息投递失败，等待重试：" + batch.get(i).getClass().getSimpleName(), e);
+                if (failed.isEmpty()) {
+                    failed = new HashSet<>();
+                }
+                failed.add(i);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * 处理消息，并记录排队、投递及端到端耗时
+     */
+    private void handleTraced(Object o) {
+        Long originTime = o instanceof TracedMsg ? ((TracedMsg) o).getOriginTime() : null;
+        long start = System.nanoTime();
+        chatMetrics.begin(ChatMetrics.STAGE_POST_QUEUE, o);
+        try {
+            handle(o);
+        } finally {
+            chatMetrics.end();
+        }
+        chatMetrics.record(ChatMetrics.STAGE_GATEWAY_SEND, System.nanoTime() - start);
+        chatMetrics.recordSince(ChatMetrics.STAGE_END_TO_END, originTime);
+    }
+
+    /**
+     * 处理消息
+     */
+    private void handle(Object o) {
+        if (o instanceof UnreadCountMsg) {
+            UnreadCountMsg unreadCountMsg = (UnreadCountMsg) o;
+            JSONObject data = new JSONObject();
+            data.put("count", unreadCountMsg.getCount());
+            sendMsg(unreadCountMsg.getReceiver(), "unreadCount", data);
+        } else if (o instanceof MsgListMsg) {
+            MsgListMsg msgListMsg = (MsgListMsg) o;
+            JSONObject data = new JSONObject();
+            data.put("list", msgListMsg.getList());
+            sendMsg(msgListMsg.getReceiver(), "msg", data);
+        } else if (o instanceof HistoryListMsg) {
+            HistoryListMsg historyListMsg = (HistoryListMsg) o;
+            JSONObject data = new JSONObject();
+            data.put("contact", historyListMsg.getContact());
+            data.put("list", historyListMsg.getList());
+            data.put("hasMore", historyListMsg.getHasMore());
+            data.put("beforeId", historyListMsg.getBeforeId());
+            sendMsg(historyListMsg.getReceiver(), "history", data);
+        } else if (o instanceof GroupDeliverMsg) {
+            GroupDeliverMsg groupDeliverMsg = (GroupDeliverMsg) o;
+            GroupMsg groupMsg = groupDeliverMsg.getMsg();
+            JSONObject data = new JSONObject();
+            data.put("groupId", groupMsg.getGroupId());
+            data.put("sender", groupMsg.getSender());
+            data.put("msg", groupMsg.getMsg());
+            data.put("time", groupMsg.getTime());
+            // 同一批接收者共用一个帧，只序列化一次
+            String frame = BaseWebSocketServer.toFrame("groupMsg", data);
+            for (User receiver : groupDeliverMsg.getReceivers()) {
+                BaseWebSocketServer.sendToUser(receiver, frame);
+            }
+        } else if (o instanceof BroadcastMsg) {
+            BroadcastMsg broadcastMsg = (BroadcastMsg) o;
+            JSONObject data = new JSONObject();
+            data.put("sender", broadcastMsg.getSender());
+            data.put("msg", broadcastMsg.getMsg());
+            data.put("time", broadcastMsg.getTime());
+            String frame = BaseWebSocketServer.toFrame("broadcast", data);
+            // 本节点的处理后队列只属于当前系统，投递给本节点的所有连接
+            BaseWebSocketServer.connections.forEach(connection -> connection.sendMessage(frame));
+        }
+    }
+
     /**
      * 发送消息
      *
@@ -67,13 +183,7 @@ public abstract class AbstractMsgConsumer {
      * @param data 数据
      */
     private void sendMsg(User user, String type, JSONObject data) {
-        WebSocketMsg webSocketMsg = new WebSocketMsg(type, data.toJSONString());
-        BaseWebSocketServer webSocketServer = BaseWebSocketServer.connections.get(String.valueOf(user.getId()));
-        try {
-            webSocketServer.sendMessage(JSONObject.toJSONString(webSocketMsg));
-        } catch (IOException e) {
-            log.error(e.getMessage());
-        }
+        BaseWebSocketServer.sendMsg(user, type, data);
     }
 
 }
@@ -0,0 +1,261 @@
+package pers.codewld.imall.chat.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import pers.codewld.imall.chat.model.message.queue.TracedMsg;
+import pers.codewld.imall.chat.server.BaseWebSocketServer;
+import pers.codewld.imall.chat.server.ConnectionRegistry;
+import pers.codewld.imall.chat.server.SessionSender;
+import pers.codewld.imall.chat.server.StatusCoalescer;
+import pers.codewld.imall.common.queue.MsgQueue;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * <p>
+ * 聊天 指标
+ * </p>
+ * <p>
+ * 描述：各阶段耗时记录在计时器 chat.latency 中（以 stage 标签区分，发布百分位直方图及 p50/p95/p99），
+ * 队列长度记录在 chat.queue.depth 与 chat.queue.in-flight 中（以 queue 标签区分）；
+ * 网关另有连接数 chat.connections（以 shard 标签区分分片）、在线用户数 chat.connections.users，
+ * 以及发送队列的 chat.outbound.queued-bytes、chat.outbound.dropped、chat.outbound.overflow-closed。
+ * 跨进程的阶段（排队、端到端）以队列消息携带的毫秒时间戳计算，依赖各节点的时钟同步
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Slf4j
+@Component
+public class ChatMetrics {
+
+    /**
+     * 网关：解析客户端数据并放入处理前队列
+     */
+    public static final String STAGE_GATEWAY_RECEIVE = "gateway.receive";
+
+    /**
+     * 消息在处理前队列中等待
+     */
+    public static final String STAGE_PRE_QUEUE = "pre-queue";
+
+    /**
+     * 聊天服务：处理单条消息（不含批量写入数据库）
+     */
+    public static final String STAGE_SERVER_HANDLE = "server.handle";
+
+    /**
+     * 聊天服务：缓冲的未读消息与历史消息写入数据库
+     */
+    public static final String STAGE_SERVER_PERSIST = "server.persist";
+
+    /**
+     * 消息在处理后队列中等待
+     */
+    public static final String STAGE_POST_QUEUE = "post-queue";
+
+    /**
+     * 网关：将处理后队列中的消息放入连接的发送队列
+     */
+    public static final String STAGE_GATEWAY_SEND = "gateway.send";
+
+    /**
+     * 端到端：网关收到客户端数据至接收者所在网关完成投递
+     */
+    public static final String STAGE_END_TO_END = "end-to-end";
+
+    private static final String LATENCY = "chat.latency";
+
+    /**
+     * 当前线程正在处理的消息的追踪信息，由此产生的队列消息沿用
+     */
+    private static final ThreadLocal<Trace> CURRENT = new ThreadLocal<>();
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    MsgQueue msgQueue;
+
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    /**
+     * 已注册长度指标的队列
+     */
+    private final Set<String> queues = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 是否已注册网关指标
+     */
+    private boolean gatewayRegistered;
+
+    /**
+     * 记录阶段耗时
+     */
+    public void record(String stage, long nanos) {
+        timer(stage).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录从指定时间至今的阶段耗时；时间为null时不记录
+     *
+     * @param since 毫秒时间戳
+     */
+    public void recordSince(String stage, Long since) {
+        if (since != null) {
+            timer(stage).record(Math.max(System.currentTimeMillis() - since, 0), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 网关将客户端数据放入队列前标记消息：生成新的追踪ID，记录收到数据的时间与入队时间
+     *
+     * @param originTime 收到客户端数据的时间（毫秒时间戳）
+     */
+    public void stampOrigin(Object msg, long originTime) {
+        if (!(msg instanceof TracedMsg)) {
+            return;
+        }
+        TracedMsg tracedMsg = (TracedMsg) msg;
+        tracedMsg.setTraceId(newTraceId());
+        tracedMsg.setOriginTime(originTime);
+        tracedMsg.setEnqueueTime(System.currentTimeMillis());
+    }
+
+    /**
+     * 放入队列前标记消息：记录入队时间；尚无追踪ID时，沿用当前线程正在处理的消息的追踪信息，否则生成新的追踪ID
+     */
+    public void stamp(Object msg) {
+        if (!(msg instanceof TracedMsg)) {
+            return;
+        }
+        TracedMsg tracedMsg = (TracedMsg) msg;
+        if (tracedMsg.getTraceId() == null) {
+            Trace current = CURRENT.get();
+            if (current != null) {
+                tracedMsg.setTraceId(current.traceId);
+                tracedMsg.setOriginTime(current.originTime);
+            } else {
+                // 非客户端数据引起的消息（如定时发送的未读消息数）不计入端到端耗时
+                tracedMsg.setTraceId(newTraceId());
+            }
+        }
+        tracedMsg.setEnqueueTime(System.currentTimeMillis());
+    }
+
+    /**
+     * 开始处理从队列中取出的消息：记录排队耗时，并将追踪信息移至当前线程，
+     * 使消息本身（可能被写入数据库或转发）不再携带追踪信息
+     */
+    public void begin(String queueStage, Object msg) {
+        if (!(msg instanceof TracedMsg)) {
+            return;
+        }
+        TracedMsg tracedMsg = (TracedMsg) msg;
+        recordSince(queueStage, tracedMsg.getEnqueueTime());
+        if (tracedMsg.getTraceId() != null) {
+            CURRENT.set(new Trace(tracedMsg.getTraceId(), tracedMsg.getOriginTime()));
+        }
+        tracedMsg.clearTrace();
+    }
+
+    /**
+     * 结束处理
+     */
+    public void end() {
+        CURRENT.remove();
+    }
+
+    /**
+     * 注册队列长度指标，重复注册时忽略
+     */
+    public void registerQueue(String queue) {
+        if (!queues.add(queue)) {
+            return;
+        }
+        gauge("chat.queue.depth", queue, q -> msgQueue.size(q));
+        gauge("chat.queue.in-flight", queue, q -> msgQueue.inFlightSize(q));
+    }
+
+    /**
+     * 注册网关的连接与发送队列指标（仅网关调用），重复注册时忽略
+     */
+    public synchronized void registerGateway() {
+        if (gatewayRegistered) {
+            return;
+        }
+        gatewayRegistered = true;
+        ConnectionRegistry connections = BaseWebSocketServer.connections;
+        for (int i = 0; i < connections.shardCount(); i++) {
+            int shard = i;
+            Gauge.builder("chat.connections", connections, c -> c.shardSize(shard))
+                    .tag("shard", String.valueOf(shard))
+                    .register(meterRegistry);
+        }
+        Gauge.builder("chat.connections.users", connections, ConnectionRegistry::userCount)
+                .register(meterRegistry);
+        Gauge.builder("chat.outbound.queued-bytes", this, m -> SessionSender.getTotalQueuedBytes())
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        FunctionCounter.builder("chat.outbound.dropped", this, m -> SessionSender.getDroppedCount())
+                .description("因发送队列已满而丢弃的消息数")
+                .register(meterRegistry);
+        FunctionCounter.builder("chat.outbound.overflow-closed", this, m -> SessionSender.getClosedCount())
+                .description("因发送队列已满而关闭的连接数")
+                .register(meterRegistry);
+        FunctionCounter.builder("chat.status.suppressed", this, m -> StatusCoalescer.getSuppressedCount())
+                .description("被合并（未发送）的用户状态变更数")
+                .register(meterRegistry);
+    }
+
+    private static String newTraceId() {
+        return Long.toHexString(ThreadLocalRandom.current().nextLong());
+    }
+
+    private Timer timer(String stage) {
+        return timers.computeIfAbsent(stage, k -> Timer.builder(LATENCY)
+                .tag("stage", k)
+                .publishPercentileHistogram()
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry));
+    }
+
+    private void gauge(String name, String queue, ToDoubleFunction<String> size) {
+        Gauge.builder(name, queue, q -> {
+                    try {
+                        return size.applyAsDouble(q);
+                    } catch (Exception e) {
+                        log.error(e.getMessage());
+                        return Double.NaN;
+                    }
+                })
+                .tag("queue", queue)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 追踪信息
+     */
+    private static class Trace {
+
+        final String traceId;
+
+        final Long originTime;
+
+        Trace(String traceId, Long originTime) {
+            this.traceId = traceId;
+            this.originTime = originTime;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package pers.codewld.imall.chat.model.enums;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * <p>
+ * 发送缓冲区溢出策略 枚举类
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Getter
+@AllArgsConstructor
+public enum OverflowPolicy {
+
+    DROP_NEWEST("丢弃新消息"),
+
+    DROP_OLDEST("丢弃最旧的消息"),
+
+    CLOSE("关闭连接");
+
+    /**
+     * 描述
+     */
+    private final String desc;
+
+}
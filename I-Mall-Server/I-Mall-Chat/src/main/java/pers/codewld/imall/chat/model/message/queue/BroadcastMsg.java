@@ -0,0 +1,49 @@
+package pers.codewld.imall.chat.model.message.queue;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import pers.codewld.imall.chat.model.entity.User;
+import pers.codewld.imall.chat.model.enums.SystemCode;
+
+import java.time.LocalDateTime;
+
+/**
+ * <p>
+ * 系统广播 消息类
+ * </p>
+ * <p>
+ * 描述：由管理员发出，聊天服务向目标系统的每个网关节点各发送一条，网关投递给本节点的所有连接
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@AllArgsConstructor
+@NoArgsConstructor
+public class BroadcastMsg extends TracedMsg {
+
+    /**
+     * 发送者
+     */
+    private User sender;
+
+    /**
+     * 目标系统（为null时广播至所有系统）
+     */
+    private SystemCode system;
+
+    /**
+     * 消息
+     */
+    private String msg;
+
+    /**
+     * 发送时间
+     */
+    private LocalDateTime time;
+
+}
@@ -0,0 +1,38 @@
+package pers.codewld.imall.chat.model.message.queue;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import pers.codewld.imall.chat.model.entity.User;
+
+import java.util.List;
+
+/**
+ * <p>
+ * 群聊消息投递 消息类
+ * </p>
+ * <p>
+ * 描述：一条消息对应同一网关节点上的一批接收者，由网关逐一投递
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@AllArgsConstructor
+@NoArgsConstructor
+public class GroupDeliverMsg extends TracedMsg {
+
+    /**
+     * 接收者列表
+     */
+    private List<User> receivers;
+
+    /**
+     * 群聊消息
+     */
+    private GroupMsg msg;
+
+}
@@ -0,0 +1,45 @@
+package pers.codewld.imall.chat.model.message.queue;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import pers.codewld.imall.chat.model.entity.User;
+
+import java.time.LocalDateTime;
+
+/**
+ * <p>
+ * 群聊消息 消息类
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@AllArgsConstructor
+@NoArgsConstructor
+public class GroupMsg extends TracedMsg {
+
+    /**
+     * 发送者
+     */
+    private User sender;
+
+    /**
+     * 群ID
+     */
+    private String groupId;
+
+    /**
+     * 消息
+     */
+    private String msg;
+
+    /**
+     * 发送时间
+     */
+    private LocalDateTime time;
+
+}
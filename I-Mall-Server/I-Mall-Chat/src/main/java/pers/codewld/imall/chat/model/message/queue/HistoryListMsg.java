@@ -0,0 +1,59 @@
+package pers.codewld.imall.chat.model.message.queue;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import pers.codewld.imall.chat.model.entity.User;
+
+import java.util.List;
+
+/**
+ * <p>
+ * 历史消息列表 消息类
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@AllArgsConstructor
+@NoArgsConstructor
+public class HistoryListMsg extends TracedMsg {
+
+    /**
+     * 接收者
+     */
+    private User receiver;
+
+    /**
+     * 联系人
+     */
+    private User contact;
+
+    /**
+     * 消息列表（按时间升序）
+     */
+    private List<MsgMsg> list;
+
+    /**
+     * 是否还有更早的消息
+     */
+    private Boolean hasMore;
+
+    /**
+     * 列表中最早一条消息的ID，加载更早的消息时与该消息的时间一并作为游标
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String beforeId;
+
+    public HistoryListMsg(User receiver, User contact, List<MsgMsg> list, Boolean hasMore) {
+        this.receiver = receiver;
+        this.contact = contact;
+        this.list = list;
+        this.hasMore = hasMore;
+    }
+
+}
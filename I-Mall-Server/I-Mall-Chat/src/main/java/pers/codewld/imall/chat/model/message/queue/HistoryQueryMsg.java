@@ -0,0 +1,59 @@
+package pers.codewld.imall.chat.model.message.queue;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import pers.codewld.imall.chat.model.entity.User;
+
+import java.time.LocalDateTime;
+
+/**
+ * <p>
+ * 历史消息查询 消息类
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@AllArgsConstructor
+@NoArgsConstructor
+public class HistoryQueryMsg extends TracedMsg {
+
+    /**
+     * 查询者
+     */
+    private User user;
+
+    /**
+     * 联系人
+     */
+    private User contact;
+
+    /**
+     * 只查询早于该时间的消息（为null时查询最新的消息）
+     */
+    private LocalDateTime before;
+
+    /**
+     * 查询数量
+     */
+    private Integer size;
+
+    /**
+     * 与before共同组成游标：与before同时刻的消息中，只查询消息ID小于该值的消息（为null时不查询与before同时刻的消息）
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String beforeId;
+
+    public HistoryQueryMsg(User user, User contact, LocalDateTime before, Integer size) {
+        this.user = user;
+        this.contact = contact;
+        this.before = before;
+        this.size = size;
+    }
+
+}
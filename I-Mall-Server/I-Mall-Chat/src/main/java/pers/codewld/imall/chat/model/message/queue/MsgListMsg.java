@@ -2,6 +2,7 @@ package pers.codewld.imall.chat.model.message.queue;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import pers.codewld.imall.chat.model.entity.User;
 
@@ -16,9 +17,10 @@ import java.util.List;
  * @since 2022-03-25
  */
 @Data
+@EqualsAndHashCode(callSuper = false)
 @AllArgsConstructor
 @NoArgsConstructor
-public class MsgListMsg {
+public class MsgListMsg extends TracedMsg {
 
     /**
      * 接收者
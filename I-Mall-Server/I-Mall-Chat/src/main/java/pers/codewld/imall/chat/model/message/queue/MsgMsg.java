@@ -1,7 +1,9 @@
 package pers.codewld.imall.chat.model.message.queue;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import pers.codewld.imall.chat.model.entity.User;
 
@@ -16,9 +18,10 @@ import java.time.LocalDateTime;
  * @since 2022-03-21
  */
 @Data
+@EqualsAndHashCode(callSuper = false)
 @AllArgsConstructor
 @NoArgsConstructor
-public class MsgMsg {
+public class MsgMsg extends TracedMsg {
 
     /**
      * 发送者
@@ -40,4 +43,23 @@ public class MsgMsg {
      */
     private LocalDateTime time;
 
+    /**
+     * 是否已由网关在本地投递（为true时聊天服务不再投递，只做持久化）
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean delivered;
+
+    /**
+     * 已在本地投递的网关节点（仅delivered为true时有意义）
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String node;
+
+    public MsgMsg(User sender, User receiver, String msg, LocalDateTime time) {
+        this.sender = sender;
+        this.receiver = receiver;
+        this.msg = msg;
+        this.time = time;
+    }
+
 }
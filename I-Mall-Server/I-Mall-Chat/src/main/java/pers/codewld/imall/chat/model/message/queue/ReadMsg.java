@@ -0,0 +1,43 @@
+package pers.codewld.imall.chat.model.message.queue;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import pers.codewld.imall.chat.model.entity.User;
+
+import java.time.LocalDateTime;
+
+/**
+ * <p>
+ * 消息已读 消息类
+ * </p>
+ * <p>
+ * 描述：接收者已读来自发送者、发送时间不晚于 time 的所有消息
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@AllArgsConstructor
+@NoArgsConstructor
+public class ReadMsg extends TracedMsg {
+
+    /**
+     * 接收者（已读者）
+     */
+    private User receiver;
+
+    /**
+     * 发送者
+     */
+    private User sender;
+
+    /**
+     * 已读截止时间
+     */
+    private LocalDateTime time;
+
+}
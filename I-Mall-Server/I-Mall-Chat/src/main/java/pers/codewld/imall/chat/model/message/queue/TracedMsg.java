@@ -0,0 +1,47 @@
+package pers.codewld.imall.chat.model.message.queue;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+/**
+ * <p>
+ * 可追踪的队列消息 基类
+ * </p>
+ * <p>
+ * 描述：追踪信息只在队列中传递，不参与消息的比较，也不写入数据库或发送给客户端；为空时不写出，旧版本节点可读取未追踪的消息
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Data
+public abstract class TracedMsg {
+
+    /**
+     * 追踪ID，网关收到客户端数据时生成，由该数据引起的后续队列消息沿用同一ID
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String traceId;
+
+    /**
+     * 网关收到客户端数据的时间（毫秒时间戳）
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long originTime;
+
+    /**
+     * 放入当前队列的时间（毫秒时间戳）
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long enqueueTime;
+
+    /**
+     * 清除追踪信息
+     */
+    public void clearTrace() {
+        this.traceId = null;
+        this.originTime = null;
+        this.enqueueTime = null;
+    }
+
+}
@@ -2,6 +2,7 @@ package pers.codewld.imall.chat.model.message.queue;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import pers.codewld.imall.chat.model.entity.User;
 
@@ -14,9 +15,10 @@ import pers.codewld.imall.chat.model.entity.User;
  * @since 2022-03-25
  */
 @Data
+@EqualsAndHashCode(callSuper = false)
 @AllArgsConstructor
 @NoArgsConstructor
-public class UnreadCountMsg {
+public class UnreadCountMsg extends TracedMsg {
 
     /**
      * 接收者
@@ -1,7 +1,9 @@
 package pers.codewld.imall.chat.model.message.queue;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import pers.codewld.imall.chat.model.entity.User;
 
@@ -14,9 +16,10 @@ import pers.codewld.imall.chat.model.entity.User;
  * @since 2022-03-21
  */
 @Data
+@EqualsAndHashCode(callSuper = false)
 @AllArgsConstructor
 @NoArgsConstructor
-public class UserStatusMsg {
+public class UserStatusMsg extends TracedMsg {
 
     /**
      * 用户
@@ -38,6 +41,12 @@ public class UserStatusMsg {
      */
     private User contact;
 
+    /**
+     * 用户连接所在的网关节点
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String node;
+
     public UserStatusMsg(User user, Boolean online) {
         this.user = user;
         this.online = online;
@@ -48,4 +57,11 @@ public class UserStatusMsg {
         this.online = online;
         this.active = active;
     }
+
+    public UserStatusMsg(User user, Boolean online, Boolean active, User contact) {
+        this.user = user;
+        this.online = online;
+        this.active = active;
+        this.contact = contact;
+    }
 }
@@ -0,0 +1,25 @@
+package pers.codewld.imall.chat.model.message.websocket;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * <p>
+ * 活跃状态 通信数据类
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ActiveStatusData {
+
+    /**
+     * 是否活跃
+     */
+    private Boolean active;
+
+}
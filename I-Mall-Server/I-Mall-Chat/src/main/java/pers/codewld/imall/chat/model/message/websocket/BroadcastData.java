@@ -0,0 +1,31 @@
+package pers.codewld.imall.chat.model.message.websocket;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import pers.codewld.imall.chat.model.enums.SystemCode;
+
+/**
+ * <p>
+ * 系统广播 通信数据类
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BroadcastData {
+
+    /**
+     * 目标系统（为null时广播至所有系统）
+     */
+    private SystemCode system;
+
+    /**
+     * 消息
+     */
+    private String msg;
+
+}
@@ -0,0 +1,49 @@
+package pers.codewld.imall.chat.model.message.websocket;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import pers.codewld.imall.chat.model.entity.User;
+
+import java.time.LocalDateTime;
+
+/**
+ * <p>
+ * 加载历史消息 通信数据类
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LoadHistoryData {
+
+    /**
+     * 联系人（为null时为当前联系人）
+     */
+    private User contact;
+
+    /**
+     * 只加载早于该时间的消息
+     */
+    private LocalDateTime before;
+
+    /**
+     * 加载数量
+     */
+    private Integer size;
+
+    /**
+     * 与before共同组成游标（取上次返回的 beforeId）：与before同时刻的消息中，只加载消息ID小于该值的消息
+     */
+    private String beforeId;
+
+    public LoadHistoryData(User contact, LocalDateTime before, Integer size) {
+        this.contact = contact;
+        this.before = before;
+        this.size = size;
+    }
+
+}
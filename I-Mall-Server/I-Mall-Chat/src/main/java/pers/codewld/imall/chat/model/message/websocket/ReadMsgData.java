@@ -0,0 +1,26 @@
+package pers.codewld.imall.chat.model.message.websocket;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import pers.codewld.imall.chat.model.entity.User;
+
+/**
+ * <p>
+ * 消息已读 通信数据类
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ReadMsgData {
+
+    /**
+     * 联系人（为null时为当前联系人）
+     */
+    private User contact;
+
+}
@@ -0,0 +1,30 @@
+package pers.codewld.imall.chat.model.message.websocket;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * <p>
+ * 发送群聊消息 通信数据类
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SendGroupMsgData {
+
+    /**
+     * 群ID
+     */
+    private String groupId;
+
+    /**
+     * 消息
+     */
+    private String msg;
+
+}
@@ -1,24 +1,39 @@
 package pers.codewld.imall.chat.server;
 
-import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import pers.codewld.imall.chat.codec.FrameDecoder;
+import pers.codewld.imall.chat.metrics.ChatMetrics;
 import pers.codewld.imall.chat.model.entity.User;
 import pers.codewld.imall.chat.model.enums.SystemCode;
+import pers.codewld.imall.chat.model.message.queue.BroadcastMsg;
+import pers.codewld.imall.chat.model.message.queue.GroupMsg;
+import pers.codewld.imall.chat.model.message.queue.HistoryQueryMsg;
 import pers.codewld.imall.chat.model.message.queue.MsgMsg;
+import pers.codewld.imall.chat.model.message.queue.ReadMsg;
 import pers.codewld.imall.chat.model.message.queue.UserStatusMsg;
+import pers.codewld.imall.chat.model.message.websocket.ActiveStatusData;
+import pers.codewld.imall.chat.model.message.websocket.BroadcastData;
+import pers.codewld.imall.chat.model.message.websocket.LoadHistoryData;
+import pers.codewld.imall.chat.model.message.websocket.ReadMsgData;
+import pers.codewld.imall.chat.model.message.websocket.SendGroupMsgData;
+import pers.codewld.imall.chat.model.message.websocket.SendMsgData;
+import pers.codewld.imall.chat.model.message.websocket.SessionEstablishData;
 import pers.codewld.imall.chat.model.message.websocket.WebSocketMsg;
 import pers.codewld.imall.chat.util.ConfigUtil;
+import pers.codewld.imall.chat.util.TransformUtil;
+import pers.codewld.imall.common.queue.MsgQueue;
 import pers.codewld.imall.common.util.BeanUtil;
 import pers.codewld.imall.common.util.RedisUtil;
 
 import javax.websocket.*;
 import javax.websocket.server.PathParam;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.time.LocalDateTime;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * <p>
@@ -50,34 +65,111 @@ public abstract class BaseWebSocketServer {
     }
 
     /**
-     * Redis工具类
+     * 消息队列
      */
-    private RedisUtil redisUtil;
+    private MsgQueue msgQueue;
 
-    private RedisUtil getRedisUtil() {
-        if (redisUtil == null) {
-            redisUtil = BeanUtil.getBean(RedisUtil.class);
+    private MsgQueue getMsgQueue() {
+        if (msgQueue == null) {
+            msgQueue = BeanUtil.getBean(MsgQueue.class);
         }
-        return redisUtil;
+        return msgQueue;
     }
 
     /**
-     * 处理前队列
+     * 指标
+     */
+    private ChatMetrics chatMetrics;
+
+    private ChatMetrics getChatMetrics() {
+        if (chatMetrics == null) {
+            chatMetrics = BeanUtil.getBean(ChatMetrics.class);
+        }
+        return chatMetrics;
+    }
+
+    /**
+     * 处理前队列（按当前用户分区）
      */
     private String getPreQueue() {
-        return getConfigUtil().getPRE_QUEUE();
+        return getConfigUtil().getPreQueue(user);
+    }
+
+    /**
+     * 处理前队列（按当前用户与联系人组成的会话分区）
+     */
+    private String getPreQueue(User contact) {
+        return getConfigUtil().getPreQueue(user, contact);
     }
 
     /**
      * 静态变量，记录所有的连接
      */
-    public static final Map<String, BaseWebSocketServer> connections = new LinkedHashMap<>();
+    public static final ConnectionRegistry connections = new ConnectionRegistry();
+
+    /**
+     * 心跳回收器，所有连接共用，首个连接建立时创建
+     */
+    private static volatile HeartbeatReaper reaper;
+
+    private HeartbeatReaper getReaper() {
+        if (reaper == null && getConfigUtil().getHEARTBEAT_INTERVAL() > 0) {
+            synchronized (BaseWebSocketServer.class) {
+                if (reaper == null) {
+                    reaper = new HeartbeatReaper(
+                            getConfigUtil().getHEARTBEAT_INTERVAL(),
+                            getConfigUtil().getHEARTBEAT_TIMEOUT(),
+                            getConfigUtil().getHEARTBEAT_TICK());
+                }
+            }
+        }
+        return reaper;
+    }
+
+    /**
+     * 节点心跳，所有连接共用，首个连接建立时创建
+     */
+    private static volatile NodeHeartbeat nodeHeartbeat;
+
+    private void startNodeHeartbeat() {
+        if (nodeHeartbeat == null && getConfigUtil().getNODE_HEARTBEAT_INTERVAL() > 0) {
+            synchronized (BaseWebSocketServer.class) {
+                if (nodeHeartbeat == null) {
+                    nodeHeartbeat = new NodeHeartbeat(
+                            BeanUtil.getBean(RedisUtil.class),
+                            getConfigUtil().getNODE_HEARTBEAT_HASH(),
+                            getConfigUtil().getNodeId(),
+                            getConfigUtil().getNODE_HEARTBEAT_INTERVAL());
+                }
+            }
+        }
+    }
+
+    /**
+     * 最后一次收到客户端数据（消息或pong）的时间
+     */
+    private volatile long lastSeen;
+
+    /**
+     * 在心跳时间轮中所在的槽，-1表示不在时间轮中
+     */
+    volatile int heartbeatSlot = -1;
 
     /**
      * 与当前连接对应的Session
      */
     private Session session;
 
+    /**
+     * 与当前连接对应的异步发送器
+     */
+    private SessionSender sender;
+
+    /**
+     * 与当前连接对应的用户状态合并器
+     */
+    private StatusCoalescer statusCoalescer;
+
     /**
      * 当前用户
      */
@@ -86,7 +178,12 @@ public abstract class BaseWebSocketServer {
     /**
      * 联系人
      */
-    private User contact;
+    private volatile User contact;
+
+    /**
+     * 是否活跃
+     */
+    private volatile boolean active;
 
     /**
      * 连接成功的回调方法
@@ -94,37 +191,119 @@ public abstract class BaseWebSocketServer {
     @OnOpen
     public void onOpen(Session session, @PathParam("id") String id) {
         this.session = session;
-        connections.put(String.valueOf(id), this);
+        this.sender = new SessionSender(
+                session,
+                getConfigUtil().getOUTBOUND_MAX_MESSAGES(),
+                getConfigUtil().getOUTBOUND_MAX_BYTES(),
+                getConfigUtil().getOUTBOUND_OVERFLOW_POLICY());
         this.user = new User(getSystemCode(), id);
-        sendMsgToPreQueue(new UserStatusMsg(user, true, false));
+        this.lastSeen = System.currentTimeMillis();
+        this.statusCoalescer = new StatusCoalescer(
+                getConfigUtil().getSTATUS_COALESCE_WINDOW(),
+                getMsgQueue(),
+                getPreQueue(),
+                msg -> getChatMetrics().stampOrigin(msg, lastSeen));
+        connections.register(user, this);
+        if (getReaper() != null) {
+            reaper.add(this);
+        }
+        startNodeHeartbeat();
+        statusCoalescer.submit(newUserStatusMsg(true, false, null));
     }
 
     /**
-     * 接收消息时的回调方法
+     * 接收文本消息时的回调方法
      */
     @OnMessage
     public void onMessage(String message) {
-        WebSocketMsg webSocketMsg = JSONObject.parseObject(message, WebSocketMsg.class);
-        JSONObject data = JSONObject.parseObject(webSocketMsg.getData());
-        switch (webSocketMsg.getType()) {
-            // 活跃状态
-            case "activeStatus":
-                Boolean active = data.getBoolean("active");
-                contact = null;
-                sendMsgToPreQueue(new UserStatusMsg(user, true, active, null));
-                break;
-            // 会话建立
-            case "sessionEstablish":
-                contact = JSON.toJavaObject(data.getJSONObject("contact"), User.class);
-                sendMsgToPreQueue(new UserStatusMsg(user, true, true, contact));
-                break;
-            // 发送消息
-            case "sendMsg":
-                String msg = data.getString("msg");
-                sendMsgToPreQueue(new MsgMsg(user, contact, msg, LocalDateTime.now()));
-                break;
-            default:
-                break;
+        lastSeen = System.currentTimeMillis();
+        long start = System.nanoTime();
+        handle(FrameDecoder.decode(message));
+        getChatMetrics().record(ChatMetrics.STAGE_GATEWAY_RECEIVE, System.nanoTime() - start);
+    }
+
+    /**
+     * 接收二进制消息时的回调方法
+     */
+    @OnMessage
+    public void onMessage(ByteBuffer message) {
+        lastSeen = System.currentTimeMillis();
+        long start = System.nanoTime();
+        handle(FrameDecoder.decode(message));
+        getChatMetrics().record(ChatMetrics.STAGE_GATEWAY_RECEIVE, System.nanoTime() - start);
+    }
+
+    /**
+     * 接收pong时的回调方法
+     */
+    @OnMessage
+    public void onPong(PongMessage message) {
+        lastSeen = System.currentTimeMillis();
+    }
+
+    /**
+     * 处理通信数据
+     */
+    private void handle(Object data) {
+        // 活跃状态
+        if (data instanceof ActiveStatusData) {
+            Boolean activeStatus = ((ActiveStatusData) data).getActive();
+            contact = null;
+            active = Boolean.TRUE.equals(activeStatus);
+            statusCoalescer.submit(newUserStatusMsg(true, activeStatus, null));
+        }
+        // 会话建立
+        else if (data instanceof SessionEstablishData) {
+            contact = ((SessionEstablishData) data).getContact();
+            active = true;
+            statusCoalescer.submit(newUserStatusMsg(true, true, contact));
+        }
+        // 发送消息
+        else if (data instanceof SendMsgData) {
+            MsgMsg msgMsg = new MsgMsg(user, contact, ((SendMsgData) data).getMsg(), LocalDateTime.now());
+            if (getConfigUtil().isLOCAL_DELIVERY() && deliverLocally(msgMsg)) {
+                // 已在本地投递，聊天服务只需持久化
+                msgMsg.setDelivered(true);
+                msgMsg.setNode(getConfigUtil().getNodeId());
+            }
+            sendToPreQueue(msgMsg, getPreQueue(contact));
+        }
+        // 消息已读（未指定联系人时为当前联系人）
+        else if (data instanceof ReadMsgData) {
+            User readContact = ((ReadMsgData) data).getContact();
+            User sender = readContact != null ? readContact : contact;
+            if (sender != null) {
+                sendToPreQueue(new ReadMsg(user, sender, LocalDateTime.now()), getPreQueue(sender));
+            }
+        }
+        // 发送群聊消息
+        else if (data instanceof SendGroupMsgData) {
+            SendGroupMsgData sendGroupMsgData = (SendGroupMsgData) data;
+            if (sendGroupMsgData.getGroupId() != null) {
+                sendToPreQueue(new GroupMsg(user, sendGroupMsgData.getGroupId(), sendGroupMsgData.getMsg(), LocalDateTime.now()), getPreQueue());
+            }
+        }
+        // 系统广播（仅限管理员）
+        else if (data instanceof BroadcastData) {
+            if (getSystemCode() != SystemCode.ADMIN) {
+                log.warn("非管理员不能发送系统广播：" + TransformUtil.transform(user));
+                return;
+            }
+            BroadcastData broadcastData = (BroadcastData) data;
+            sendToPreQueue(new BroadcastMsg(user, broadcastData.getSystem(), broadcastData.getMsg(), LocalDateTime.now()), getPreQueue());
+        }
+        // 加载历史消息（未指定联系人时为当前联系人）
+        else if (data instanceof LoadHistoryData) {
+            LoadHistoryData loadHistoryData = (LoadHistoryData) data;
+            User historyContact = loadHistoryData.getContact() != null ? loadHistoryData.getContact() : contact;
+            if (historyContact != null) {
+                sendToPreQueue(new HistoryQueryMsg(
+                        user,
+                        historyContact,
+                        loadHistoryData.getBefore(),
+                        loadHistoryData.getSize(),
+                        loadHistoryData.getBeforeId()), getPreQueue(historyContact));
+            }
         }
     }
 
@@ -134,8 +313,7 @@ public abstract class BaseWebSocketServer {
     @OnError
     public void onError(Throwable error) throws Throwable {
         log.error(error.getMessage());
-        // 向消息队列中传递消息
-        sendMsgToPreQueue(new UserStatusMsg(user, false));
+        release();
         throw error;
     }
 
@@ -143,22 +321,144 @@ public abstract class BaseWebSocketServer {
      * 连接关闭的回调方法
      */
     @OnClose
-    public void onClose(@PathParam("id") Long id) {
-        connections.remove(String.valueOf(id));
-        sendMsgToPreQueue(new UserStatusMsg(user, false));
+    public void onClose() {
+        release();
+    }
+
+    /**
+     * 发送ping
+     */
+    void ping() {
+        sender.ping();
+    }
+
+    /**
+     * 心跳超时：关闭连接并注销（半开连接可能不会触发onClose，因此主动注销）
+     */
+    void expire() {
+        log.warn("心跳超时，回收连接：" + TransformUtil.transform(user));
+        release();
+        try {
+            session.close(new CloseReason(CloseReason.CloseCodes.GOING_AWAY, "heartbeat timeout"));
+        } catch (IOException e) {
+            log.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 注销当前连接，若为该用户的最后一个连接，则向消息队列中传递离线消息
+     * <p>
+     * 可重复调用（onError、onClose与心跳超时可能先后触发），离线消息只发送一次
+     */
+    private void release() {
+        if (reaper != null) {
+            reaper.remove(this);
+        }
+        if (sender != null) {
+            sender.close();
+        }
+        if (statusCoalescer != null) {
+            statusCoalescer.discard();
+        }
+        if (connections.unregister(user, this)) {
+            sendMsgToPreQueue(newUserStatusMsg(false, null, null), getPreQueue());
+        }
+    }
+
+    /**
+     * 构造携带当前节点的用户状态消息
+     */
+    private UserStatusMsg newUserStatusMsg(Boolean online, Boolean active, User contact) {
+        UserStatusMsg userStatusMsg = new UserStatusMsg(user, online, active, contact);
+        userStatusMsg.setNode(getConfigUtil().getNodeId());
+        return userStatusMsg;
+    }
+
+    /**
+     * 接收者在本节点存在活跃连接时，直接投递到接收者的所有本地连接
+     *
+     * @return 是否已投递
+     */
+    private boolean deliverLocally(MsgMsg msgMsg) {
+        User receiver = msgMsg.getReceiver();
+        if (receiver == null) {
+            return false;
+        }
+        boolean receiverActive = false;
+        for (BaseWebSocketServer connection : connections.get(receiver)) {
+            if (connection.isActive()) {
+                receiverActive = true;
+                break;
+            }
+        }
+        if (!receiverActive) {
+            return false;
+        }
+        List<MsgMsg> list = new ArrayList<>(1);
+        list.add(msgMsg);
+        JSONObject data = new JSONObject();
+        data.put("list", list);
+        sendMsg(receiver, "msg", data);
+        return true;
+    }
+
+    /**
+     * 向用户在本节点的所有连接发送消息
+     *
+     * @param user 接收者
+     * @param type 通信类型
+     * @param data 数据
+     */
+    public static void sendMsg(User user, String type, JSONObject data) {
+        sendToUser(user, toFrame(type, data));
+    }
+
+    /**
+     * 构造WebSocket帧
+     *
+     * @param type 通信类型
+     * @param data 数据
+     */
+    public static String toFrame(String type, JSONObject data) {
+        WebSocketMsg webSocketMsg = new WebSocketMsg(type, data.toJSONString());
+        return JSONObject.toJSONString(webSocketMsg);
+    }
+
+    /**
+     * 向用户在本节点的所有连接发送已构造的帧
+     */
+    public static void sendToUser(User user, String message) {
+        // 同一用户可能持有多个连接，逐一放入发送队列
+        for (BaseWebSocketServer webSocketServer : connections.get(user)) {
+            if (!webSocketServer.sendMessage(message)) {
+                log.warn("消息未能放入发送队列：" + TransformUtil.transform(user));
+            }
+        }
+    }
+
+    /**
+     * 发送消息（异步，放入当前连接的发送队列）
+     *
+     * @return 是否成功入队
+     */
+    public boolean sendMessage(String message) {
+        return sender.send(message);
     }
 
     /**
-     * 发送消息
+     * 先发送待合并的用户状态，再向处理前队列中发送消息
      */
-    public void sendMessage(String message) throws IOException {
-        session.getBasicRemote().sendText(message);
+    private void sendToPreQueue(Object msg, String preQueue) {
+        statusCoalescer.flush();
+        sendMsgToPreQueue(msg, preQueue);
     }
 
     /**
      * 向处理前队列中发送消息
      */
-    private void sendMsgToPreQueue(Object msg) {
-        getRedisUtil().lPush(getPreQueue(), msg, 0);
+    private void sendMsgToPreQueue(Object msg, String preQueue) {
+        // 以最后一次收到客户端数据的时间作为端到端耗时的起点
+        getChatMetrics().stampOrigin(msg, lastSeen);
+        getMsgQueue().push(preQueue, msg);
     }
 }
@@ -0,0 +1,202 @@
+package pers.codewld.imall.chat.server;
+
+import pers.codewld.imall.chat.model.entity.User;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * 连接 注册表
+ * </p>
+ * <p>
+ * 描述：以 [所属系统 + 用户ID] 为键，分片记录所有连接；同一用户可同时持有多个连接（如多个标签页）
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+public class ConnectionRegistry {
+
+    /**
+     * 默认分片数
+     */
+    public static final int DEFAULT_SHARD_COUNT = 64;
+
+    /**
+     * 分片
+     */
+    private final Shard[] shards;
+
+    /**
+     * 分片掩码
+     */
+    private final int mask;
+
+    public ConnectionRegistry() {
+        this(DEFAULT_SHARD_COUNT);
+    }
+
+    public ConnectionRegistry(int shardCount) {
+        // 分片数取不小于shardCount的2的幂，便于以位运算定位分片
+        int n = 1;
+        while (n < shardCount) {
+            n <<= 1;
+        }
+        this.shards = new Shard[n];
+        for (int i = 0; i < n; i++) {
+            shards[i] = new Shard();
+        }
+        this.mask = n - 1;
+    }
+
+    /**
+     * 注册连接
+     *
+     * @return 是否为该用户的首个连接
+     */
+    public boolean register(User user, BaseWebSocketServer connection) {
+        Shard shard = shardOf(user);
+        boolean[] first = new boolean[1];
+        boolean[] added = new boolean[1];
+        shard.map.compute(user, (k, v) -> {
+            if (v == null) {
+                v = ConcurrentHashMap.newKeySet();
+                first[0] = true;
+            }
+            added[0] = v.add(connection);
+            return v;
+        });
+        if (added[0]) {
+            shard.connectionCount.incrementAndGet();
+            if (first[0]) {
+                shard.userCount.incrementAndGet();
+            }
+        }
+        return first[0];
+    }
+
+    /**
+     * 注销连接
+     *
+     * @return 是否为该用户的最后一个连接（连接不存在时返回false）
+     */
+    public boolean unregister(User user, BaseWebSocketServer connection) {
+        if (user == null) {
+            return false;
+        }
+        Shard shard = shardOf(user);
+        boolean[] last = new boolean[1];
+        boolean[] removed = new boolean[1];
+        shard.map.computeIfPresent(user, (k, v) -> {
+            removed[0] = v.remove(connection);
+            if (v.isEmpty()) {
+                last[0] = true;
+                return null;
+            }
+            return v;
+        });
+        if (removed[0]) {
+            shard.connectionCount.decrementAndGet();
+        }
+        if (last[0]) {
+            shard.userCount.decrementAndGet();
+        }
+        return removed[0] && last[0];
+    }
+
+    /**
+     * 获取用户的所有连接
+     */
+    public Set<BaseWebSocketServer> get(User user) {
+        if (user == null) {
+            return Collections.emptySet();
+        }
+        Set<BaseWebSocketServer> set = shardOf(user).map.get(user);
+        return set != null ? Collections.unmodifiableSet(set) : Collections.emptySet();
+    }
+
+    /**
+     * 判断用户是否存在连接
+     */
+    public boolean contains(User user) {
+        return user != null && shardOf(user).map.containsKey(user);
+    }
+
+    /**
+     * 遍历所有连接
+     */
+    public void forEach(Consumer<BaseWebSocketServer> action) {
+        for (Shard shard : shards) {
+            shard.map.values().forEach(set -> set.forEach(action));
+        }
+    }
+
+    /**
+     * 连接总数
+     */
+    public int size() {
+        int sum = 0;
+        for (Shard shard : shards) {
+            sum += shard.connectionCount.get();
+        }
+        return sum;
+    }
+
+    /**
+     * 在线用户总数
+     */
+    public int userCount() {
+        int sum = 0;
+        for (Shard shard : shards) {
+            sum += shard.userCount.get();
+        }
+        return sum;
+    }
+
+    /**
+     * 分片数
+     */
+    public int shardCount() {
+        return shards.length;
+    }
+
+    /**
+     * 指定分片的连接数
+     */
+    public int shardSize(int shard) {
+        return shards[shard].connectionCount.get();
+    }
+
+    /**
+     * 定位用户所在分片
+     */
+    private Shard shardOf(User user) {
+        int h = user.hashCode();
+        return shards[(h ^ (h >>> 16)) & mask];
+    }
+
+    /**
+     * 分片
+     */
+    private static class Shard {
+
+        /**
+         * 用户 -> 连接集合
+         */
+        final ConcurrentHashMap<User, Set<BaseWebSocketServer>> map = new ConcurrentHashMap<>();
+
+        /**
+         * 分片内连接数
+         */
+        final AtomicInteger connectionCount = new AtomicInteger();
+
+        /**
+         * 分片内用户数
+         */
+        final AtomicInteger userCount = new AtomicInteger();
+    }
+}
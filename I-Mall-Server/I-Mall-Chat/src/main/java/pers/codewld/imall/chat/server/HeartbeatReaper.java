@@ -0,0 +1,117 @@
+package pers.codewld.imall.chat.server;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * 心跳 回收器
+ * </p>
+ * <p>
+ * 描述：时间轮实现，一圈的时长等于心跳间隔，每个连接固定落在一个槽中；每次tick只处理一个槽，
+ * 即每个连接每隔一个心跳间隔被检查一次：空闲超过超时时间的连接被回收，否则发送ping。
+ * 所有连接共用一个线程，不为每个连接创建定时任务
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Slf4j
+public class HeartbeatReaper {
+
+    /**
+     * 槽
+     */
+    private final Set<BaseWebSocketServer>[] wheel;
+
+    /**
+     * 心跳间隔（毫秒）
+     */
+    private final long interval;
+
+    /**
+     * 超时时间（毫秒）
+     */
+    private final long timeout;
+
+    /**
+     * 当前处理的槽，只由时间轮线程修改
+     */
+    private volatile int cursor;
+
+    private final ScheduledExecutorService scheduler;
+
+    @SuppressWarnings("unchecked")
+    public HeartbeatReaper(long interval, long timeout, long tick) {
+        int slots = (int) Math.max(1, (interval + tick - 1) / tick);
+        this.wheel = new Set[slots];
+        for (int i = 0; i < slots; i++) {
+            wheel[i] = ConcurrentHashMap.newKeySet();
+        }
+        this.interval = interval;
+        this.timeout = timeout;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("heartbeat-reaper-");
+        threadFactory.setDaemon(true);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        scheduler.scheduleAtFixedRate(this::tick, tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 加入连接：放在刚处理过的槽中，一个心跳间隔后首次检查
+     */
+    public void add(BaseWebSocketServer connection) {
+        int slot = Math.floorMod(cursor - 1, wheel.length);
+        connection.heartbeatSlot = slot;
+        wheel[slot].add(connection);
+    }
+
+    /**
+     * 移除连接
+     */
+    public void remove(BaseWebSocketServer connection) {
+        int slot = connection.heartbeatSlot;
+        if (slot >= 0) {
+            wheel[slot].remove(connection);
+            connection.heartbeatSlot = -1;
+        }
+    }
+
+    /**
+     * 连接数
+     */
+    public int size() {
+        int sum = 0;
+        for (Set<BaseWebSocketServer> slot : wheel) {
+            sum += slot.size();
+        }
+        return sum;
+    }
+
+    /**
+     * 处理当前槽，并前进一格
+     */
+    private void tick() {
+        int slot = cursor;
+        long now = System.currentTimeMillis();
+        for (BaseWebSocketServer connection : wheel[slot]) {
+            try {
+                long idle = now - connection.getLastSeen();
+                if (idle > timeout) {
+                    remove(connection);
+                    connection.expire();
+                } else if (idle >= interval) {
+                    connection.ping();
+                }
+            } catch (Exception e) {
+                log.error(e.getMessage());
+            }
+        }
+        cursor = (slot + 1) % wheel.length;
+    }
+}
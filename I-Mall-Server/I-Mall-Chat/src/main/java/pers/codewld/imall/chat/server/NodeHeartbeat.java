@@ -0,0 +1,58 @@
+package pers.codewld.imall.chat.server;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import pers.codewld.imall.common.util.RedisUtil;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * 网关节点 心跳
+ * </p>
+ * <p>
+ * 描述：定期将 [节点 -> 当前时间] 写入Redis Hash；聊天服务据此清理已下线节点上残留的用户状态
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Slf4j
+public class NodeHeartbeat {
+
+    private final RedisUtil redisUtil;
+
+    /**
+     * 心跳Hash
+     */
+    private final String hash;
+
+    /**
+     * 当前节点标识
+     */
+    private final String nodeId;
+
+    private final ScheduledExecutorService scheduler;
+
+    public NodeHeartbeat(RedisUtil redisUtil, String hash, String nodeId, long interval) {
+        this.redisUtil = redisUtil;
+        this.hash = hash;
+        this.nodeId = nodeId;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("node-heartbeat-");
+        threadFactory.setDaemon(true);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        // 首次心跳同步写入，保证先于本节点的用户状态到达聊天服务
+        beat();
+        scheduler.scheduleWithFixedDelay(this::beat, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private void beat() {
+        try {
+            redisUtil.hSet(hash, nodeId, System.currentTimeMillis());
+        } catch (Exception e) {
+            log.error(e.getMessage());
+        }
+    }
+}
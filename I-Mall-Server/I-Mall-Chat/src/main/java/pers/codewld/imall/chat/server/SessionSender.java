@@ -0,0 +1,342 @@
+package pers.codewld.imall.chat.server;
+
+import lombok.extern.slf4j.Slf4j;
+import pers.codewld.imall.chat.model.enums.OverflowPolicy;
+
+import javax.websocket.CloseReason;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * 会话 异步发送器
+ * </p>
+ * <p>
+ * 描述：每个连接持有一个有界的发送队列，通过 AsyncRemote 逐条发送，调用方不会因慢速客户端而阻塞
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Slf4j
+public class SessionSender {
+
+    /**
+     * 所有连接排队中的字节数
+     */
+    private static final LongAdder QUEUED_BYTES = new LongAdder();
+
+    /**
+     * 因缓冲区已满而丢弃的消息数
+     */
+    private static final LongAdder DROPPED_COUNT = new LongAdder();
+
+    /**
+     * 因缓冲区已满而关闭的连接数
+     */
+    private static final LongAdder CLOSED_COUNT = new LongAdder();
+
+    /**
+     * ping的负载
+     */
+    private static final ByteBuffer PING_PAYLOAD = ByteBuffer.allocate(0);
+
+    private final Session session;
+
+    /**
+     * 队列最大消息数
+     */
+    private final int maxMessages;
+
+    /**
+     * 队列最大字节数
+     */
+    private final long maxBytes;
+
+    /**
+     * 溢出策略
+     */
+    private final OverflowPolicy overflowPolicy;
+
+    /**
+     * 待发送队列，由this保护
+     */
+    private final Deque<Entry> queue = new ArrayDeque<>();
+
+    /**
+     * 队列中的字节数，由this保护
+     */
+    private long queuedBytes;
+
+    /**
+     * 是否正在发送（从开始发送至队列清空），由this保护
+     */
+    private boolean sending;
+
+    /**
+     * 是否有线程正在执行发送循环，由this保护
+     */
+    private boolean draining;
+
+    /**
+     * 发送循环中最近一条消息是否已完成（回调在 sendText 内同步触发时置位），由this保护
+     */
+    private boolean completed;
+
+    /**
+     * 是否已关闭，由this保护
+     */
+    private boolean closed;
+
+    public SessionSender(Session session, int maxMessages, long maxBytes, OverflowPolicy overflowPolicy) {
+        this.session = session;
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * 将消息放入发送队列
+     *
+     * @return 是否成功入队
+     */
+    public boolean send(String message) {
+        Entry entry = new Entry(message, utf8Length(message));
+        boolean overflowClose = false;
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            if (isFull(entry)) {
+                switch (overflowPolicy) {
+                    case DROP_NEWEST:
+                        DROPPED_COUNT.increment();
+                        return false;
+                    case DROP_OLDEST:
+                        while (!queue.isEmpty() && isFull(entry)) {
+                            dequeue();
+                            DROPPED_COUNT.increment();
+                        }
+                        break;
+                    default:
+                        overflowClose = true;
+                        break;
+                }
+            }
+            if (!overflowClose) {
+                queue.addLast(entry);
+                queuedBytes += entry.bytes;
+                QUEUED_BYTES.add(entry.bytes);
+                if (sending) {
+                    return true;
+                }
+                sending = true;
+                draining = true;
+            }
+        }
+        if (overflowClose) {
+            CLOSED_COUNT.increment();
+            closeSession();
+            return false;
+        }
+        drain();
+        return true;
+    }
+
+    /**
+     * 将ping放入发送队列，与文本消息依次发送；不受队列上限限制
+     */
+    public void ping() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            queue.addLast(Entry.PING);
+            if (sending) {
+                return;
+            }
+            sending = true;
+            draining = true;
+        }
+        drain();
+    }
+
+    /**
+     * 关闭发送器，丢弃队列中的消息
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            while (!queue.isEmpty()) {
+                dequeue();
+            }
+        }
+    }
+
+    /**
+     * 当前连接排队中的字节数
+     */
+    public synchronized long getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    /**
+     * 当前连接排队中的消息数
+     */
+    public synchronized int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * 所有连接排队中的字节数
+     */
+    public static long getTotalQueuedBytes() {
+        return QUEUED_BYTES.sum();
+    }
+
+    /**
+     * 因缓冲区已满而丢弃的消息数
+     */
+    public static long getDroppedCount() {
+        return DROPPED_COUNT.sum();
+    }
+
+    /**
+     * 因缓冲区已满而关闭的连接数
+     */
+    public static long getClosedCount() {
+        return CLOSED_COUNT.sum();
+    }
+
+    /**
+     * 发送循环；同一时刻只有一个线程执行（调用前置位 draining）
+     * <p>
+     * 消息发送完成前退出循环，由完成回调的线程继续；回调在 sendText 内同步触发时由本循环继续，避免递归加深调用栈
+     */
+    private void drain() {
+        try {
+            while (true) {
+                Entry entry;
+                synchronized (this) {
+                    entry = closed ? null : dequeue();
+                    if (entry == null) {
+                        sending = false;
+                        draining = false;
+                        return;
+                    }
+                    completed = false;
+                }
+                if (entry == Entry.PING) {
+                    // ping为控制帧，异步发送且不等待完成，继续处理下一条
+                    session.getAsyncRemote().sendPing(PING_PAYLOAD.duplicate());
+                    continue;
+                }
+                session.getAsyncRemote().sendText(entry.message, this::onResult);
+                synchronized (this) {
+                    if (!completed) {
+                        draining = false;
+                        return;
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // 连接已失效
+            log.error(e.getMessage());
+            close();
+            synchronized (this) {
+                sending = false;
+                draining = false;
+            }
+        }
+    }
+
+    /**
+     * 发送完成的回调方法，继续发送下一条
+     */
+    private void onResult(SendResult result) {
+        if (!result.isOK() && result.getException() != null) {
+            log.error(result.getException().getMessage());
+        }
+        synchronized (this) {
+            if (draining) {
+                // 发送循环仍在进行（同步完成），由其继续发送
+                completed = true;
+                return;
+            }
+            draining = true;
+        }
+        drain();
+    }
+
+    private boolean isFull(Entry entry) {
+        if (queue.isEmpty()) {
+            // 队列为空时总是允许入队，避免单条大消息永远无法发送
+            return false;
+        }
+        return queue.size() >= maxMessages || queuedBytes + entry.bytes > maxBytes;
+    }
+
+    private Entry dequeue() {
+        Entry entry = queue.pollFirst();
+        if (entry != null) {
+            queuedBytes -= entry.bytes;
+            QUEUED_BYTES.add(-entry.bytes);
+        }
+        return entry;
+    }
+
+    private void closeSession() {
+        close();
+        try {
+            session.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, "send buffer overflow"));
+        } catch (IOException e) {
+            log.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 计算字符串的UTF-8字节数
+     */
+    private static int utf8Length(String s) {
+        int len = 0;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                len++;
+            } else if (c < 0x800) {
+                len += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                len += 4;
+                i++;
+            } else {
+                len += 3;
+            }
+        }
+        return len;
+    }
+
+    /**
+     * 队列元素
+     */
+    private static class Entry {
+
+        /**
+         * ping
+         */
+        static final Entry PING = new Entry(null, 0);
+
+        final String message;
+
+        final int bytes;
+
+        Entry(String message, int bytes) {
+            this.message = message;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package pers.codewld.imall.chat.server;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import pers.codewld.imall.chat.model.message.queue.UserStatusMsg;
+import pers.codewld.imall.common.queue.MsgQueue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * 用户状态 合并器
+ * </p>
+ * <p>
+ * 描述：每个连接持有一个合并器，窗口期内的多次状态变更只发送最终状态；与同一窗口期内已发送的状态相同时不再发送，窗口结束后不再比较。
+ * 所有连接共用一个定时线程，窗口结束的状态由该线程汇总后批量发送
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Slf4j
+public class StatusCoalescer {
+
+    /**
+     * 共用的定时线程
+     */
+    private static final ScheduledExecutorService SCHEDULER;
+
+    static {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("status-coalescer-");
+        threadFactory.setDaemon(true);
+        SCHEDULER = Executors.newSingleThreadScheduledExecutor(threadFactory);
+    }
+
+    /**
+     * 被合并（未发送）的状态变更数
+     */
+    private static final LongAdder SUPPRESSED_COUNT = new LongAdder();
+
+    /**
+     * 窗口已结束、等待批量发送的合并器
+     */
+    private static final Queue<StatusCoalescer> DUE = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 是否已提交批量发送任务
+     */
+    private static final AtomicBoolean DRAIN_SCHEDULED = new AtomicBoolean();
+
+    /**
+     * 批量发送期间持有，直接发送前等待其释放，以保证先后顺序
+     */
+    private static final ReentrantLock DRAIN_LOCK = new ReentrantLock();
+
+    /**
+     * 合并窗口（毫秒），不大于0时不合并
+     */
+    private final long window;
+
+    /**
+     * 消息队列
+     */
+    private final MsgQueue msgQueue;
+
+    /**
+     * 状态发送的目标队列
+     */
+    private final String queue;
+
+    /**
+     * 状态发送前的处理函数（如记录追踪信息）
+     */
+    private final Consumer<UserStatusMsg> beforeSend;
+
+    /**
+     * 待发送的状态，由this保护
+     */
+    private UserStatusMsg pending;
+
+    /**
+     * 当前窗口期内上次发送的状态，窗口结束时清空，由this保护
+     */
+    private UserStatusMsg last;
+
+    /**
+     * 定时任务（窗口结束），由this保护
+     */
+    private ScheduledFuture<?> future;
+
+    /**
+     * 是否已加入待批量发送的合并器中，由this保护
+     */
+    private boolean queued;
+
+    /**
+     * 待发送的状态是否已被批量发送任务取出（尚未发送完成）
+     */
+    private volatile boolean taken;
+
+    public StatusCoalescer(long window, MsgQueue msgQueue, String queue, Consumer<UserStatusMsg> beforeSend) {
+        this.window = window;
+        this.msgQueue = msgQueue;
+        this.queue = queue;
+        this.beforeSend = beforeSend;
+    }
+
+    /**
+     * 提交状态变更，在窗口期结束时发送
+     */
+    public void submit(UserStatusMsg msg) {
+        if (window <= 0) {
+            awaitDrain();
+            send(msg);
+            return;
+        }
+        synchronized (this) {
+            if (pending != null) {
+                SUPPRESSED_COUNT.increment();
+            }
+            pending = msg;
+            if (future == null && !queued) {
+                future = SCHEDULER.schedule(this::expire, window, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * 立即发送待发送的状态（发送其它消息前调用，以保证先后顺序）
+     */
+    public void flush() {
+        awaitDrain();
+        synchronized (this) {
+            UserStatusMsg msg = pending;
+            pending = null;
+            if (msg == null) {
+                return;
+            }
+            if (msg.equals(last)) {
+                SUPPRESSED_COUNT.increment();
+                return;
+            }
+            last = msg;
+            send(msg);
+        }
+    }
+
+    /**
+     * 丢弃待发送的状态（连接关闭时调用）
+     */
+    public void discard() {
+        awaitDrain();
+        synchronized (this) {
+            if (future != null) {
+                future.cancel(false);
+                future = null;
+            }
+            if (pending != null) {
+                SUPPRESSED_COUNT.increment();
+                pending = null;
+            }
+            last = null;
+        }
+    }
+
+    /**
+     * 被合并（未发送）的状态变更数
+     */
+    public static long getSuppressedCount() {
+        return SUPPRESSED_COUNT.sum();
+    }
+
+    /**
+     * 窗口结束：待发送的状态与本窗口内已发送的状态不同时加入批量发送，并清空本窗口的比较基准
+     */
+    private synchronized void expire() {
+        future = null;
+        UserStatusMsg msg = pending;
+        UserStatusMsg sent = last;
+        last = null;
+        if (msg == null) {
+            return;
+        }
+        if (msg.equals(sent)) {
+            SUPPRESSED_COUNT.increment();
+            pending = null;
+            return;
+        }
+        if (!queued) {
+            queued = true;
+            DUE.add(this);
+        }
+        if (DRAIN_SCHEDULED.compareAndSet(false, true)) {
+            // 同一时刻到期的窗口任务先于该任务执行，因而被汇总到同一批
+            SCHEDULER.execute(StatusCoalescer::drain);
+        }
+    }
+
+    /**
+     * 汇总窗口已结束的状态，按消息队列批量发送
+     */
+    private static void drain() {
+        DRAIN_SCHEDULED.set(false);
+        DRAIN_LOCK.lock();
+        List<StatusCoalescer> drained = new ArrayList<>();
+        try {
+            Map<MsgQueue, Map<String, List<Object>>> batches = new HashMap<>();
+            StatusCoalescer coalescer;
+            while ((coalescer = DUE.poll()) != null) {
+                UserStatusMsg msg;
+                synchronized (coalescer) {
+                    coalescer.queued = false;
+                    msg = coalescer.pending;
+                    coalescer.pending = null;
+                    if (msg == null) {
+                        continue;
+                    }
+                    coalescer.taken = true;
+                }
+                drained.add(coalescer);
+                coalescer.beforeSend.accept(msg);
+                batches.computeIfAbsent(coalescer.msgQueue, k -> new HashMap<>())
+                        .computeIfAbsent(coalescer.queue, k -> new ArrayList<>())
+                        .add(msg);
+            }
+            batches.forEach(MsgQueue::pushAll);
+        } catch (RuntimeException e) {
+            log.warn("批量发送用户状态失败", e);
+        } finally {
+            drained.forEach(c -> c.taken = false);
+            DRAIN_LOCK.unlock();
+        }
+    }
+
+    /**
+     * 当前的状态已被批量发送任务取出时，等待其发送完成
+     */
+    private void awaitDrain() {
+        if (taken) {
+            DRAIN_LOCK.lock();
+            DRAIN_LOCK.unlock();
+        }
+    }
+
+    private void send(UserStatusMsg msg) {
+        beforeSend.accept(msg);
+        msgQueue.push(queue, msg);
+    }
+}
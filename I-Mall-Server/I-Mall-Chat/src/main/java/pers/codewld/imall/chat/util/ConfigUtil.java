@@ -3,6 +3,12 @@ package pers.codewld.imall.chat.util;
 import lombok.Getter;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import pers.codewld.imall.chat.model.entity.User;
+import pers.codewld.imall.chat.model.enums.OverflowPolicy;
+import pers.codewld.imall.chat.model.enums.SystemCode;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 
 /**
  * <p>
@@ -19,6 +25,183 @@ public class ConfigUtil {
     @Value("${chat.pre-queue}")
     String PRE_QUEUE;
 
+    /**
+     * 处理前队列的分区数
+     */
+    @Value("${chat.pre-queue-partitions:1}")
+    int PRE_QUEUE_PARTITIONS;
+
     @Value("${chat.post-queue-prefix}")
     String POST_QUEUE_PREFIX;
+
+    /**
+     * 消费者每批最多处理的消息数
+     */
+    @Value("${chat.consumer.batch-size:64}")
+    int CONSUMER_BATCH_SIZE;
+
+    /**
+     * 每个队列的消费循环数；大于1时同一队列内的消息不保证按序处理
+     */
+    @Value("${chat.consumer.concurrency:1}")
+    int CONSUMER_CONCURRENCY;
+
+    /**
+     * 单个连接发送队列的最大消息数
+     */
+    @Value("${chat.outbound.max-messages:256}")
+    int OUTBOUND_MAX_MESSAGES;
+
+    /**
+     * 单个连接发送队列的最大字节数
+     */
+    @Value("${chat.outbound.max-bytes:1048576}")
+    long OUTBOUND_MAX_BYTES;
+
+    /**
+     * 发送队列溢出策略
+     */
+    @Value("${chat.outbound.overflow-policy:DROP_OLDEST}")
+    OverflowPolicy OUTBOUND_OVERFLOW_POLICY;
+
+    /**
+     * 用户状态合并窗口（毫秒），不大于0时不合并
+     */
+    @Value("${chat.status-coalesce-window:200}")
+    long STATUS_COALESCE_WINDOW;
+
+    /**
+     * 接收者在本节点存在活跃连接时，是否由网关直接投递
+     */
+    @Value("${chat.local-delivery:true}")
+    boolean LOCAL_DELIVERY;
+
+    /**
+     * 心跳间隔（毫秒），连接空闲超过该时间时发送ping；不大于0时不检测心跳
+     */
+    @Value("${chat.heartbeat.interval:30000}")
+    long HEARTBEAT_INTERVAL;
+
+    /**
+     * 心跳超时时间（毫秒），连接空闲超过该时间时被回收
+     */
+    @Value("${chat.heartbeat.timeout:90000}")
+    long HEARTBEAT_TIMEOUT;
+
+    /**
+     * 心跳时间轮每格的时长（毫秒）
+     */
+    @Value("${chat.heartbeat.tick:1000}")
+    long HEARTBEAT_TICK;
+
+    /**
+     * 当前节点标识，为空时取 [主机名:端口]；重启后不变，以便继续消费本节点的处理后队列
+     */
+    @Value("${chat.node-id:}")
+    String NODE_ID;
+
+    @Value("${server.port:8080}")
+    String SERVER_PORT;
+
+    /**
+     * 网关节点心跳Hash
+     */
+    @Value("${chat.node-heartbeat.hash:chat-node-heartbeat-hash}")
+    String NODE_HEARTBEAT_HASH;
+
+    /**
+     * 网关节点心跳间隔（毫秒），不大于0时不发送心跳
+     */
+    @Value("${chat.node-heartbeat.interval:10000}")
+    long NODE_HEARTBEAT_INTERVAL;
+
+    /**
+     * 获取当前节点标识
+     */
+    public String getNodeId() {
+        if (NODE_ID == null || NODE_ID.isEmpty()) {
+            NODE_ID = getHostName() + ":" + SERVER_PORT;
+        }
+        return NODE_ID;
+    }
+
+    private static String getHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            String hostName = System.getenv("HOSTNAME");
+            if (hostName == null || hostName.isEmpty()) {
+                throw new IllegalStateException("无法获取主机名，请配置 chat.node-id", e);
+            }
+            return hostName;
+        }
+    }
+
+    /**
+     * 获取所属系统的处理后队列（未区分节点，兼容旧版本网关）
+     */
+    public String getPostQueue(SystemCode system) {
+        return POST_QUEUE_PREFIX + "-" + system.getName();
+    }
+
+    /**
+     * 获取所属系统在指定节点上的处理后队列
+     */
+    public String getPostQueue(SystemCode system, String node) {
+        return getPostQueue(system) + "-" + node;
+    }
+
+    /**
+     * 获取用户对应的处理前队列分区
+     * <p>
+     * 同一用户的状态变更及不属于某个会话的消息（群聊、广播）落在同一分区，以保证其处理顺序
+     */
+    public int getPreQueuePartition(User user) {
+        return getPreQueuePartition(user, null);
+    }
+
+    /**
+     * 获取会话对应的处理前队列分区
+     * <p>
+     * 按无序的 (发送者, 接收者) 计算，A->B 与 B->A 的消息（通信、已读、历史查询）落在同一分区，以保证会话内的处理顺序；
+     * 联系人为空或为用户自身时与 {@link #getPreQueuePartition(User)} 相同
+     */
+    public int getPreQueuePartition(User user, User contact) {
+        if (PRE_QUEUE_PARTITIONS <= 1) {
+            return 0;
+        }
+        String key = TransformUtil.transform(user);
+        if (contact != null && !contact.equals(user)) {
+            String contactKey = TransformUtil.transform(contact);
+            key = key.compareTo(contactKey) <= 0 ? key + "|" + contactKey : contactKey + "|" + key;
+        }
+        // String.hashCode() 的算法是固定的，保证网关与聊天服务计算出相同的分区
+        return Math.floorMod(key.hashCode(), PRE_QUEUE_PARTITIONS);
+    }
+
+    /**
+     * 获取用户对应的处理前队列
+     */
+    public String getPreQueue(User user) {
+        return getPreQueue(getPreQueuePartition(user));
+    }
+
+    /**
+     * 获取会话对应的处理前队列
+     */
+    public String getPreQueue(User user, User contact) {
+        return getPreQueue(getPreQueuePartition(user, contact));
+    }
+
+    /**
+     * 获取指定分区的处理前队列
+     * <p>
+     * 只有一个分区时沿用原队列名，与未分区的部署保持兼容
+     */
+    public String getPreQueue(int partition) {
+        if (PRE_QUEUE_PARTITIONS <= 1) {
+            return PRE_QUEUE;
+        }
+        return PRE_QUEUE + "-" + partition;
+    }
 }
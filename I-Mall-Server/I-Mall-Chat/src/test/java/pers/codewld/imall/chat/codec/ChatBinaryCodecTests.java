@@ -0,0 +1,149 @@
+package pers.codewld.imall.chat.codec;
+
+import org.junit.jupiter.api.Test;
+import pers.codewld.imall.chat.model.entity.User;
+import pers.codewld.imall.chat.model.enums.SystemCode;
+import pers.codewld.imall.chat.model.message.queue.BroadcastMsg;
+import pers.codewld.imall.chat.model.message.queue.GroupDeliverMsg;
+import pers.codewld.imall.chat.model.message.queue.GroupMsg;
+import pers.codewld.imall.chat.model.message.queue.HistoryListMsg;
+import pers.codewld.imall.chat.model.message.queue.HistoryQueryMsg;
+import pers.codewld.imall.chat.model.message.queue.MsgListMsg;
+import pers.codewld.imall.chat.model.message.queue.MsgMsg;
+import pers.codewld.imall.chat.model.message.queue.ReadMsg;
+import pers.codewld.imall.chat.model.message.queue.TracedMsg;
+import pers.codewld.imall.chat.model.message.queue.UnreadCountMsg;
+import pers.codewld.imall.chat.model.message.queue.UserStatusMsg;
+import pers.codewld.imall.common.serializer.BinaryReader;
+import pers.codewld.imall.common.serializer.BinaryWriter;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * <p>
+ * 聊天队列消息 二进制编解码器 测试
+ * </p>
+ * <p>
+ * 描述：各消息类型编码后解码应得到相同的对象，包括空字段、非数字ID与追踪信息
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+class ChatBinaryCodecTests {
+
+    private static final LocalDateTime TIME = LocalDateTime.of(2026, 10, 18, 12, 30, 45, 123456789);
+
+    private final ChatBinaryCodec codec = new ChatBinaryCodec();
+
+    @Test
+    void msgRoundTrip() {
+        MsgMsg msg = new MsgMsg(new User(SystemCode.WEB, "42"), new User(SystemCode.ADMIN, "admin"), "你好", TIME, null, null);
+        assertEquals(msg, roundTrip(msg));
+    }
+
+    @Test
+    void deliveredMsgKeepsNode() {
+        MsgMsg msg = new MsgMsg(new User(SystemCode.WEB, "1"), new User(SystemCode.WEB, "2"), "hi", TIME, true, "node-a");
+        assertEquals(msg, roundTrip(msg));
+    }
+
+    @Test
+    void userStatusRoundTripWithAndWithoutNode() {
+        UserStatusMsg msg = new UserStatusMsg(new User(SystemCode.WEB, "1"), true, false, new User(SystemCode.ADMIN, "2"), null);
+        assertEquals(msg, roundTrip(msg));
+        msg.setNode("node-a");
+        assertEquals(msg, roundTrip(msg));
+    }
+
+    @Test
+    void listAndQueryMessagesRoundTrip() {
+        MsgMsg item = new MsgMsg(new User(SystemCode.WEB, "1"), new User(SystemCode.ADMIN, "2"), "hi", TIME, null, null);
+        assertEquals(new UnreadCountMsg(new User(SystemCode.WEB, "1"), 7L), roundTrip(new UnreadCountMsg(new User(SystemCode.WEB, "1"), 7L)));
+        assertEquals(new UnreadCountMsg(new User(SystemCode.WEB, "1"), null), roundTrip(new UnreadCountMsg(new User(SystemCode.WEB, "1"), null)));
+        MsgListMsg msgList = new MsgListMsg(new User(SystemCode.ADMIN, "2"), Arrays.asList(item, item));
+        assertEquals(msgList, roundTrip(msgList));
+        MsgListMsg emptyList = new MsgListMsg(new User(SystemCode.ADMIN, "2"), Collections.emptyList());
+        assertEquals(emptyList, roundTrip(emptyList));
+        MsgListMsg nullList = new MsgListMsg(new User(SystemCode.ADMIN, "2"), null);
+        assertEquals(nullList, roundTrip(nullList));
+        ReadMsg read = new ReadMsg(new User(SystemCode.WEB, "1"), new User(SystemCode.ADMIN, "2"), TIME);
+        assertEquals(read, roundTrip(read));
+        HistoryQueryMsg query = new HistoryQueryMsg(new User(SystemCode.WEB, "1"), new User(SystemCode.ADMIN, "2"), null, 20);
+        assertEquals(query, roundTrip(query));
+        HistoryListMsg history = new HistoryListMsg(new User(SystemCode.WEB, "1"), new User(SystemCode.ADMIN, "2"), Collections.singletonList(item), true);
+        assertEquals(history, roundTrip(history));
+        HistoryQueryMsg cursorQuery = new HistoryQueryMsg(new User(SystemCode.WEB, "1"), new User(SystemCode.ADMIN, "2"), TIME, 20, "abc");
+        assertEquals(cursorQuery, roundTrip(cursorQuery));
+        history.setBeforeId("abc");
+        assertEquals(history, roundTrip(history));
+    }
+
+    @Test
+    void groupAndBroadcastMessagesRoundTrip() {
+        GroupMsg group = new GroupMsg(new User(SystemCode.WEB, "1"), "group-1", "大家好", TIME);
+        assertEquals(group, roundTrip(group));
+        GroupDeliverMsg deliver = new GroupDeliverMsg(Arrays.asList(new User(SystemCode.WEB, "2"), new User(SystemCode.ADMIN, "3")), group);
+        assertEquals(deliver, roundTrip(deliver));
+        GroupDeliverMsg deliverAll = new GroupDeliverMsg(null, group);
+        assertEquals(deliverAll, roundTrip(deliverAll));
+        BroadcastMsg broadcast = new BroadcastMsg(new User(SystemCode.ADMIN, "admin"), SystemCode.WEB, "公告", TIME);
+        assertEquals(broadcast, roundTrip(broadcast));
+        BroadcastMsg broadcastAll = new BroadcastMsg(new User(SystemCode.ADMIN, "admin"), null, "公告", TIME);
+        assertEquals(broadcastAll, roundTrip(broadcastAll));
+    }
+
+    @Test
+    void userIdsThatAreNotCompactNumbersStayStrings() {
+        for (String id : Arrays.asList("0", "007", "-1", "abc", "", "1234567890123456789", "123456789012345678")) {
+            User user = new User(SystemCode.WEB, id);
+            BinaryWriter out = new BinaryWriter();
+            ChatBinaryCodec.writeUser(user, out);
+            assertEquals(user, ChatBinaryCodec.readUser(reader(out)), id);
+        }
+        BinaryWriter out = new BinaryWriter();
+        ChatBinaryCodec.writeUser(null, out);
+        ChatBinaryCodec.writeUser(new User(null, "1"), out);
+        BinaryReader in = reader(out);
+        assertNull(ChatBinaryCodec.readUser(in));
+        assertEquals(new User(null, "1"), ChatBinaryCodec.readUser(in));
+    }
+
+    @Test
+    void traceInfoRoundTrip() {
+        MsgMsg msg = new MsgMsg(new User(SystemCode.WEB, "1"), new User(SystemCode.WEB, "2"), "hi", TIME, null, null);
+        msg.setTraceId("trace-1");
+        msg.setOriginTime(1000L);
+        msg.setEnqueueTime(null);
+        TracedMsg decoded = (TracedMsg) roundTrip(msg);
+        assertEquals(msg, decoded);
+        assertEquals("trace-1", decoded.getTraceId());
+        assertEquals(1000L, decoded.getOriginTime());
+        assertNull(decoded.getEnqueueTime());
+    }
+
+    @Test
+    void unknownTypesAreRejected() {
+        assertFalse(codec.encode("not a chat message", new BinaryWriter()));
+        BinaryWriter out = new BinaryWriter().writeByte(99);
+        assertThrows(IllegalStateException.class, () -> codec.decode(reader(out)));
+    }
+
+    private Object roundTrip(Object msg) {
+        BinaryWriter out = new BinaryWriter();
+        assertTrue(codec.encode(msg, out));
+        return codec.decode(reader(out));
+    }
+
+    private static BinaryReader reader(BinaryWriter out) {
+        return new BinaryReader(out.toByteArray(), 0);
+    }
+}
@@ -0,0 +1,120 @@
+package pers.codewld.imall.chat.codec;
+
+import org.junit.jupiter.api.Test;
+import pers.codewld.imall.chat.model.entity.User;
+import pers.codewld.imall.chat.model.enums.SystemCode;
+import pers.codewld.imall.chat.model.message.websocket.ActiveStatusData;
+import pers.codewld.imall.chat.model.message.websocket.BroadcastData;
+import pers.codewld.imall.chat.model.message.websocket.LoadHistoryData;
+import pers.codewld.imall.chat.model.message.websocket.ReadMsgData;
+import pers.codewld.imall.chat.model.message.websocket.SendGroupMsgData;
+import pers.codewld.imall.chat.model.message.websocket.SendMsgData;
+import pers.codewld.imall.chat.model.message.websocket.SessionEstablishData;
+import pers.codewld.imall.common.serializer.BinaryWriter;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * <p>
+ * WebSocket 帧解码器 测试
+ * </p>
+ * <p>
+ * 描述：文本帧覆盖 data 为对象、旧格式字符串、位于 type 之前及缺失的情况；二进制帧覆盖各类型标记及非数组缓冲区
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+class FrameDecoderTests {
+
+    private static final LocalDateTime TIME = LocalDateTime.of(2026, 10, 18, 12, 30, 45);
+
+    @Test
+    void textFrameWithObjectData() {
+        assertEquals(new SendMsgData("你好"), FrameDecoder.decode("{\"type\":\"sendMsg\",\"data\":{\"msg\":\"你好\"}}"));
+        assertEquals(new SessionEstablishData(new User(SystemCode.ADMIN, "1")),
+                FrameDecoder.decode("{\"type\":\"sessionEstablish\",\"data\":{\"contact\":{\"system\":\"ADMIN\",\"id\":\"1\"}}}"));
+    }
+
+    @Test
+    void textFrameWithLegacyStringData() {
+        assertEquals(new ActiveStatusData(true), FrameDecoder.decode("{\"type\":\"activeStatus\",\"data\": \"{\\\"active\\\":true}\"}"));
+    }
+
+    @Test
+    void textFrameWithDataBeforeType() {
+        assertEquals(new SendGroupMsgData("g1", "hi"), FrameDecoder.decode("{\"data\":{\"groupId\":\"g1\",\"msg\":\"hi\"},\"type\":\"sendGroupMsg\"}"));
+    }
+
+    @Test
+    void textFrameWithoutDataOrWithUnknownFields() {
+        assertEquals(new ReadMsgData(), FrameDecoder.decode("{\"type\":\"readMsg\"}"));
+        assertEquals(new SendMsgData("hi"), FrameDecoder.decode("{\"id\":1,\"type\":\"sendMsg\",\"extra\":[1,2],\"data\":{\"msg\":\"hi\"}}"));
+    }
+
+    @Test
+    void textFrameWithUnknownType() {
+        assertNull(FrameDecoder.decode("{\"type\":\"unknown\",\"data\":{\"msg\":\"hi\"}}"));
+        assertNull(FrameDecoder.decode("{\"data\":{\"msg\":\"hi\"}}"));
+    }
+
+    @Test
+    void binaryFrames() {
+        assertEquals(new ActiveStatusData(false), decode(new BinaryWriter().writeByte(FrameDecoder.TAG_ACTIVE_STATUS).writeBoolean(false)));
+        assertEquals(new SendMsgData("你好"), decode(new BinaryWriter().writeByte(FrameDecoder.TAG_SEND_MSG).writeString("你好")));
+        assertEquals(new SendGroupMsgData("g1", "hi"),
+                decode(new BinaryWriter().writeByte(FrameDecoder.TAG_SEND_GROUP_MSG).writeString("g1").writeString("hi")));
+        assertEquals(new BroadcastData(SystemCode.WEB, "公告"),
+                decode(new BinaryWriter().writeByte(FrameDecoder.TAG_BROADCAST).writeByte(SystemCode.WEB.ordinal() + 1).writeString("公告")));
+        assertEquals(new BroadcastData(null, "公告"),
+                decode(new BinaryWriter().writeByte(FrameDecoder.TAG_BROADCAST).writeByte(0).writeString("公告")));
+
+        User contact = new User(SystemCode.WEB, "42");
+        BinaryWriter session = new BinaryWriter().writeByte(FrameDecoder.TAG_SESSION_ESTABLISH);
+        ChatBinaryCodec.writeUser(contact, session);
+        assertEquals(new SessionEstablishData(contact), decode(session));
+
+        BinaryWriter read = new BinaryWriter().writeByte(FrameDecoder.TAG_READ_MSG);
+        ChatBinaryCodec.writeUser(contact, read);
+        assertEquals(new ReadMsgData(contact), decode(read));
+
+        BinaryWriter history = new BinaryWriter().writeByte(FrameDecoder.TAG_LOAD_HISTORY);
+        ChatBinaryCodec.writeUser(contact, history);
+        ChatBinaryCodec.writeTime(TIME, history);
+        ChatBinaryCodec.writeNullableLong(20L, history);
+        assertEquals(new LoadHistoryData(contact, TIME, 20), decode(history));
+
+        BinaryWriter historyCursor = new BinaryWriter().writeByte(FrameDecoder.TAG_LOAD_HISTORY_CURSOR);
+        ChatBinaryCodec.writeUser(contact, historyCursor);
+        ChatBinaryCodec.writeTime(TIME, historyCursor);
+        ChatBinaryCodec.writeNullableLong(20L, historyCursor);
+        historyCursor.writeString("abc");
+        assertEquals(new LoadHistoryData(contact, TIME, 20, "abc"), decode(historyCursor));
+
+        assertNull(decode(new BinaryWriter().writeByte(99)));
+    }
+
+    @Test
+    void binaryFrameInSlicedAndDirectBuffers() {
+        byte[] frame = new BinaryWriter().writeByte(FrameDecoder.TAG_SEND_MSG).writeString("hi").toByteArray();
+        // 帧位于更大数组的中间
+        byte[] padded = new byte[frame.length + 4];
+        System.arraycopy(frame, 0, padded, 2, frame.length);
+        ByteBuffer sliced = ByteBuffer.wrap(padded, 2, frame.length).slice();
+        assertEquals(new SendMsgData("hi"), FrameDecoder.decode(sliced));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(frame.length);
+        direct.put(frame).flip();
+        assertEquals(new SendMsgData("hi"), FrameDecoder.decode(direct));
+        // 解码不移动缓冲区位置
+        assertEquals(0, direct.position());
+    }
+
+    private static Object decode(BinaryWriter out) {
+        return FrameDecoder.decode(ByteBuffer.wrap(out.toByteArray()));
+    }
+}
@@ -0,0 +1,54 @@
+package pers.codewld.imall.chat.model.message.queue;
+
+import org.junit.jupiter.api.Test;
+import pers.codewld.imall.chat.model.entity.User;
+import pers.codewld.imall.chat.model.enums.SystemCode;
+import pers.codewld.imall.common.util.SerializerUtil;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * <p>
+ * 队列消息 JSON格式 测试
+ * </p>
+ * <p>
+ * 描述：滚动升级期间新旧版本节点共存，新增字段为空时不写出，读取时忽略未知字段
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+class QueueMsgJsonTests {
+
+    private static final LocalDateTime TIME = LocalDateTime.of(2026, 10, 18, 12, 30, 45);
+
+    private final SerializerUtil serializerUtil = new SerializerUtil();
+
+    @Test
+    void nullNewFieldsAreOmitted() throws Exception {
+        String msg = serializerUtil.serialize(new MsgMsg(new User(SystemCode.WEB, "1"), new User(SystemCode.ADMIN, "2"), "hi", TIME));
+        assertFalse(msg.contains("\"delivered\""), msg);
+        assertFalse(msg.contains("\"node\""), msg);
+        String status = serializerUtil.serialize(new UserStatusMsg(new User(SystemCode.WEB, "1"), true));
+        assertFalse(status.contains("\"node\""), status);
+        for (String field : new String[]{"\"traceId\"", "\"originTime\"", "\"enqueueTime\""}) {
+            assertFalse(msg.contains(field), msg);
+        }
+
+        UserStatusMsg withNode = new UserStatusMsg(new User(SystemCode.WEB, "1"), true, null, null, "node-a");
+        assertTrue(serializerUtil.serialize(withNode).contains("\"node\""));
+        assertEquals(withNode, serializerUtil.deSerialize(serializerUtil.serialize(withNode)));
+    }
+
+    @Test
+    void unknownFieldsAreIgnored() throws Exception {
+        UserStatusMsg status = new UserStatusMsg(new User(SystemCode.WEB, "1"), true);
+        String json = serializerUtil.serialize(status);
+        String newer = json.substring(0, json.length() - 2) + ",\"addedLater\":1}]";
+        assertEquals(status, serializerUtil.deSerialize(newer));
+    }
+}
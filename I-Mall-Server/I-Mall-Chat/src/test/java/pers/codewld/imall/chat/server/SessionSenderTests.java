@@ -0,0 +1,69 @@
+package pers.codewld.imall.chat.server;
+
+import org.junit.jupiter.api.Test;
+import pers.codewld.imall.chat.model.enums.OverflowPolicy;
+
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * <p>
+ * 会话 异步发送器 测试
+ * </p>
+ * <p>
+ * 描述：发送完成回调在 sendText 内同步触发时，由发送循环继续发送，调用栈不随队列长度加深
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+class SessionSenderTests {
+
+    private static final int COUNT = 20000;
+
+    @Test
+    void synchronousCompletionDoesNotRecurse() {
+        Session session = mock(Session.class);
+        RemoteEndpoint.Async async = mock(RemoteEndpoint.Async.class);
+        when(session.getAsyncRemote()).thenReturn(async);
+        List<String> sent = new ArrayList<>();
+        AtomicReference<SendHandler> held = new AtomicReference<>();
+        doAnswer(invocation -> {
+            sent.add(invocation.getArgument(0));
+            SendHandler handler = invocation.getArgument(1);
+            if (sent.size() == 1) {
+                // 第一条挂起，使后续消息排队
+                held.set(handler);
+            } else {
+                handler.onResult(new SendResult());
+            }
+            return null;
+        }).when(async).sendText(anyString(), any(SendHandler.class));
+
+        SessionSender sender = new SessionSender(session, COUNT + 1, Long.MAX_VALUE, OverflowPolicy.DROP_NEWEST);
+        for (int i = 0; i < COUNT; i++) {
+            sender.send("msg-" + i);
+        }
+        assertEquals(1, sent.size());
+
+        held.get().onResult(new SendResult());
+        assertEquals(COUNT, sent.size());
+        assertEquals(0, sender.getQueuedCount());
+
+        // 队列清空后再次发送
+        sender.send("last");
+        assertEquals("last", sent.get(sent.size() - 1));
+    }
+}
@@ -0,0 +1,85 @@
+package pers.codewld.imall.chat.server;
+
+import org.junit.jupiter.api.Test;
+import pers.codewld.imall.chat.model.entity.User;
+import pers.codewld.imall.chat.model.enums.SystemCode;
+import pers.codewld.imall.chat.model.message.queue.UserStatusMsg;
+import pers.codewld.imall.common.queue.MsgQueue;
+
+import java.util.Collections;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * <p>
+ * 用户状态 合并器 测试
+ * </p>
+ * <p>
+ * 描述：覆盖窗口结束时批量发送最终状态、同一窗口内的重复状态不再发送以及窗口结束后相同状态可再次发送
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+class StatusCoalescerTests {
+
+    private static final String QUEUE = "pre-queue";
+
+    private final MsgQueue msgQueue = mock(MsgQueue.class);
+
+    @Test
+    void finalStatusIsSentInBatchWhenWindowEnds() {
+        StatusCoalescer coalescer = new StatusCoalescer(50, msgQueue, QUEUE, msg -> {
+        });
+        coalescer.submit(status(true, false));
+        coalescer.submit(status(true, true));
+        verify(msgQueue, timeout(2000)).pushAll(Collections.singletonMap(QUEUE, Collections.singletonList(status(true, true))));
+        verify(msgQueue, never()).push(any(), any());
+    }
+
+    @Test
+    void duplicatesAreSuppressedOnlyWithinWindow() {
+        StatusCoalescer coalescer = new StatusCoalescer(200, msgQueue, QUEUE, msg -> {
+        });
+        coalescer.submit(status(true, true));
+        coalescer.flush();
+        // 同一窗口内再次提交相同状态：不再发送
+        coalescer.submit(status(true, true));
+        coalescer.flush();
+        verify(msgQueue, times(1)).push(QUEUE, status(true, true));
+
+        // 窗口结束后相同状态可再次发送
+        sleep(400);
+        coalescer.submit(status(true, true));
+        coalescer.flush();
+        verify(msgQueue, times(2)).push(QUEUE, status(true, true));
+    }
+
+    @Test
+    void discardDropsPendingStatus() {
+        StatusCoalescer coalescer = new StatusCoalescer(50, msgQueue, QUEUE, msg -> {
+        });
+        coalescer.submit(status(true, false));
+        coalescer.discard();
+        sleep(200);
+        verify(msgQueue, never()).pushAll(any());
+        verify(msgQueue, never()).push(any(), any());
+    }
+
+    private static UserStatusMsg status(boolean online, boolean active) {
+        return new UserStatusMsg(new User(SystemCode.WEB, "1"), online, active, null, "node-a");
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package pers.codewld.imall.chat.util;
+
+import org.junit.jupiter.api.Test;
+import pers.codewld.imall.chat.model.entity.User;
+import pers.codewld.imall.chat.model.enums.SystemCode;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * <p>
+ * 配置 工具类 测试
+ * </p>
+ * <p>
+ * 描述：同一会话双向的消息落在同一处理前队列分区；未分区时沿用原队列名
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+class ConfigUtilTests {
+
+    @Test
+    void conversationPartitionIsSymmetric() {
+        ConfigUtil configUtil = new ConfigUtil();
+        configUtil.PRE_QUEUE = "chat-preQueue";
+        configUtil.PRE_QUEUE_PARTITIONS = 8;
+        User a = new User(SystemCode.WEB, "1");
+        for (int i = 0; i < 100; i++) {
+            User b = new User(SystemCode.ADMIN, String.valueOf(i));
+            assertEquals(configUtil.getPreQueue(a, b), configUtil.getPreQueue(b, a));
+        }
+        assertEquals(configUtil.getPreQueuePartition(a), configUtil.getPreQueuePartition(a, null));
+        assertEquals(configUtil.getPreQueuePartition(a), configUtil.getPreQueuePartition(a, a));
+    }
+
+    @Test
+    void singlePartitionKeepsQueueName() {
+        ConfigUtil configUtil = new ConfigUtil();
+        configUtil.PRE_QUEUE = "chat-preQueue";
+        configUtil.PRE_QUEUE_PARTITIONS = 1;
+        assertEquals("chat-preQueue", configUtil.getPreQueue(new User(SystemCode.WEB, "1"), new User(SystemCode.ADMIN, "2")));
+    }
+}
@@ -1,6 +1,7 @@
 package pers.codewld.imall.common.config;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.CachingConfigurerSupport;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.cache.interceptor.KeyGenerator;
@@ -15,6 +16,7 @@ import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.util.StringUtils;
+import pers.codewld.imall.common.serializer.CompatRedisSerializer;
 import pers.codewld.imall.common.util.SerializerUtil;
 
 import java.time.Duration;
@@ -34,6 +36,12 @@ public class RedisConfig extends CachingConfigurerSupport {
     @Autowired
     SerializerUtil serializerUtil;
 
+    /**
+     * 值的序列化格式：json / binary（仅对二进制编解码器支持的类型生效，读取时两种格式均可识别）
+     */
+    @Value("${redis.serializer:json}")
+    String serializerFormat;
+
     /**
      * 自定义Redis操作类
      */
@@ -43,10 +51,10 @@ public class RedisConfig extends CachingConfigurerSupport {
         template.setConnectionFactory(redisConnectionFactory);
         // 设置键值对的序列化方式
         template.setKeySerializer(RedisSerializer.string());
-        template.setValueSerializer(getJsonSerializer());
+        template.setValueSerializer(getValueSerializer());
         // 设置hash中键值对的序列化方式
         template.setHashKeySerializer(RedisSerializer.string());
-        template.setHashValueSerializer(getJsonSerializer());
+        template.setHashValueSerializer(getValueSerializer());
         // 调用afterPropertiesSet()方法，确保连接已建立
         template.afterPropertiesSet();
         return template;
@@ -80,6 +88,18 @@ public class RedisConfig extends CachingConfigurerSupport {
         return jsonSerializer;
     }
 
+    /**
+     * 值序列化器
+     */
+    RedisSerializer<Object> valueSerializer;
+
+    public RedisSerializer<Object> getValueSerializer() {
+        if (valueSerializer == null) {
+            valueSerializer = new CompatRedisSerializer(getJsonSerializer(), serializerUtil, "binary".equals(serializerFormat));
+        }
+        return valueSerializer;
+    }
+
     /**
      * 配置默认键生成类
      */
@@ -0,0 +1,223 @@
+package pers.codewld.imall.common.queue;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import pers.codewld.imall.common.util.RedisUtil;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * 备份队列 恢复器
+ * </p>
+ * <p>
+ * 描述：消费者崩溃或处理失败时，消息会滞留在 [队列名-back] 中。恢复器在启动后及此后定期从备份队列的尾部（最旧的元素）开始分页扫描，
+ * 将连续两次扫描中都存在的元素（即滞留超过一个扫描间隔的元素）重新放回队列；
+ * 重放次数达到上限的元素转入死信队列 [队列名-dead]。
+ * 每个间隔内只要取到满页就继续扫描下一页，直到备份队列扫描完毕或超出时间预算，积压较多时也能在一个间隔内排空
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "queue.transport", havingValue = "list", matchIfMissing = true)
+public class BackQueueRecoverer {
+
+    /**
+     * 重放脚本
+     * <p>
+     * KEYS: 队列、备份队列、死信队列、重放次数Hash；ARGV: 最大重放次数、重放次数Hash有效期、待重放元素...
+     * <p>
+     * 从备份队列尾部删除元素后放回队列头部（排在新消息之后，不抢占实时流量），返回重放的元素数
+     */
+    private static final RedisScript<Long> REPLAY_SCRIPT = RedisScript.of(
+            "local requeued = 0 " +
+                    "for i = 3, #ARGV do " +
+                    "local v = ARGV[i] " +
+                    "if redis.call('LREM', KEYS[2], -1, v) > 0 then " +
+                    "local field = redis.sha1hex(v) " +
+                    "local n = redis.call('HINCRBY', KEYS[4], field, 1) " +
+                    "if n >= tonumber(ARGV[1]) then " +
+                    "redis.call('LPUSH', KEYS[3], v) " +
+                    "redis.call('HDEL', KEYS[4], field) " +
+                    "else " +
+                    "redis.call('LPUSH', KEYS[1], v) " +
+                    "requeued = requeued + 1 " +
+                    "end " +
+                    "end " +
+                    "end " +
+                    "redis.call('EXPIRE', KEYS[4], ARGV[2]) " +
+                    "return requeued",
+            Long.class);
+
+    @Autowired
+    RedisUtil redisUtil;
+
+    /**
+     * 扫描间隔（毫秒），即元素被视为滞留的最短时间
+     */
+    @Value("${queue.recovery.interval-ms:30000}")
+    long intervalMs;
+
+    /**
+     * 每页扫描的备份队列元素数
+     */
+    @Value("${queue.recovery.scan-size:10000}")
+    int scanSize;
+
+    /**
+     * 每个间隔内扫描与重放的时间预算（毫秒），超出后剩余元素留待下一个间隔
+     */
+    @Value("${queue.recovery.time-budget-ms:10000}")
+    long timeBudgetMs;
+
+    /**
+     * 每次脚本调用重放的元素数
+     */
+    @Value("${queue.recovery.batch-size:500}")
+    int batchSize;
+
+    /**
+     * 最大投递次数，超过后转入死信队列
+     */
+    @Value("${queue.max-attempts:5}")
+    int maxAttempts;
+
+    /**
+     * 重放次数记录的有效期（秒）
+     */
+    @Value("${queue.recovery.attempts-ttl:86400}")
+    long attemptsTtl;
+
+    /**
+     * 队列 -> 上次扫描到的备份队列元素的摘要
+     */
+    private final Map<String, Set<String>> snapshots = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * 登记需要恢复的队列
+     */
+    public synchronized void register(String queue) {
+        if (snapshots.putIfAbsent(queue, Collections.emptySet()) != null) {
+            return;
+        }
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("back-queue-recoverer-"));
+            // 启动时立即记录一次快照，一个间隔后即可重放崩溃前遗留的元素
+            scheduler.scheduleWithFixedDelay(this::recoverAll, 0, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 恢复所有登记的队列
+     */
+    void recoverAll() {
+        for (String queue : snapshots.keySet()) {
+            try {
+                recover(queue);
+            } catch (Exception e) {
+                log.error(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 恢复单个队列
+     */
+    void recover(String queue) {
+        String backQueue = ListMsgQueue.getBackQueue(queue);
+        Set<String> previous = snapshots.getOrDefault(queue, Collections.emptySet());
+        Set<String> current = new HashSet<>();
+        long deadline = System.currentTimeMillis() + timeBudgetMs;
+        long staleCount = 0;
+        long requeued = 0;
+        // 本页最后一个元素的下标（自队尾倒数）
+        long end = -1;
+        List<byte[]> page;
+        do {
+            page = redisUtil.lRangeRaw(backQueue, end - scanSize + 1, end);
+            if (page == null || page.isEmpty()) {
+                break;
+            }
+            List<byte[]> stale = new ArrayList<>();
+            // 从最旧的元素开始
+            for (int i = page.size() - 1; i >= 0; i--) {
+                byte[] raw = page.get(i);
+                String digest = DigestUtils.md5DigestAsHex(raw);
+                if (previous.contains(digest)) {
+                    stale.add(raw);
+                } else {
+                    current.add(digest);
+                }
+            }
+            staleCount += stale.size();
+            requeued += replay(queue, backQueue, stale);
+            // 滞留元素已从本页移除，下一页紧接在本页剩余元素之前
+            end -= page.size() - stale.size();
+        } while (page.size() >= scanSize && System.currentTimeMillis() < deadline);
+        snapshots.put(queue, current);
+        if (staleCount > 0) {
+            log.warn("备份队列恢复：" + backQueue + " 滞留 " + staleCount + "，重放 " + requeued + "，转入死信 " + (staleCount - requeued));
+        }
+    }
+
+    /**
+     * 重放滞留元素，返回放回队列的元素数
+     */
+    private long replay(String queue, String backQueue, List<byte[]> stale) {
+        if (stale.isEmpty()) {
+            return 0;
+        }
+        byte[][] keys = {
+                serialize(queue),
+                serialize(backQueue),
+                serialize(queue + "-" + "dead"),
+                serialize(backQueue + "-" + "attempts")
+        };
+        byte[] maxAttemptsArr = String.valueOf(maxAttempts).getBytes(StandardCharsets.UTF_8);
+        byte[] ttlArr = String.valueOf(attemptsTtl).getBytes(StandardCharsets.UTF_8);
+        long requeued = 0;
+        for (int from = 0; from < stale.size(); from += batchSize) {
+            List<byte[]> chunk = stale.subList(from, Math.min(from + batchSize, stale.size()));
+            byte[][] keysAndArgs = new byte[keys.length + 2 + chunk.size()][];
+            System.arraycopy(keys, 0, keysAndArgs, 0, keys.length);
+            keysAndArgs[keys.length] = maxAttemptsArr;
+            keysAndArgs[keys.length + 1] = ttlArr;
+            for (int i = 0; i < chunk.size(); i++) {
+                keysAndArgs[keys.length + 2 + i] = chunk.get(i);
+            }
+            Object res = redisUtil.eval(REPLAY_SCRIPT, ReturnType.INTEGER, keys.length, keysAndArgs);
+            requeued += res instanceof Long ? (Long) res : 0;
+        }
+        return requeued;
+    }
+
+    private byte[] serialize(String key) {
+        return RedisSerializer.string().serialize(key);
+    }
+}
@@ -0,0 +1,30 @@
+package pers.codewld.imall.common.queue;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>
+ * 批量消息 处理器
+ * </p>
+ * <p>
+ * 描述：逐条处理一批消息，返回处理失败的消息，其余消息随即确认；失败的消息不确认，
+ * 由各传输方式的重试机制再次投递（List 为备份队列重放，Stream 为待确认消息接管），超过最大投递次数后转入死信队列。
+ * 抛出异常时整批消息均不确认
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@FunctionalInterface
+public interface BatchHandler {
+
+    /**
+     * 处理一批消息
+     *
+     * @param batch 消息列表
+     * @return 处理失败的消息在列表中的下标，全部成功时为空
+     */
+    Set<Integer> handle(List<Object> batch);
+
+}
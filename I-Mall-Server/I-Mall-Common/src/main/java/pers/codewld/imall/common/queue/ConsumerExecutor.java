@@ -0,0 +1,203 @@
+package pers.codewld.imall.common.queue;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * 消费循环 执行器
+ * </p>
+ * <p>
+ * 描述：所有堵塞式消费循环的专用执行器，每个消费循环长期占用一个线程（或虚拟线程），不占用公共线程池；
+ * 消费循环异常退出时按指数退避重启
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Slf4j
+@Component
+public class ConsumerExecutor {
+
+    /**
+     * 线程名前缀
+     */
+    private static final String THREAD_NAME_PREFIX = "queue-consumer-";
+
+    /**
+     * 是否使用虚拟线程（需 JDK 21 及以上，不支持时退回线程池）
+     */
+    @Value("${queue.consumer.virtual-threads:false}")
+    boolean virtualThreads;
+
+    /**
+     * 线程池最大线程数，即最多可同时运行的消费循环数（使用虚拟线程时不限制）
+     */
+    @Value("${queue.consumer.max-threads:64}")
+    int maxThreads;
+
+    /**
+     * 消费循环异常退出后首次重启的等待时间（毫秒）
+     */
+    @Value("${queue.consumer.restart-backoff-ms:1000}")
+    long restartBackoffMs;
+
+    /**
+     * 重启等待时间的上限（毫秒）
+     */
+    @Value("${queue.consumer.restart-max-backoff-ms:30000}")
+    long restartMaxBackoffMs;
+
+    /**
+     * 堵塞式获取的超时时间（秒），即停止信号的最长响应时间
+     */
+    @Getter
+    @Value("${queue.consumer.block-timeout-seconds:1}")
+    int blockTimeoutSeconds;
+
+    /**
+     * 关闭时等待消费循环处理完当前一批消息并退出的最长时间（毫秒）
+     */
+    @Value("${queue.consumer.shutdown-timeout-ms:10000}")
+    long shutdownTimeoutMs;
+
+    private ExecutorService executor;
+
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void init() {
+        if (virtualThreads) {
+            executor = newVirtualThreadExecutor();
+        }
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(0, maxThreads, 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<>(), new CustomizableThreadFactory(THREAD_NAME_PREFIX));
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(shutdownTimeoutMs, TimeUnit.MILLISECONDS)) {
+                log.warn("消费循环未能在 " + shutdownTimeoutMs + "ms 内退出");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 启动消费循环
+     * <p>
+     * 消费循环应在 handle 停止后返回；正常返回即视为结束，抛出异常时释放其占用的资源（由消费循环自身负责），等待退避时间后重新运行
+     *
+     * @param name   消费循环名称，用于线程名与日志
+     * @param handle 所属消费者的句柄
+     * @param loop   消费循环
+     */
+    public void submit(String name, ConsumerHandle handle, Runnable loop) {
+        handle.loopStarted();
+        try {
+            executor.execute(() -> {
+                try {
+                    supervise(name, handle, loop);
+                } finally {
+                    handle.loopExited();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            handle.loopExited();
+            throw new IllegalStateException("消费循环数超过上限 queue.consumer.max-threads=" + maxThreads + "：" + name, e);
+        }
+    }
+
+    /**
+     * 停止消费者：不再取新消息，等待处理中的消息完成并确认
+     *
+     * @return 是否在 queue.consumer.shutdown-timeout-ms 内全部退出
+     */
+    public boolean stop(Collection<ConsumerHandle> handles) {
+        handles.forEach(ConsumerHandle::stop);
+        long deadline = System.currentTimeMillis() + shutdownTimeoutMs;
+        boolean terminated = true;
+        try {
+            for (ConsumerHandle handle : handles) {
+                terminated &= handle.awaitTermination(deadline);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (!terminated) {
+            log.warn("消费循环未能在 " + shutdownTimeoutMs + "ms 内退出");
+        }
+        return terminated;
+    }
+
+    /**
+     * 执行器是否仍在运行
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 运行并监督消费循环
+     */
+    private void supervise(String name, ConsumerHandle handle, Runnable loop) {
+        Thread.currentThread().setName(THREAD_NAME_PREFIX + name);
+        long backoff = restartBackoffMs;
+        while (running && handle.isRunning()) {
+            long start = System.currentTimeMillis();
+            try {
+                loop.run();
+                return;
+            } catch (Throwable e) {
+                log.error("消费循环异常退出：" + name, e);
+            }
+            if (!running || !handle.isRunning()) {
+                return;
+            }
+            // 运行足够久之后才失败的，视为新的故障，从首次退避时间重新计算
+            if (System.currentTimeMillis() - start > restartMaxBackoffMs) {
+                backoff = restartBackoffMs;
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            backoff = Math.min(backoff * 2, restartMaxBackoffMs);
+            log.info("重启消费循环：" + name);
+        }
+    }
+
+    /**
+     * 通过反射创建虚拟线程执行器，编译目标仍为 Java 8
+     */
+    private ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.warn("当前 JDK 不支持虚拟线程，使用线程池执行消费循环");
+            return null;
+        }
+    }
+}
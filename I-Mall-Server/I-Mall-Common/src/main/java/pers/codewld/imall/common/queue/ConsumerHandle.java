@@ -0,0 +1,60 @@
+package pers.codewld.imall.common.queue;
+
+/**
+ * <p>
+ * 消费者 句柄
+ * </p>
+ * <p>
+ * 描述：一个消费者（同一队列上的一个或多个消费循环）的停止信号；
+ * 消费循环在两批消息之间检查 isRunning()，停止后不再取新消息，处理中的一批完成并确认后退出
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+public class ConsumerHandle {
+
+    private volatile boolean running = true;
+
+    /**
+     * 仍在运行的消费循环数，由this保护
+     */
+    private int activeLoops;
+
+    /**
+     * 是否仍在运行
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 发出停止信号，不等待消费循环退出
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * 等待所有消费循环退出
+     *
+     * @param deadline 截止时间（System.currentTimeMillis()）
+     * @return 是否在截止时间前全部退出
+     */
+    public synchronized boolean awaitTermination(long deadline) throws InterruptedException {
+        long remaining;
+        while (activeLoops > 0 && (remaining = deadline - System.currentTimeMillis()) > 0) {
+            wait(remaining);
+        }
+        return activeLoops == 0;
+    }
+
+    synchronized void loopStarted() {
+        activeLoops++;
+    }
+
+    synchronized void loopExited() {
+        activeLoops--;
+        notifyAll();
+    }
+}
@@ -0,0 +1,81 @@
+package pers.codewld.imall.common.queue;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import pers.codewld.imall.common.util.RedisBatch;
+import pers.codewld.imall.common.util.RedisUtil;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * 消息队列 Redis List 实现类
+ * </p>
+ * <p>
+ * 描述：LPUSH 发送；BRPOPLPUSH 消费，消费中的消息备份在 [队列名-back] 中，处理成功后删除，滞留的消息由 BackQueueRecoverer 重放
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Component
+@ConditionalOnProperty(name = "queue.transport", havingValue = "list", matchIfMissing = true)
+public class ListMsgQueue implements MsgQueue {
+
+    @Autowired
+    RedisUtil redisUtil;
+
+    @Autowired
+    BackQueueRecoverer backQueueRecoverer;
+
+    @Override
+    public void push(String queue, Object msg) {
+        redisUtil.lPush(queue, msg, 0);
+    }
+
+    @Override
+    public void pushAll(Map<String, ? extends List<?>> msgs) {
+        RedisBatch batch = redisUtil.batch();
+        msgs.forEach((queue, list) -> {
+            if (!list.isEmpty()) {
+                batch.lPushAll(queue, list);
+            }
+        });
+        batch.execute();
+    }
+
+    @Override
+    public long size(String queue) {
+        Long size = redisUtil.lSize(queue);
+        return size != null ? size : 0;
+    }
+
+    /**
+     * 备份队列的长度
+     */
+    @Override
+    public long inFlightSize(String queue) {
+        Long size = redisUtil.lSize(getBackQueue(queue));
+        return size != null ? size : 0;
+    }
+
+    @Override
+    public ConsumerHandle consume(String queue, int batchSize, int concurrency, BatchHandler handler) {
+        backQueueRecoverer.register(queue);
+        ConsumerHandle handle = new ConsumerHandle();
+        // 多个消费循环共用同一备份队列，各自只确认自己取出的元素
+        for (int i = 0; i < Math.max(concurrency, 1); i++) {
+            redisUtil.brPopLPushBatch(queue, getBackQueue(queue), batchSize, handler, handle);
+        }
+        return handle;
+    }
+
+    /**
+     * 获取备份队列
+     */
+    public static String getBackQueue(String queue) {
+        return queue + "-" + "back";
+    }
+}
@@ -0,0 +1,58 @@
+package pers.codewld.imall.common.queue;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * 消息队列 接口
+ * </p>
+ * <p>
+ * 描述：屏蔽底层传输方式（Redis List / Redis Stream），由配置项 queue.transport 选择实现
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+public interface MsgQueue {
+
+    /**
+     * 向队列中发送消息
+     *
+     * @param queue 队列名
+     * @param msg   消息
+     */
+    void push(String queue, Object msg);
+
+    /**
+     * 批量发送消息（一次往返），同一队列内保持列表中的顺序
+     *
+     * @param msgs 队列名 -> 消息列表
+     */
+    default void pushAll(Map<String, ? extends List<?>> msgs) {
+        msgs.forEach((queue, list) -> list.forEach(msg -> push(queue, msg)));
+    }
+
+    /**
+     * 队列中待消费的消息数
+     */
+    long size(String queue);
+
+    /**
+     * 已取出但尚未确认的消息数
+     */
+    long inFlightSize(String queue);
+
+    /**
+     * 持续消费队列中的消息，每批处理完成后确认处理成功的消息；处理失败的消息不确认，由重试机制再次投递；
+     * 处理过程中抛出异常时，整批消息均不确认
+     *
+     * @param queue       队列名
+     * @param batchSize   每批最大消息数
+     * @param concurrency 消费循环数，每个循环在 ConsumerExecutor 中长期占用一个线程；大于1时同一队列内的消息不保证按序处理
+     * @param handler     批量消息处理器
+     * @return 消费者句柄，用于停止消费
+     */
+    ConsumerHandle consume(String queue, int batchSize, int concurrency, BatchHandler handler);
+
+}
@@ -0,0 +1,465 @@
+package pers.codewld.imall.common.queue;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisConnectionUtils;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+import pers.codewld.imall.common.util.SerializerUtil;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * 消息队列 Redis Stream 实现类
+ * </p>
+ * <p>
+ * 描述：XADD（MAXLEN ~ 近似限制长度，按整个宏节点裁剪）发送；消费者组 XREADGROUP 批量消费、XACK 确认；
+ * 定期通过 XPENDING + XCLAIM 接管崩溃消费者长时间未确认的消息，多次投递仍失败的消息转入 [队列名-dead]。
+ * 消费者名由节点名与消费循环序号组成，重启后沿用；已不存在的消费者在其待确认消息被接管后从消费者组中删除
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "queue.transport", havingValue = "stream")
+public class StreamMsgQueue implements MsgQueue {
+
+    /**
+     * 消息体字段名
+     */
+    private static final byte[] PAYLOAD_FIELD = "payload".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] MAXLEN = "MAXLEN".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] APPROXIMATE = "~".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] AUTO_ID = "*".getBytes(StandardCharsets.UTF_8);
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Autowired
+    private RedisConnectionFactory connectionFactory;
+
+    @Autowired
+    SerializerUtil serializerUtil;
+
+    @Autowired
+    ConsumerExecutor consumerExecutor;
+
+    /**
+     * 消费者组名
+     */
+    @Value("${queue.stream.group:imall}")
+    String group;
+
+    /**
+     * Stream 最大长度
+     */
+    @Value("${queue.stream.max-len:1000000}")
+    long maxLen;
+
+    /**
+     * 单次堵塞读取的最长时间（毫秒）
+     */
+    @Value("${queue.stream.block-ms:1000}")
+    long blockMs;
+
+    /**
+     * 消息未确认超过该时长（毫秒）后，可被其它消费者接管
+     */
+    @Value("${queue.stream.claim-idle-ms:60000}")
+    long claimIdleMs;
+
+    /**
+     * 检查待确认消息的间隔（毫秒）
+     */
+    @Value("${queue.stream.claim-interval-ms:30000}")
+    long claimIntervalMs;
+
+    /**
+     * 最大投递次数，超过后转入死信队列
+     */
+    @Value("${queue.max-attempts:5}")
+    long maxAttempts;
+
+    /**
+     * 无法直接读取 lag 时（Redis 7.0 以下），统计未读消息数的最大扫描条数，超过时以 Stream 长度估算
+     */
+    @Value("${queue.stream.lag-scan-limit:10000}")
+    long lagScanLimit;
+
+    /**
+     * 消费者名中的节点名，为空时取主机名；同一主机上运行多个消费同一队列的实例时需分别配置
+     */
+    @Value("${queue.stream.consumer-name:}")
+    String consumerName;
+
+    @Override
+    public void push(String queue, Object msg) {
+        byte[] key = serializeKey(queue);
+        byte[] payload = serializeValue(msg);
+        redisTemplate.execute((RedisCallback<Object>) connection -> xAdd(connection, key, payload));
+    }
+
+    @Override
+    public void pushAll(Map<String, ? extends List<?>> msgs) {
+        // 回复为消息ID，不按值序列化方式解析
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            msgs.forEach((queue, list) -> {
+                byte[] key = serializeKey(queue);
+                for (Object msg : list) {
+                    xAdd(connection, key, serializeValue(msg));
+                }
+            });
+            return null;
+        }, RedisSerializer.byteArray());
+    }
+
+    /**
+     * XADD key MAXLEN ~ maxLen * payload value
+     * <p>
+     * XAddOptions 只支持精确裁剪（每次写入都可能裁剪宏节点内的条目），因此直接执行命令
+     */
+    private Object xAdd(RedisConnection connection, byte[] key, byte[] payload) {
+        return connection.execute("XADD", key, MAXLEN, APPROXIMATE,
+                String.valueOf(maxLen).getBytes(StandardCharsets.UTF_8), AUTO_ID, PAYLOAD_FIELD, payload);
+    }
+
+    /**
+     * 消费者组尚未读取的消息数（lag），不含已读取但未确认的消息
+     * <p>
+     * Redis 7.0 及以上直接取 XINFO GROUPS 的 lag；低版本或 lag 无法确定时，统计 last-delivered-id 之后的消息数，
+     * 超过 lag-scan-limit 时以 XLEN 估算（上界）；消费者组尚未创建时为 XLEN
+     */
+    @Override
+    public long size(String queue) {
+        byte[] key = serializeKey(queue);
+        Long size = redisTemplate.execute((RedisCallback<Long>) connection -> {
+            Long length = connection.streamCommands().xLen(key);
+            if (length == null || length == 0) {
+                return 0L;
+            }
+            Map<String, Object> info = getGroupInfo(connection, key);
+            if (info == null) {
+                return length;
+            }
+            Object lag = info.get("lag");
+            if (lag instanceof Long) {
+                return (Long) lag;
+            }
+            Object lastDeliveredId = info.get("last-delivered-id");
+            if (lastDeliveredId == null) {
+                return length;
+            }
+            List<ByteRecord> unread = connection.streamCommands().xRange(key,
+                    Range.closed(nextId(lastDeliveredId.toString()), "+"),
+                    RedisZSetCommands.Limit.limit().count((int) Math.min(lagScanLimit, Integer.MAX_VALUE)));
+            return unread == null ? 0L : unread.size() < lagScanLimit ? unread.size() : length;
+        });
+        return size != null ? size : 0;
+    }
+
+    /**
+     * 消费者组中待确认的消息数
+     */
+    @Override
+    public long inFlightSize(String queue) {
+        // Jedis 不支持 XPENDING 摘要形式，改由 XINFO GROUPS 读取
+        byte[] key = serializeKey(queue);
+        Long pending = redisTemplate.execute((RedisCallback<Long>) connection -> {
+            if (!Boolean.TRUE.equals(connection.keyCommands().exists(key))) {
+                return 0L;
+            }
+            return connection.streamCommands().xInfoGroups(key).stream()
+                    .filter(info -> group.equals(info.groupName()))
+                    .map(StreamInfo.XInfoGroup::pendingCount)
+                    .findFirst()
+                    .orElse(0L);
+        });
+        return pending != null ? pending : 0;
+    }
+
+    @Override
+    public ConsumerHandle consume(String queue, int batchSize, int concurrency, BatchHandler handler) {
+        ConsumerHandle handle = new ConsumerHandle();
+        String node = getConsumerName();
+        for (int i = 0; i < Math.max(concurrency, 1); i++) {
+            String consumerName = node + "-" + i;
+            consumerExecutor.submit(queue + "-" + consumerName, handle,
+                    () -> consumeLoop(queue, consumerName, batchSize, handler, handle));
+        }
+        return handle;
+    }
+
+    /**
+     * 消费循环
+     */
+    private void consumeLoop(String queue, String consumerName, int batchSize, BatchHandler handler,
+                             ConsumerHandle handle) {
+        RedisConnection connection = RedisConnectionUtils.getConnection(connectionFactory);
+        try {
+            byte[] key = serializeKey(queue);
+            createGroup(connection, key);
+            org.springframework.data.redis.connection.stream.Consumer self =
+                    org.springframework.data.redis.connection.stream.Consumer.from(group, consumerName);
+            StreamReadOptions readOptions = StreamReadOptions.empty()
+                    .count(batchSize)
+                    .block(Duration.ofMillis(blockMs));
+            long lastClaim = System.currentTimeMillis();
+            while (handle.isRunning()) {
+                try {
+                    List<ByteRecord> records = connection.streamCommands().xReadGroup(
+                            self, readOptions, StreamOffset.create(key, ReadOffset.lastConsumed()));
+                    handle(connection, key, records, handler);
+                    if (System.currentTimeMillis() - lastClaim >= claimIntervalMs) {
+                        lastClaim = System.currentTimeMillis();
+                        claimPending(connection, queue, key, consumerName, batchSize, handler);
+                    }
+                } catch (QueryTimeoutException ignored) {
+                    // 防止堵塞式获取行为超时而抛出QueryTimeoutException 异常
+                } catch (RedisConnectionFailureException e) {
+                    // 连接已失效，退出循环并释放连接，由 ConsumerExecutor 退避后重启
+                    throw e;
+                } catch (Exception e) {
+                    log.error(e.getMessage());
+                    if (isNoGroupError(e)) {
+                        // Stream 或消费者组被删除，重新创建后继续消费
+                        createGroup(connection, key);
+                    }
+                }
+            }
+        } finally {
+            RedisConnectionUtils.releaseConnection(connection, connectionFactory);
+        }
+    }
+
+    /**
+     * 处理一批消息并确认处理成功的消息
+     */
+    private void handle(RedisConnection connection, byte[] key, List<ByteRecord> records, BatchHandler handler) {
+        if (records == null || records.isEmpty()) {
+            return;
+        }
+        List<Object> batch = new ArrayList<>(records.size());
+        List<RecordId> batchIds = new ArrayList<>(records.size());
+        for (ByteRecord record : records) {
+            try {
+                batch.add(serializerUtil.deSerialize(getPayload(record)));
+                batchIds.add(record.getId());
+            } catch (Exception e) {
+                // 无法反序列化的消息保持未确认，由投递次数上限转入死信队列
+                log.error(e.getMessage());
+            }
+        }
+        Set<Integer> failed = batch.isEmpty() ? Collections.emptySet() : handler.handle(batch);
+        // 处理失败的消息保持未确认，超过 claim-idle-ms 后被重新投递
+        List<RecordId> ackIds = new ArrayList<>(batchIds.size());
+        for (int i = 0; i < batchIds.size(); i++) {
+            if (!failed.contains(i)) {
+                ackIds.add(batchIds.get(i));
+            }
+        }
+        if (!ackIds.isEmpty()) {
+            connection.streamCommands().xAck(key, group, ackIds.toArray(new RecordId[0]));
+        }
+    }
+
+    /**
+     * 接管其它消费者长时间未确认的消息；投递次数超过上限的消息转入死信队列。之后删除已无待确认消息的失效消费者
+     */
+    private void claimPending(RedisConnection connection, String queue, byte[] key, String consumerName,
+                              int batchSize, BatchHandler handler) {
+        PendingMessages pendingMessages = connection.streamCommands().xPending(key, group,
+                RedisStreamCommands.XPendingOptions.range(Range.unbounded(), (long) batchSize));
+        if (pendingMessages == null || pendingMessages.isEmpty()) {
+            removeIdleConsumers(connection, key, consumerName);
+            return;
+        }
+        List<RecordId> claimIds = new ArrayList<>();
+        List<RecordId> deadIds = new ArrayList<>();
+        for (PendingMessage pendingMessage : pendingMessages) {
+            if (pendingMessage.getElapsedTimeSinceLastDelivery().toMillis() < claimIdleMs) {
+                continue;
+            }
+            if (pendingMessage.getTotalDeliveryCount() >= maxAttempts) {
+                deadIds.add(pendingMessage.getId());
+            } else {
+                claimIds.add(pendingMessage.getId());
+            }
+        }
+        if (!deadIds.isEmpty()) {
+            List<ByteRecord> deadRecords = connection.streamCommands().xClaim(key, group, consumerName,
+                    RedisStreamCommands.XClaimOptions.minIdleMs(claimIdleMs).ids(deadIds));
+            byte[] deadKey = serializeKey(queue + "-" + "dead");
+            for (ByteRecord record : deadRecords) {
+                connection.listCommands().lPush(deadKey, getPayload(record));
+            }
+            connection.streamCommands().xAck(key, group, deadIds.toArray(new RecordId[0]));
+            log.warn("消息投递次数超过上限，已转入死信队列：" + queue + " " + deadIds.size());
+        }
+        if (!claimIds.isEmpty()) {
+            List<ByteRecord> records = connection.streamCommands().xClaim(key, group, consumerName,
+                    RedisStreamCommands.XClaimOptions.minIdleMs(claimIdleMs).ids(claimIds));
+            handle(connection, key, records, handler);
+        }
+        removeIdleConsumers(connection, key, consumerName);
+    }
+
+    /**
+     * 删除没有待确认消息、且超过 claim-idle-ms 未读取的消费者（所在节点已下线或改名）
+     * <p>
+     * 存活的消费者每隔 block-ms 读取一次，不会被删除；误删时下次读取会自动重新创建
+     */
+    private void removeIdleConsumers(RedisConnection connection, byte[] key, String consumerName) {
+        StreamInfo.XInfoConsumers consumers = connection.streamCommands().xInfoConsumers(key, group);
+        if (consumers == null) {
+            return;
+        }
+        consumers.forEach(consumer -> {
+            if (consumer.pendingCount() == 0 && consumer.idleTimeMs() >= claimIdleMs
+                    && !consumer.consumerName().equals(consumerName)) {
+                connection.streamCommands().xGroupDelConsumer(key,
+                        org.springframework.data.redis.connection.stream.Consumer.from(group, consumer.consumerName()));
+            }
+        });
+    }
+
+    /**
+     * 读取当前消费者组的 XINFO GROUPS 信息（字段名 -> 值），消费者组不存在时为null
+     * <p>
+     * XInfoGroup 不提供 Redis 7.0 新增的 entries-read、lag 字段，因此直接执行命令并解析原始回复
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> getGroupInfo(RedisConnection connection, byte[] key) {
+        Object reply = connection.execute("XINFO", "GROUPS".getBytes(StandardCharsets.UTF_8), key);
+        if (!(reply instanceof List)) {
+            return null;
+        }
+        for (Object groupReply : (List<Object>) reply) {
+            List<Object> fields = (List<Object>) groupReply;
+            Map<String, Object> info = new HashMap<>();
+            for (int i = 0; i + 1 < fields.size(); i += 2) {
+                Object value = fields.get(i + 1);
+                info.put(toText(fields.get(i)), value instanceof byte[] ? toText(value) : value);
+            }
+            if (group.equals(info.get("name"))) {
+                return info;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 紧随其后的消息ID（低版本不支持排他区间）
+     */
+    private static String nextId(String id) {
+        int index = id.indexOf('-');
+        return id.substring(0, index + 1) + (Long.parseLong(id.substring(index + 1)) + 1);
+    }
+
+    private static String toText(Object value) {
+        return value instanceof byte[] ? new String((byte[]) value, StandardCharsets.UTF_8) : String.valueOf(value);
+    }
+
+    /**
+     * 创建消费者组（Stream不存在时一并创建），已存在时忽略
+     */
+    private void createGroup(RedisConnection connection, byte[] key) {
+        try {
+            connection.streamCommands().xGroupCreate(key, group, ReadOffset.from("0"), true);
+        } catch (Exception e) {
+            if (!isBusyGroupError(e)) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 判断是否为消费者组已存在异常
+     */
+    private boolean isBusyGroupError(Throwable e) {
+        return hasErrorCode(e, "BUSYGROUP");
+    }
+
+    /**
+     * 判断是否为消费者组不存在异常
+     */
+    private boolean isNoGroupError(Throwable e) {
+        return hasErrorCode(e, "NOGROUP");
+    }
+
+    private boolean hasErrorCode(Throwable e, String code) {
+        while (e != null) {
+            if (e.getMessage() != null && e.getMessage().contains(code)) {
+                return true;
+            }
+            e = e.getCause();
+        }
+        return false;
+    }
+
+    /**
+     * 取出消息体；字段名为 byte[]，不能直接按 Map 键查找
+     */
+    private byte[] getPayload(ByteRecord record) {
+        for (Map.Entry<byte[], byte[]> entry : record.getValue().entrySet()) {
+            if (Arrays.equals(PAYLOAD_FIELD, entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        throw new IllegalStateException("消息缺少 payload 字段：" + record.getId());
+    }
+
+    /**
+     * 消费者名中的节点名
+     */
+    private String getConsumerName() {
+        if (consumerName != null && !consumerName.isEmpty()) {
+            return consumerName;
+        }
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            String hostName = System.getenv("HOSTNAME");
+            if (hostName == null || hostName.isEmpty()) {
+                throw new IllegalStateException("无法获取主机名，请配置 queue.stream.consumer-name", e);
+            }
+            return hostName;
+        }
+    }
+
+    private byte[] serializeKey(String key) {
+        return RedisSerializer.string().serialize(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] serializeValue(Object value) {
+        return ((RedisSerializer<Object>) redisTemplate.getValueSerializer()).serialize(value);
+    }
+}
@@ -0,0 +1,28 @@
+package pers.codewld.imall.common.serializer;
+
+/**
+ * <p>
+ * 二进制编解码器 接口
+ * </p>
+ * <p>
+ * 描述：为已知类型提供紧凑的二进制格式（类型标记字节 + 变长整数），未知类型仍使用JSON
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+public interface BinaryCodec {
+
+    /**
+     * 编码
+     *
+     * @return 是否支持该类型；不支持时不写入任何内容
+     */
+    boolean encode(Object obj, BinaryWriter out);
+
+    /**
+     * 解码
+     */
+    Object decode(BinaryReader in);
+
+}
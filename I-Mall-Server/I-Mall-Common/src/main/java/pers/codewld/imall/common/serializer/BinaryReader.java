@@ -0,0 +1,87 @@
+package pers.codewld.imall.common.serializer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>
+ * 二进制 读取器
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+public class BinaryReader {
+
+    private final byte[] buf;
+
+    private int pos;
+
+    private final int limit;
+
+    public BinaryReader(byte[] buf, int offset) {
+        this(buf, offset, buf.length - offset);
+    }
+
+    public BinaryReader(byte[] buf, int offset, int length) {
+        this.buf = buf;
+        this.pos = offset;
+        this.limit = offset + length;
+    }
+
+    public int readByte() {
+        check(1);
+        return buf[pos++] & 0xFF;
+    }
+
+    /**
+     * 读取无符号变长整数
+     */
+    public long readVarLong() {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+        throw new IllegalStateException("变长整数格式错误");
+    }
+
+    /**
+     * 读取有符号变长整数（ZigZag编码）
+     */
+    public long readZigZag() {
+        long v = readVarLong();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * 读取可为null的字符串
+     */
+    public String readString() {
+        long len = readVarLong();
+        if (len == 0) {
+            return null;
+        }
+        int n = (int) (len - 1);
+        check(n);
+        String s = new String(buf, pos, n, StandardCharsets.UTF_8);
+        pos += n;
+        return s;
+    }
+
+    /**
+     * 读取可为null的布尔值
+     */
+    public Boolean readBoolean() {
+        int b = readByte();
+        return b == 0 ? null : b == 2;
+    }
+
+    private void check(int n) {
+        if (pos + n > limit) {
+            throw new IllegalStateException("二进制数据长度不足");
+        }
+    }
+}
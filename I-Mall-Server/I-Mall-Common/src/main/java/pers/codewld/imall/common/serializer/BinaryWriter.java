@@ -0,0 +1,89 @@
+package pers.codewld.imall.common.serializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * 二进制 写入器
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+public class BinaryWriter {
+
+    private byte[] buf;
+
+    private int pos;
+
+    public BinaryWriter() {
+        this(64);
+    }
+
+    public BinaryWriter(int initialCapacity) {
+        this.buf = new byte[initialCapacity];
+    }
+
+    public BinaryWriter writeByte(int b) {
+        ensure(1);
+        buf[pos++] = (byte) b;
+        return this;
+    }
+
+    public BinaryWriter writeBytes(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, pos, bytes.length);
+        pos += bytes.length;
+        return this;
+    }
+
+    /**
+     * 写入无符号变长整数
+     */
+    public BinaryWriter writeVarLong(long v) {
+        ensure(10);
+        while ((v & ~0x7FL) != 0) {
+            buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[pos++] = (byte) v;
+        return this;
+    }
+
+    /**
+     * 写入有符号变长整数（ZigZag编码）
+     */
+    public BinaryWriter writeZigZag(long v) {
+        return writeVarLong((v << 1) ^ (v >> 63));
+    }
+
+    /**
+     * 写入可为null的字符串：长度+1（0表示null）+ UTF-8字节
+     */
+    public BinaryWriter writeString(String s) {
+        if (s == null) {
+            return writeVarLong(0);
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length + 1L);
+        return writeBytes(bytes);
+    }
+
+    /**
+     * 写入可为null的布尔值：0表示null，1表示false，2表示true
+     */
+    public BinaryWriter writeBoolean(Boolean b) {
+        return writeByte(b == null ? 0 : (b ? 2 : 1));
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, pos);
+    }
+
+    private void ensure(int n) {
+        if (pos + n > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length << 1, pos + n));
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package pers.codewld.imall.common.serializer;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import pers.codewld.imall.common.util.SerializerUtil;
+
+/**
+ * <p>
+ * 兼容 序列化器
+ * </p>
+ * <p>
+ * 描述：写入时按配置使用二进制格式（仅限编解码器支持的类型）或JSON；读取时根据头部自动识别两种格式，便于滚动迁移
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+public class CompatRedisSerializer implements RedisSerializer<Object> {
+
+    private final RedisSerializer<Object> jsonSerializer;
+
+    private final SerializerUtil serializerUtil;
+
+    /**
+     * 写入时是否使用二进制格式
+     */
+    private final boolean binary;
+
+    public CompatRedisSerializer(RedisSerializer<Object> jsonSerializer, SerializerUtil serializerUtil, boolean binary) {
+        this.jsonSerializer = jsonSerializer;
+        this.serializerUtil = serializerUtil;
+        this.binary = binary;
+    }
+
+    @Override
+    public byte[] serialize(Object o) throws SerializationException {
+        if (binary && o != null) {
+            byte[] bytes = serializerUtil.serializeBinary(o);
+            if (bytes != null) {
+                return bytes;
+            }
+        }
+        return jsonSerializer.serialize(o);
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (SerializerUtil.isBinary(bytes)) {
+            return serializerUtil.deSerializeBinary(bytes);
+        }
+        return jsonSerializer.deserialize(bytes);
+    }
+}
@@ -0,0 +1,216 @@
+package pers.codewld.imall.common.util;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * Redis 批量操作
+ * </p>
+ * <p>
+ * 描述：先收集操作，再通过管道（或 MULTI/EXEC 事务）一次往返执行；每个操作返回一个结果句柄，执行后可获取对应的结果。
+ * 返回状态回复的命令（如 HMSET）不出现在执行结果中，其结果句柄不占用结果位置，值恒为null。
+ * 实例不是线程安全的，且只能执行一次
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+public class RedisBatch {
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    /**
+     * 待执行的操作，每个操作对应一条Redis命令
+     */
+    private final List<Consumer<RedisOperations<String, Object>>> operations = new ArrayList<>();
+
+    /**
+     * 产生执行结果的操作数（不含返回状态回复的操作）
+     */
+    private int resultCount;
+
+    /**
+     * 执行结果，与产生结果的操作一一对应
+     */
+    private List<Object> results;
+
+    RedisBatch(RedisTemplate<String, Object> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * 向List中添加属性
+     */
+    public Response<Long> lPush(String key, Object value) {
+        return add(operations -> operations.opsForList().leftPush(key, value));
+    }
+
+    /**
+     * 向List中添加属性，并设置过期时间（time为0时不设置）
+     */
+    public Response<Long> lPush(String key, Object value, long time) {
+        Response<Long> response = lPush(key, value);
+        expire(key, time);
+        return response;
+    }
+
+    /**
+     * 向List中批量添加属性
+     */
+    public Response<Long> lPushAll(String key, Collection<?> values) {
+        Object[] array = values.toArray();
+        return add(operations -> operations.opsForList().leftPushAll(key, array));
+    }
+
+    /**
+     * 向Hash中放入一个属性
+     */
+    public Response<Boolean> hSet(String key, String hashKey, Object value) {
+        return add(operations -> operations.opsForHash().put(key, hashKey, value));
+    }
+
+    /**
+     * 向Hash中放入一个属性，并设置过期时间（time为0时不设置）
+     */
+    public Response<Boolean> hSet(String key, String hashKey, Object value, long time) {
+        Response<Boolean> response = hSet(key, hashKey, value);
+        expire(key, time);
+        return response;
+    }
+
+    /**
+     * 直接设置整个Hash（HMSET 为状态回复，结果句柄值为null）
+     */
+    public Response<Object> hSetAll(String key, Map<String, ?> map) {
+        return addStatus(operations -> operations.opsForHash().putAll(key, map));
+    }
+
+    /**
+     * 删除Hash中的属性
+     */
+    public Response<Long> hDel(String key, Object... hashKey) {
+        return add(operations -> operations.opsForHash().delete(key, hashKey));
+    }
+
+    /**
+     * 设置过期时间（time为0时不设置，返回的结果句柄值为null）
+     */
+    public Response<Boolean> expire(String key, long time) {
+        if (time == 0) {
+            return new Response<>(-1);
+        }
+        return add(operations -> operations.expire(key, time, TimeUnit.SECONDS));
+    }
+
+    /**
+     * 发布消息
+     */
+    public Response<Long> publish(String channel, Object message) {
+        return add(operations -> operations.convertAndSend(channel, message));
+    }
+
+    /**
+     * 操作数
+     */
+    public int size() {
+        return operations.size();
+    }
+
+    /**
+     * 通过管道一次往返执行所有操作
+     *
+     * @return 按操作顺序排列的结果
+     */
+    public List<Object> execute() {
+        return execute(false);
+    }
+
+    /**
+     * 在 MULTI/EXEC 事务中执行所有操作
+     *
+     * @return 按操作顺序排列的结果
+     */
+    public List<Object> executeInTransaction() {
+        return execute(true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object> execute(boolean transactional) {
+        if (results != null) {
+            throw new IllegalStateException("批量操作已执行");
+        }
+        if (operations.isEmpty()) {
+            results = Collections.emptyList();
+            return results;
+        }
+        SessionCallback<List<Object>> callback = new SessionCallback<List<Object>>() {
+            @Override
+            public <K, V> List<Object> execute(RedisOperations<K, V> redisOperations) throws DataAccessException {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) redisOperations;
+                if (transactional) {
+                    ops.multi();
+                }
+                operations.forEach(operation -> operation.accept(ops));
+                return transactional ? ops.exec() : null;
+            }
+        };
+        results = transactional ? redisTemplate.execute(callback) : redisTemplate.executePipelined(callback);
+        return results;
+    }
+
+    private <T> Response<T> add(Consumer<RedisOperations<String, Object>> operation) {
+        addStatus(operation);
+        return new Response<>(resultCount++);
+    }
+
+    /**
+     * 添加返回状态回复的操作：管道与事务的结果中均不包含状态回复，不占用结果位置
+     */
+    private <T> Response<T> addStatus(Consumer<RedisOperations<String, Object>> operation) {
+        if (results != null) {
+            throw new IllegalStateException("批量操作已执行");
+        }
+        operations.add(operation);
+        return new Response<>(-1);
+    }
+
+    /**
+     * 结果句柄
+     */
+    public class Response<T> {
+
+        /**
+         * 在结果中的位置，-1表示未产生命令或命令不产生结果
+         */
+        private final int index;
+
+        Response(int index) {
+            this.index = index;
+        }
+
+        /**
+         * 获取结果（须在执行后调用）
+         */
+        @SuppressWarnings("unchecked")
+        public T get() {
+            if (results == null) {
+                throw new IllegalStateException("批量操作尚未执行");
+            }
+            if (index < 0 || results.size() <= index) {
+                return null;
+            }
+            return (T) results.get(index);
+        }
+    }
+}
@@ -3,18 +3,28 @@ package pers.codewld.imall.common.util;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.RedisConnectionFailureException;
 import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisConnectionUtils;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
-
+import pers.codewld.imall.common.queue.BatchHandler;
+import pers.codewld.imall.common.queue.ConsumerExecutor;
+import pers.codewld.imall.common.queue.ConsumerHandle;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
@@ -39,6 +49,39 @@ public class RedisUtil {
     @Autowired
     SerializerUtil serializerUtil;
 
+    @Autowired
+    ConsumerExecutor consumerExecutor;
+
+    /**
+     * 批量弹出脚本：将至多 ARGV[1] 个元素从队列 KEYS[1] 移至备份队列 KEYS[2]，并返回这些元素
+     */
+    private static final RedisScript<List> POP_BATCH_SCRIPT = RedisScript.of(
+            "local items = {} " +
+                    "for i = 1, tonumber(ARGV[1]) do " +
+                    "local v = redis.call('RPOPLPUSH', KEYS[1], KEYS[2]) " +
+                    "if not v then break end " +
+                    "items[i] = v " +
+                    "end " +
+                    "return items",
+            List.class);
+
+    /**
+     * 批量确认脚本：从备份队列 KEYS[1] 中删除 ARGV 中的所有元素
+     */
+    private static final RedisScript<Long> ACK_BATCH_SCRIPT = RedisScript.of(
+            "for i = 1, #ARGV do " +
+                    "redis.call('LREM', KEYS[1], 1, ARGV[i]) " +
+                    "end " +
+                    "return #ARGV",
+            Long.class);
+
+    /**
+     * 创建批量操作，收集的操作在调用execute时通过管道一次往返执行
+     */
+    public RedisBatch batch() {
+        return new RedisBatch(redisTemplate);
+    }
+
     /**
      * 保存属性
      */
@@ -123,8 +166,15 @@ public class RedisUtil {
      * 向Hash中放入一个属性
      */
     public Boolean hSet(String key, String hashKey, Object value, long time) {
-        redisTemplate.opsForHash().put(key, hashKey, value);
-        return expire(key, time);
+        if (time == 0) {
+            redisTemplate.opsForHash().put(key, hashKey, value);
+            return true;
+        }
+        RedisBatch batch = batch();
+        batch.hSet(key, hashKey, value);
+        RedisBatch.Response<Boolean> expired = batch.expire(key, time);
+        batch.execute();
+        return expired.get();
     }
 
     /**
@@ -145,8 +195,15 @@ public class RedisUtil {
      * 直接设置整个Hash
      */
     public Boolean hSetAll(String key, Map<String, Object> map, long time) {
-        redisTemplate.opsForHash().putAll(key, map);
-        return expire(key, time);
+        if (time == 0) {
+            redisTemplate.opsForHash().putAll(key, map);
+            return true;
+        }
+        RedisBatch batch = batch();
+        batch.hSetAll(key, map);
+        RedisBatch.Response<Boolean> expired = batch.expire(key, time);
+        batch.execute();
+        return expired.get();
     }
 
     /**
@@ -184,6 +241,20 @@ public class RedisUtil {
         return redisTemplate.opsForHash().increment(key, hashKey, -delta);
     }
 
+    /**
+     * 发布消息
+     */
+    public void publish(String channel, Object message) {
+        redisTemplate.convertAndSend(channel, message);
+    }
+
+    /**
+     * 使用值序列化器反序列化原始字节（如订阅收到的消息体）
+     */
+    public Object deSerializeValue(byte[] bytes) {
+        return redisTemplate.getValueSerializer().deserialize(bytes);
+    }
+
     /**
      * 获取Set
      */
@@ -228,41 +299,214 @@ public class RedisUtil {
      * @param backKey  备份队列key
      * @param consumer 处理消费者
      */
-    public void brPopLPush(String key, String backKey, Consumer<Object> consumer) {
-        CompletableFuture.runAsync(() -> {
-            RedisConnection connection = RedisConnectionUtils.getConnection(connectionFactory);
-            try {
-                // 序列化键值
-                byte[] keyArr = RedisSerializer.string().serialize(key);
-                byte[] backKeyArr = RedisSerializer.string().serialize(backKey);
-                Assert.notNull(keyArr, "keyArr不能为null");
-                Assert.notNull(backKeyArr, "backKeyArr不能为null");
-                while (true) {
-                    byte[] res = new byte[0];
-                    boolean success = false;
-                    try {
-                        res = connection.bRPopLPush(0, keyArr, backKeyArr);
-                        if (res != null && res.length != 0) {
-                            Object o = serializerUtil.deSerialize(new String(res));
-                            consumer.accept(o);
-                            success = true;
+    public ConsumerHandle brPopLPush(String key, String backKey, Consumer<Object> consumer) {
+        ConsumerHandle handle = new ConsumerHandle();
+        brPopLPush(key, backKey, consumer, handle);
+        return handle;
+    }
+
+    /**
+     * 堵塞式获取队列中的元素，并将该元素备份至备份队列中，待处理成功后删除
+     *
+     * @param key      队列key
+     * @param backKey  备份队列key
+     * @param consumer 处理消费者
+     * @param handle   所属消费者的句柄，停止后消费循环处理完当前元素即退出
+     */
+    public void brPopLPush(String key, String backKey, Consumer<Object> consumer, ConsumerHandle handle) {
+        consumerExecutor.submit(key, handle, () -> brPopLPushLoop(key, backKey, consumer, handle));
+    }
+
+    /**
+     * 消费循环
+     */
+    private void brPopLPushLoop(String key, String backKey, Consumer<Object> consumer, ConsumerHandle handle) {
+        RedisConnection connection = RedisConnectionUtils.getConnection(connectionFactory);
+        try {
+            // 序列化键值
+            byte[] keyArr = RedisSerializer.string().serialize(key);
+            byte[] backKeyArr = RedisSerializer.string().serialize(backKey);
+            Assert.notNull(keyArr, "keyArr不能为null");
+            Assert.notNull(backKeyArr, "backKeyArr不能为null");
+            // 堵塞时间有限，以便及时响应停止信号
+            int timeout = consumerExecutor.getBlockTimeoutSeconds();
+            while (handle.isRunning()) {
+                byte[] res = new byte[0];
+                boolean success = false;
+                try {
+                    res = connection.bRPopLPush(timeout, keyArr, backKeyArr);
+                    if (res != null && res.length != 0) {
+                        Object o = serializerUtil.deSerialize(res);
+                        consumer.accept(o);
+                        success = true;
+                    }
+                } catch (QueryTimeoutException ignored) {
+                    // 防止堵塞式获取行为超时而抛出QueryTimeoutException 异常
+                } catch (RedisConnectionFailureException e) {
+                    // 连接已失效，退出循环并释放连接，由 ConsumerExecutor 退避后重启
+                    throw e;
+                } catch (Exception e) {
+                    log.error(e.getMessage());
+                }
+                finally {
+                    // 若处理成功，则删除备份队列中的key
+                    if (success) {
+                        connection.lRem(backKeyArr, 1, res);
+                    }
+                }
+            }
+        } finally {
+            RedisConnectionUtils.releaseConnection(connection, connectionFactory);
+        }
+    }
+
+    /**
+     * 堵塞式批量获取队列中的元素，并将元素备份至备份队列中，整批处理完成后一次性删除处理成功的元素
+     * <p>
+     * 队列为空时堵塞等待；被唤醒后通过脚本一次性取出至多 batchSize 个元素。
+     * 处理失败的元素保留在备份队列中，由 BackQueueRecoverer 重放；处理过程中抛出异常时，整批元素均保留在备份队列中
+     *
+     * @param key       队列key
+     * @param backKey   备份队列key
+     * @param batchSize 每批最大元素数
+     * @param handler   批量处理器
+     */
+    public ConsumerHandle brPopLPushBatch(String key, String backKey, int batchSize, BatchHandler handler) {
+        ConsumerHandle handle = new ConsumerHandle();
+        brPopLPushBatch(key, backKey, batchSize, handler, handle);
+        return handle;
+    }
+
+    /**
+     * 堵塞式批量获取队列中的元素，并将元素备份至备份队列中，整批处理完成后一次性删除处理成功的元素
+     *
+     * @param key       队列key
+     * @param backKey   备份队列key
+     * @param batchSize 每批最大元素数
+     * @param handler   批量处理器
+     * @param handle    所属消费者的句柄，停止后消费循环处理完当前一批即退出
+     */
+    public void brPopLPushBatch(String key, String backKey, int batchSize, BatchHandler handler, ConsumerHandle handle) {
+        consumerExecutor.submit(key, handle, () -> brPopLPushBatchLoop(key, backKey, batchSize, handler, handle));
+    }
+
+    /**
+     * 批量消费循环
+     */
+    private void brPopLPushBatchLoop(String key, String backKey, int batchSize, BatchHandler handler, ConsumerHandle handle) {
+        RedisConnection connection = RedisConnectionUtils.getConnection(connectionFactory);
+        try {
+            // 序列化键值
+            byte[] keyArr = RedisSerializer.string().serialize(key);
+            byte[] backKeyArr = RedisSerializer.string().serialize(backKey);
+            Assert.notNull(keyArr, "keyArr不能为null");
+            Assert.notNull(backKeyArr, "backKeyArr不能为null");
+            // 堵塞时间有限，以便及时响应停止信号
+            int timeout = consumerExecutor.getBlockTimeoutSeconds();
+            while (handle.isRunning()) {
+                try {
+                    // 堵塞等待第一个元素
+                    byte[] first = connection.bRPopLPush(timeout, keyArr, backKeyArr);
+                    if (first == null || first.length == 0) {
+                        continue;
+                    }
+                    List<byte[]> rawList = new ArrayList<>(batchSize);
+                    rawList.add(first);
+                    if (batchSize > 1) {
+                        rawList.addAll(popBatch(connection, keyArr, backKeyArr, batchSize - 1));
+                    }
+                    List<Object> batch = new ArrayList<>(rawList.size());
+                    List<byte[]> batchRaw = new ArrayList<>(rawList.size());
+                    for (byte[] raw : rawList) {
+                        try {
+                            batch.add(serializerUtil.deSerialize(raw));
+                            batchRaw.add(raw);
+                        } catch (Exception e) {
+                            // 无法反序列化的元素保留在备份队列中
+                            log.error(e.getMessage());
                         }
-                    } catch (QueryTimeoutException ignored) {
-                        // 防止堵塞式获取行为超时而抛出QueryTimeoutException 异常
-                    } catch (Exception e) {
-                        log.error(e.getMessage());
                     }
-                    finally {
-                        // 若处理成功，则删除备份队列中的key
-                        if (success) {
-                            connection.lRem(backKeyArr, 1, res);
+                    Set<Integer> failed = batch.isEmpty() ? Collections.emptySet() : handler.handle(batch);
+                    // 一次性删除备份队列中处理成功的元素，处理失败的元素留待重放
+                    List<byte[]> ackList = new ArrayList<>(batchRaw.size());
+                    for (int i = 0; i < batchRaw.size(); i++) {
+                        if (!failed.contains(i)) {
+                            ackList.add(batchRaw.get(i));
                         }
                     }
+                    ackBatch(connection, backKeyArr, ackList);
+                } catch (QueryTimeoutException ignored) {
+                    // 防止堵塞式获取行为超时而抛出QueryTimeoutException 异常
+                } catch (RedisConnectionFailureException e) {
+                    // 连接已失效，退出循环并释放连接，由 ConsumerExecutor 退避后重启
+                    throw e;
+                } catch (Exception e) {
+                    log.error(e.getMessage());
                 }
-            } finally {
-                RedisConnectionUtils.releaseConnection(connection, connectionFactory);
             }
-        });
+        } finally {
+            RedisConnectionUtils.releaseConnection(connection, connectionFactory);
+        }
+    }
+
+    /**
+     * 将至多 count 个元素从队列移至备份队列，并返回这些元素
+     */
+    @SuppressWarnings("unchecked")
+    private List<byte[]> popBatch(RedisConnection connection, byte[] keyArr, byte[] backKeyArr, int count) {
+        byte[] countArr = String.valueOf(count).getBytes(StandardCharsets.UTF_8);
+        List<byte[]> res = (List<byte[]>) evalScript(connection, POP_BATCH_SCRIPT, ReturnType.MULTI, 2, keyArr, backKeyArr, countArr);
+        return res != null ? res : new ArrayList<>();
+    }
+
+    /**
+     * 从备份队列中删除已处理的元素
+     */
+    private void ackBatch(RedisConnection connection, byte[] backKeyArr, List<byte[]> ackList) {
+        if (ackList.isEmpty()) {
+            return;
+        }
+        byte[][] keysAndArgs = new byte[ackList.size() + 1][];
+        keysAndArgs[0] = backKeyArr;
+        for (int i = 0; i < ackList.size(); i++) {
+            keysAndArgs[i + 1] = ackList.get(i);
+        }
+        evalScript(connection, ACK_BATCH_SCRIPT, ReturnType.INTEGER, 1, keysAndArgs);
+    }
+
+    /**
+     * 执行脚本，键与参数均为原始字节
+     */
+    public Object eval(RedisScript<?> script, ReturnType returnType, int numKeys, byte[]... keysAndArgs) {
+        return redisTemplate.execute(
+                (RedisCallback<Object>) connection -> evalScript(connection, script, returnType, numKeys, keysAndArgs));
+    }
+
+    /**
+     * 执行脚本：优先使用EVALSHA，脚本未缓存时退回EVAL
+     */
+    private Object evalScript(RedisConnection connection, RedisScript<?> script, ReturnType returnType, int numKeys, byte[]... keysAndArgs) {
+        try {
+            return connection.evalSha(script.getSha1(), returnType, numKeys, keysAndArgs);
+        } catch (Exception e) {
+            if (!isNoScriptError(e)) {
+                throw e;
+            }
+            return connection.eval(script.getScriptAsString().getBytes(StandardCharsets.UTF_8), returnType, numKeys, keysAndArgs);
+        }
+    }
+
+    /**
+     * 判断是否为脚本未缓存异常
+     */
+    private boolean isNoScriptError(Throwable e) {
+        while (e != null) {
+            if (e.getMessage() != null && e.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+            e = e.getCause();
+        }
+        return false;
     }
 
     /**
@@ -272,6 +516,14 @@ public class RedisUtil {
         return redisTemplate.opsForList().range(key, start, end);
     }
 
+    /**
+     * 获取List中的原始字节
+     */
+    public List<byte[]> lRangeRaw(String key, long start, long end) {
+        byte[] keyArr = RedisSerializer.string().serialize(key);
+        return redisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.lRange(keyArr, start, end));
+    }
+
     /**
      * 获取List的长度
      */
@@ -290,9 +542,13 @@ public class RedisUtil {
      * 向List中添加属性
      */
     public Long lPush(String key, Object value, long time) {
-        Long index = redisTemplate.opsForList().leftPush(key, value);
-        expire(key, time);
-        return index;
+        if (time == 0) {
+            return redisTemplate.opsForList().leftPush(key, value);
+        }
+        RedisBatch batch = batch();
+        RedisBatch.Response<Long> index = batch.lPush(key, value, time);
+        batch.execute();
+        return index.get();
     }
 
     /**
@@ -306,9 +562,14 @@ public class RedisUtil {
      * 向List中批量添加属性
      */
     public Long lPushAll(String key, Long time, Object... values) {
-        Long count = redisTemplate.opsForList().leftPushAll(key, values);
-        expire(key, time);
-        return count;
+        if (time == 0) {
+            return redisTemplate.opsForList().leftPushAll(key, values);
+        }
+        RedisBatch batch = batch();
+        RedisBatch.Response<Long> count = batch.lPushAll(key, Arrays.asList(values));
+        batch.expire(key, time);
+        batch.execute();
+        return count.get();
     }
 
     /**
@@ -3,10 +3,18 @@ package pers.codewld.imall.common.util;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import pers.codewld.imall.common.serializer.BinaryCodec;
+import pers.codewld.imall.common.serializer.BinaryReader;
+import pers.codewld.imall.common.serializer.BinaryWriter;
+
+import java.io.IOException;
 
 /**
  * <p>
@@ -24,6 +32,22 @@ public class SerializerUtil {
      */
     static ObjectMapper objectMapper;
 
+    /**
+     * 反序列化读取器，线程安全，可复用
+     */
+    static ObjectReader objectReader;
+
+    /**
+     * 二进制格式头部：JSON不可能以0x00开头，以此区分两种格式；第二个字节为格式版本
+     */
+    static final byte[] BINARY_HEADER = {0x00, 0x01};
+
+    /**
+     * 二进制编解码器（可选，由具体业务模块提供）
+     */
+    @Autowired(required = false)
+    BinaryCodec binaryCodec;
+
     public ObjectMapper getObjectMapper() {
         if (objectMapper == null) {
             objectMapper = new ObjectMapper();
@@ -34,10 +58,19 @@ public class SerializerUtil {
             // LaissezFaireSubTypeValidator.instance表示：不做验证，允许序列化所有实例
             // ObjectMapper.DefaultTyping.NON_FINAL表示：除了final声明的值和基本类型外，都会在序列化时添加类名标识（final不应被序列化）
             objectMapper.activateDefaultTyping(LaissezFaireSubTypeValidator.instance, ObjectMapper.DefaultTyping.NON_FINAL);
+            // 忽略未知字段：滚动升级期间旧版本节点需能读取新版本写入的消息
+            objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
         }
         return objectMapper;
     }
 
+    public ObjectReader getObjectReader() {
+        if (objectReader == null) {
+            objectReader = getObjectMapper().readerFor(Object.class);
+        }
+        return objectReader;
+    }
+
     /**
      * 序列化
      */
@@ -52,4 +85,54 @@ public class SerializerUtil {
         return getObjectMapper().readValue(str, Object.class);
     }
 
+    /**
+     * 反序列化，自动识别二进制与JSON格式
+     * <p>
+     * 直接从字节数组读取，不经过中间String
+     */
+    public Object deSerialize(byte[] bytes) throws IOException {
+        if (isBinary(bytes)) {
+            return deSerializeBinary(bytes);
+        }
+        return getObjectReader().readValue(bytes);
+    }
+
+    /**
+     * 二进制序列化
+     *
+     * @return 编解码器不支持该类型时返回null
+     */
+    public byte[] serializeBinary(Object obj) {
+        if (binaryCodec == null) {
+            return null;
+        }
+        BinaryWriter writer = new BinaryWriter();
+        writer.writeBytes(BINARY_HEADER);
+        return binaryCodec.encode(obj, writer) ? writer.toByteArray() : null;
+    }
+
+    /**
+     * 二进制反序列化
+     */
+    public Object deSerializeBinary(byte[] bytes) {
+        return binaryCodec().decode(new BinaryReader(bytes, BINARY_HEADER.length));
+    }
+
+    private BinaryCodec binaryCodec() {
+        if (binaryCodec == null) {
+            throw new IllegalStateException("未配置二进制编解码器");
+        }
+        return binaryCodec;
+    }
+
+    /**
+     * 判断是否为二进制格式
+     */
+    public static boolean isBinary(byte[] bytes) {
+        return bytes != null
+                && bytes.length >= BINARY_HEADER.length
+                && bytes[0] == BINARY_HEADER[0]
+                && bytes[1] == BINARY_HEADER[1];
+    }
+
 }
@@ -0,0 +1,128 @@
+package pers.codewld.imall.common.queue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pers.codewld.imall.common.support.EmbeddedRedisTests;
+import pers.codewld.imall.common.util.RedisUtil;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * <p>
+ * 备份队列 恢复器 测试
+ * </p>
+ * <p>
+ * 描述：覆盖分页扫描排空积压、时间预算，以及重放次数达到上限后转入死信队列
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+class BackQueueRecovererTests extends EmbeddedRedisTests {
+
+    private static final String QUEUE = "test-queue";
+
+    private static final String BACK_QUEUE = ListMsgQueue.getBackQueue(QUEUE);
+
+    private static final String DEAD_QUEUE = QUEUE + "-dead";
+
+    private ConsumerExecutor consumerExecutor;
+
+    private RedisUtil redisUtil;
+
+    private BackQueueRecoverer backQueueRecoverer;
+
+    @BeforeEach
+    void setUp() {
+        consumerExecutor = newConsumerExecutor();
+        redisUtil = newRedisUtil(consumerExecutor);
+        backQueueRecoverer = new BackQueueRecoverer();
+        backQueueRecoverer.redisUtil = redisUtil;
+        backQueueRecoverer.intervalMs = TimeUnit.HOURS.toMillis(1);
+        backQueueRecoverer.scanSize = 10;
+        backQueueRecoverer.timeBudgetMs = TimeUnit.MINUTES.toMillis(1);
+        backQueueRecoverer.batchSize = 4;
+        backQueueRecoverer.maxAttempts = 5;
+        backQueueRecoverer.attemptsTtl = 60;
+    }
+
+    @AfterEach
+    void tearDown() {
+        consumerExecutor.destroy();
+    }
+
+    @Test
+    void drainsBacklogLargerThanScanSizeInOneInterval() {
+        List<String> msgs = fillBackQueue(25);
+
+        // 首次扫描只记录快照
+        backQueueRecoverer.recover(QUEUE);
+        assertEquals(25, redisUtil.lSize(BACK_QUEUE));
+
+        backQueueRecoverer.recover(QUEUE);
+        assertEquals(0, redisUtil.lSize(BACK_QUEUE));
+        assertEquals(new HashSet<>(msgs), new HashSet<>(redisUtil.lRange(QUEUE, 0, -1)));
+    }
+
+    @Test
+    void newElementsAreNotReplayed() {
+        fillBackQueue(15);
+        backQueueRecoverer.recover(QUEUE);
+        // 两次扫描之间进入备份队列的元素
+        redisTemplate.opsForList().leftPush(BACK_QUEUE, "fresh");
+
+        backQueueRecoverer.recover(QUEUE);
+        assertEquals(15, redisUtil.lSize(QUEUE));
+        assertEquals(1, redisUtil.lSize(BACK_QUEUE));
+
+        backQueueRecoverer.recover(QUEUE);
+        assertEquals(16, redisUtil.lSize(QUEUE));
+        assertEquals(0, redisUtil.lSize(BACK_QUEUE));
+    }
+
+    @Test
+    void exhaustedTimeBudgetLeavesRestForNextInterval() {
+        backQueueRecoverer.timeBudgetMs = 0;
+        fillBackQueue(25);
+
+        backQueueRecoverer.recover(QUEUE);
+        backQueueRecoverer.recover(QUEUE);
+        // 每个间隔只扫描一页
+        assertEquals(10, redisUtil.lSize(QUEUE));
+        assertEquals(15, redisUtil.lSize(BACK_QUEUE));
+    }
+
+    @Test
+    void exhaustedAttemptsGoToDeadQueue() {
+        backQueueRecoverer.maxAttempts = 2;
+        redisTemplate.opsForList().leftPush(BACK_QUEUE, "poison");
+
+        backQueueRecoverer.recover(QUEUE);
+        backQueueRecoverer.recover(QUEUE);
+        assertEquals(1, redisUtil.lSize(QUEUE));
+
+        // 再次投递后仍未确认
+        redisTemplate.opsForList().leftPush(BACK_QUEUE, redisTemplate.opsForList().rightPop(QUEUE));
+        backQueueRecoverer.recover(QUEUE);
+        backQueueRecoverer.recover(QUEUE);
+        assertEquals(0, redisUtil.lSize(QUEUE));
+        assertEquals(0, redisUtil.lSize(BACK_QUEUE));
+        assertEquals(1, redisUtil.lSize(DEAD_QUEUE));
+    }
+
+    private List<String> fillBackQueue(int n) {
+        List<String> msgs = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            String msg = "msg-" + i;
+            msgs.add(msg);
+            redisTemplate.opsForList().leftPush(BACK_QUEUE, msg);
+        }
+        return msgs;
+    }
+}
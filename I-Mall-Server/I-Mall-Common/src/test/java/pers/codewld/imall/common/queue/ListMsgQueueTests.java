@@ -0,0 +1,158 @@
+package pers.codewld.imall.common.queue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisCallback;
+import pers.codewld.imall.common.support.EmbeddedRedisTests;
+import pers.codewld.imall.common.util.RedisUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * <p>
+ * 消息队列 Redis List 实现类 测试
+ * </p>
+ * <p>
+ * 描述：覆盖批量弹出脚本（RPOPLPUSH 至备份队列）与批量确认脚本（LREM），以及失败消息保留在备份队列中等待重放
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+class ListMsgQueueTests extends EmbeddedRedisTests {
+
+    private static final String QUEUE = "test-queue";
+
+    private static final String BACK_QUEUE = ListMsgQueue.getBackQueue(QUEUE);
+
+    private ConsumerExecutor consumerExecutor;
+
+    private ConsumerHandle handle;
+
+    private BackQueueRecoverer backQueueRecoverer;
+
+    private RedisUtil redisUtil;
+
+    private ListMsgQueue msgQueue;
+
+    @BeforeEach
+    void setUp() {
+        consumerExecutor = newConsumerExecutor();
+        redisUtil = newRedisUtil(consumerExecutor);
+        backQueueRecoverer = new BackQueueRecoverer();
+        backQueueRecoverer.redisUtil = redisUtil;
+        // 测试期间不重放
+        backQueueRecoverer.intervalMs = TimeUnit.HOURS.toMillis(1);
+        msgQueue = new ListMsgQueue();
+        msgQueue.redisUtil = redisUtil;
+        msgQueue.backQueueRecoverer = backQueueRecoverer;
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (handle != null) {
+            consumerExecutor.stop(Collections.singletonList(handle));
+        }
+        consumerExecutor.destroy();
+        backQueueRecoverer.destroy();
+    }
+
+    @Test
+    void consumeDrainsInBatchesAndAcksEveryMessage() {
+        List<String> msgs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            msgs.add("msg-" + i);
+        }
+        msgQueue.pushAll(Collections.singletonMap(QUEUE, msgs));
+
+        List<Object> received = new CopyOnWriteArrayList<>();
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        handle = msgQueue.consume(QUEUE, 4, 1, batch -> {
+            batchSizes.add(batch.size());
+            received.addAll(batch);
+            return Collections.emptySet();
+        });
+
+        await("消费全部消息", () -> received.size() == msgs.size());
+        await("确认全部消息", () -> msgQueue.inFlightSize(QUEUE) == 0);
+
+        // 先进先出，首个元素堵塞获取，其余由脚本一次取出
+        assertEquals(msgs, received);
+        assertEquals(Arrays.asList(4, 4, 2), batchSizes);
+        assertEquals(0, msgQueue.size(QUEUE));
+    }
+
+    @Test
+    void failedMessagesStayInBackQueue() {
+        msgQueue.pushAll(Collections.singletonMap(QUEUE, Arrays.asList("ok-1", "bad", "ok-2")));
+
+        List<Object> received = new CopyOnWriteArrayList<>();
+        handle = msgQueue.consume(QUEUE, 10, 1, batch -> {
+            received.addAll(batch);
+            Set<Integer> failed = new HashSet<>();
+            for (int i = 0; i < batch.size(); i++) {
+                if ("bad".equals(batch.get(i))) {
+                    failed.add(i);
+                }
+            }
+            return failed;
+        });
+
+        await("消费全部消息", () -> received.size() == 3);
+        await("确认处理成功的消息", () -> msgQueue.inFlightSize(QUEUE) == 1);
+
+        assertEquals(Collections.singletonList("bad"), redisUtil.lRange(BACK_QUEUE, 0, -1));
+        assertEquals(0, msgQueue.size(QUEUE));
+    }
+
+    @Test
+    void handlerExceptionLeavesWholeBatchInBackQueue() {
+        msgQueue.pushAll(Collections.singletonMap(QUEUE, Arrays.asList("a", "b", "c")));
+
+        List<Object> received = new CopyOnWriteArrayList<>();
+        handle = msgQueue.consume(QUEUE, 10, 1, batch -> {
+            received.addAll(batch);
+            throw new IllegalStateException("写入数据库失败");
+        });
+
+        await("消费全部消息", () -> received.size() == 3);
+
+        assertEquals(3, msgQueue.inFlightSize(QUEUE));
+        assertTrue(redisUtil.lRange(BACK_QUEUE, 0, -1).containsAll(Arrays.asList("a", "b", "c")));
+    }
+
+    @Test
+    void undecodablePayloadStaysInBackQueue() {
+        byte[] key = QUEUE.getBytes(StandardCharsets.UTF_8);
+        byte[] garbage = "{not json".getBytes(StandardCharsets.UTF_8);
+        msgQueue.push(QUEUE, "before");
+        redisTemplate.execute((RedisCallback<Long>) connection -> connection.lPush(key, garbage));
+        msgQueue.push(QUEUE, "after");
+
+        List<Object> received = new CopyOnWriteArrayList<>();
+        handle = msgQueue.consume(QUEUE, 10, 1, batch -> {
+            received.addAll(batch);
+            return Collections.emptySet();
+        });
+
+        await("消费可解析的消息", () -> received.size() == 2);
+        await("确认可解析的消息", () -> msgQueue.inFlightSize(QUEUE) == 1);
+
+        assertEquals(Arrays.asList("before", "after"), received);
+        List<byte[]> back = redisUtil.lRangeRaw(BACK_QUEUE, 0, -1);
+        assertEquals(1, back.size());
+        assertEquals("{not json", new String(back.get(0), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,190 @@
+package pers.codewld.imall.common.queue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.test.util.ReflectionTestUtils;
+import pers.codewld.imall.common.support.EmbeddedRedisTests;
+import pers.codewld.imall.common.util.RedisUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * <p>
+ * 消息队列 Redis Stream 实现类 测试
+ * </p>
+ * <p>
+ * 描述：覆盖消费者组批量读取与确认、失败消息的接管重投与转入死信队列，按消费者组 lag 统计的队列长度、删除已下线节点的消费者，以及近似裁剪
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+class StreamMsgQueueTests extends EmbeddedRedisTests {
+
+    private static final String QUEUE = "test-stream";
+
+    private ConsumerExecutor consumerExecutor;
+
+    private ConsumerHandle handle;
+
+    private RedisUtil redisUtil;
+
+    private StreamMsgQueue msgQueue;
+
+    @BeforeEach
+    void setUp() {
+        consumerExecutor = newConsumerExecutor();
+        redisUtil = newRedisUtil(consumerExecutor);
+        msgQueue = new StreamMsgQueue();
+        ReflectionTestUtils.setField(msgQueue, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(msgQueue, "connectionFactory", connectionFactory);
+        msgQueue.serializerUtil = serializerUtil;
+        msgQueue.consumerExecutor = consumerExecutor;
+        msgQueue.group = "test";
+        msgQueue.maxLen = 1000;
+        msgQueue.blockMs = 100;
+        msgQueue.claimIdleMs = 200;
+        msgQueue.claimIntervalMs = 100;
+        msgQueue.maxAttempts = 3;
+        msgQueue.lagScanLimit = 10000;
+        msgQueue.consumerName = "node";
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (handle != null) {
+            consumerExecutor.stop(Collections.singletonList(handle));
+        }
+        consumerExecutor.destroy();
+    }
+
+    @Test
+    void consumeReadsInBatchesAndAcks() {
+        List<String> msgs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            msgs.add("msg-" + i);
+        }
+        List<Object> received = new CopyOnWriteArrayList<>();
+        handle = msgQueue.consume(QUEUE, 4, 1, batch -> {
+            received.addAll(batch);
+            return Collections.emptySet();
+        });
+        // 消费者组从头读取，先启动消费者也不会漏掉消息
+        msgQueue.pushAll(Collections.singletonMap(QUEUE, msgs));
+
+        await("消费全部消息", () -> received.size() == msgs.size());
+        await("确认全部消息", () -> msgQueue.inFlightSize(QUEUE) == 0);
+
+        assertEquals(msgs, received);
+    }
+
+    @Test
+    void failedMessageIsRedeliveredThenDeadLettered() {
+        msgQueue.pushAll(Collections.singletonMap(QUEUE, Arrays.asList("ok-1", "bad", "ok-2")));
+
+        List<Object> received = new CopyOnWriteArrayList<>();
+        handle = msgQueue.consume(QUEUE, 10, 1, batch -> {
+            received.addAll(batch);
+            Set<Integer> failed = new HashSet<>();
+            for (int i = 0; i < batch.size(); i++) {
+                if ("bad".equals(batch.get(i))) {
+                    failed.add(i);
+                }
+            }
+            return failed;
+        });
+
+        await("转入死信队列", () -> redisUtil.lSize(QUEUE + "-dead") == 1);
+        await("确认全部消息", () -> msgQueue.inFlightSize(QUEUE) == 0);
+
+        assertEquals(Collections.singletonList("bad"), redisUtil.lRange(QUEUE + "-dead", 0, -1));
+        // 首次投递 + 接管重投，共 max-attempts 次
+        assertEquals(3, Collections.frequency(received, "bad"));
+        assertEquals(1, Collections.frequency(received, "ok-1"));
+        assertEquals(1, Collections.frequency(received, "ok-2"));
+    }
+
+    @Test
+    void sizeIsGroupLag() {
+        List<String> msgs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            msgs.add("msg-" + i);
+        }
+        msgQueue.pushAll(Collections.singletonMap(QUEUE, msgs));
+        // 消费者组尚未创建：全部未读
+        assertEquals(10, msgQueue.size(QUEUE));
+
+        byte[] key = QUEUE.getBytes(StandardCharsets.UTF_8);
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.streamCommands().xGroupCreate(key, "test", ReadOffset.from("0"));
+            return connection.streamCommands().xReadGroup(Consumer.from("test", "c"),
+                    StreamReadOptions.empty().count(4), StreamOffset.create(key, ReadOffset.lastConsumed()));
+        });
+        // 已读取未确认的消息计入 inFlightSize，不计入 size
+        assertEquals(6, msgQueue.size(QUEUE));
+        assertEquals(4, msgQueue.inFlightSize(QUEUE));
+
+        // 超过扫描上限时以 Stream 长度估算
+        msgQueue.lagScanLimit = 3;
+        assertEquals(10, msgQueue.size(QUEUE));
+    }
+
+    @Test
+    void staleConsumerIsRemovedAfterItsPendingIsClaimed() {
+        msgQueue.pushAll(Collections.singletonMap(QUEUE, Arrays.asList("msg-0", "msg-1")));
+        byte[] key = QUEUE.getBytes(StandardCharsets.UTF_8);
+        // 已下线节点的消费者读取后未确认
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.streamCommands().xGroupCreate(key, "test", ReadOffset.from("0"));
+            return connection.streamCommands().xReadGroup(Consumer.from("test", "old-0"),
+                    StreamReadOptions.empty().count(2), StreamOffset.create(key, ReadOffset.lastConsumed()));
+        });
+
+        List<Object> received = new CopyOnWriteArrayList<>();
+        handle = msgQueue.consume(QUEUE, 10, 1, batch -> {
+            received.addAll(batch);
+            return Collections.emptySet();
+        });
+
+        await("接管全部消息", () -> received.size() == 2);
+        await("删除已下线的消费者", () -> consumerNames(key).equals(Collections.singletonList("node-0")));
+    }
+
+    @Test
+    void pushTrimsApproximately() {
+        msgQueue.maxLen = 10;
+        for (int i = 0; i < 1000; i++) {
+            msgQueue.push(QUEUE, "msg-" + i);
+        }
+        msgQueue.pushAll(Collections.singletonMap(QUEUE, Collections.nCopies(1000, "msg")));
+        Long length = redisTemplate.execute((RedisCallback<Long>) connection ->
+                connection.streamCommands().xLen(QUEUE.getBytes(StandardCharsets.UTF_8)));
+        // 按整个宏节点裁剪：不少于 max-len，远少于写入数
+        assertTrue(length >= 10 && length < 1000, String.valueOf(length));
+    }
+
+    private List<String> consumerNames(byte[] key) {
+        List<String> names = new ArrayList<>();
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.streamCommands().xInfoConsumers(key, "test").forEach(consumer -> names.add(consumer.consumerName()));
+            return null;
+        });
+        return names;
+    }
+}
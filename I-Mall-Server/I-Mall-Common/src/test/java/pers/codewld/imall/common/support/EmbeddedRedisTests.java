@@ -0,0 +1,123 @@
+package pers.codewld.imall.common.support;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import pers.codewld.imall.common.config.RedisConfig;
+import pers.codewld.imall.common.queue.ConsumerExecutor;
+import pers.codewld.imall.common.util.RedisUtil;
+import pers.codewld.imall.common.util.SerializerUtil;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * <p>
+ * 嵌入式Redis 测试基类
+ * </p>
+ * <p>
+ * 描述：每个测试类启动一个独立的 redis-server 进程（随机端口），RedisTemplate 与生产环境相同，由 RedisConfig 创建；
+ * 每个测试方法执行前清空数据
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+public abstract class EmbeddedRedisTests {
+
+    private static RedisServer redisServer;
+
+    protected static JedisConnectionFactory connectionFactory;
+
+    protected static RedisTemplate<String, Object> redisTemplate;
+
+    protected static SerializerUtil serializerUtil;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = RedisServer.newRedisServer().port(port).setting("bind 127.0.0.1").build();
+        redisServer.start();
+        connectionFactory = new JedisConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+        connectionFactory.afterPropertiesSet();
+        serializerUtil = new SerializerUtil();
+        RedisConfig redisConfig = new RedisConfig();
+        ReflectionTestUtils.setField(redisConfig, "serializerUtil", serializerUtil);
+        ReflectionTestUtils.setField(redisConfig, "serializerFormat", "json");
+        redisTemplate = redisConfig.redisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+        if (redisServer != null) {
+            redisServer.stop();
+        }
+    }
+
+    @BeforeEach
+    void flushAll() {
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.flushAll();
+            return null;
+        });
+    }
+
+    /**
+     * 创建消费循环执行器（堵塞超时1秒，失败后快速重启）
+     */
+    protected static ConsumerExecutor newConsumerExecutor() {
+        ConsumerExecutor consumerExecutor = new ConsumerExecutor();
+        ReflectionTestUtils.setField(consumerExecutor, "maxThreads", 8);
+        ReflectionTestUtils.setField(consumerExecutor, "restartBackoffMs", 100L);
+        ReflectionTestUtils.setField(consumerExecutor, "restartMaxBackoffMs", 1000L);
+        ReflectionTestUtils.setField(consumerExecutor, "blockTimeoutSeconds", 1);
+        ReflectionTestUtils.setField(consumerExecutor, "shutdownTimeoutMs", 5000L);
+        consumerExecutor.init();
+        return consumerExecutor;
+    }
+
+    /**
+     * 创建 Redis 工具类
+     */
+    protected static RedisUtil newRedisUtil(ConsumerExecutor consumerExecutor) {
+        RedisUtil redisUtil = new RedisUtil();
+        ReflectionTestUtils.setField(redisUtil, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(redisUtil, "connectionFactory", connectionFactory);
+        ReflectionTestUtils.setField(redisUtil, "serializerUtil", serializerUtil);
+        ReflectionTestUtils.setField(redisUtil, "consumerExecutor", consumerExecutor);
+        return redisUtil;
+    }
+
+    /**
+     * 等待条件成立，超时则测试失败
+     */
+    protected static void await(String description, BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("等待超时：" + description);
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail("等待被中断：" + description);
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package pers.codewld.imall.common.util;
+
+import org.junit.jupiter.api.Test;
+import pers.codewld.imall.common.support.EmbeddedRedisTests;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * <p>
+ * Redis 批量操作 测试
+ * </p>
+ * <p>
+ * 描述：HMSET 等状态回复不出现在管道与事务的结果中，混合这类命令时其余操作的结果句柄仍须对应正确的结果
+ * </p>
+ *
+ * @author codewld
+ * @since 2026-10-18
+ */
+class RedisBatchTests extends EmbeddedRedisTests {
+
+    @Test
+    void statusRepliesDoNotShiftResultsInPipeline() {
+        mixedBatch(false);
+    }
+
+    @Test
+    void statusRepliesDoNotShiftResultsInTransaction() {
+        mixedBatch(true);
+    }
+
+    @Test
+    void hSetAllWithExpire() {
+        RedisUtil redisUtil = newRedisUtil(null);
+        Map<String, Object> map = new HashMap<>();
+        map.put("a", 1);
+        assertEquals(true, redisUtil.hSetAll("h", map, 100));
+        assertEquals(1, redisUtil.hGet("h", "a"));
+        assertTrue(redisTemplate.getExpire("h") > 0);
+    }
+
+    private void mixedBatch(boolean transactional) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("a", 1);
+        map.put("b", 2);
+        RedisBatch batch = new RedisBatch(redisTemplate);
+        RedisBatch.Response<Object> putAll = batch.hSetAll("h", map);
+        RedisBatch.Response<Boolean> expire = batch.expire("h", 100);
+        RedisBatch.Response<Boolean> put = batch.hSet("h", "c", 3);
+        RedisBatch.Response<Boolean> putExisting = batch.hSet("h", "a", 4);
+        RedisBatch.Response<Long> delete = batch.hDel("h", "b", "missing");
+        List<Object> results = transactional ? batch.executeInTransaction() : batch.execute();
+
+        assertEquals(4, results.size(), String.valueOf(results));
+        assertNull(putAll.get());
+        assertEquals(true, expire.get());
+        assertEquals(true, put.get());
+        assertEquals(false, putExisting.get());
+        assertEquals(1L, delete.get());
+        assertEquals(4, redisTemplate.opsForHash().get("h", "a"));
+        assertTrue(redisTemplate.getExpire("h") > 0);
+    }
+}